@@ -0,0 +1,101 @@
+package egi.checkin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import egi.checkin.model.CheckinRoleList;
+import egi.checkin.model.CheckinUser;
+import egi.eu.model.RoleInfo;
+
+
+/***
+ * Benchmark reading and filtering the role records of large VOs, see {@link MembershipSnapshot}.
+ * The records are generated by {@link SimulatedCheckinPopulation}, the same as served by the
+ * simulated Check-in, for VOs with an increasing number of members.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MembershipBenchmark {
+
+    private static final String VO = "vo.tools.egi.eu";
+    private static final String GROUP = "SLM";
+
+    @Param({ "1000", "10000", "100000" })
+    public int members;
+
+    private byte[] voJson;
+    private CheckinRoleList voRecords;
+    private CheckinRoleList groupRecords;
+    private CheckinRoleList changedGroupRecords;    // Last group record removed
+    private MembershipSnapshot snapshot;
+
+
+    /***
+     * Generate the population and index it
+     */
+    @Setup
+    public void setup() throws IOException {
+        var settings = SimulatedCheckinPopulation.Settings.from(Map.of("members", String.valueOf(this.members)));
+        var population = new SimulatedCheckinPopulation("2", VO, GROUP, settings);
+
+        this.voJson = population.listRecords("2", VO);
+        this.voRecords = recordsOf(this.voJson);
+        this.groupRecords = recordsOf(population.listRecords("2", GROUP));
+        this.changedGroupRecords = new CheckinRoleList(this.groupRecords);
+        this.changedGroupRecords.records.remove(this.changedGroupRecords.records.size() - 1);
+
+        this.snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+    }
+
+    @Benchmark
+    public CheckinRoleList read() throws IOException {
+        return recordsOf(this.voJson);
+    }
+
+    @Benchmark
+    public MembershipSnapshot build() {
+        return new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+    }
+
+    @Benchmark
+    public MembershipSnapshot update() {
+        return this.snapshot.update(this.voRecords, GROUP, this.changedGroupRecords);
+    }
+
+    @Benchmark
+    public List<CheckinUser> voMembers() {
+        return this.snapshot.voMembers();
+    }
+
+    @Benchmark
+    public List<CheckinUser> usersWithRoles() {
+        return this.snapshot.usersWithRoles(null);
+    }
+
+    @Benchmark
+    public List<CheckinUser> usersWithRole() {
+        return this.snapshot.usersWithRoles("process-manager");
+    }
+
+    @Benchmark
+    public List<RoleInfo> roles() {
+        return this.snapshot.roles(null);
+    }
+
+    /***
+     * Read role records and compute their role field, like {@link Checkin} does
+     * @param json Response of the VoMembers endpoint
+     * @return Role records
+     */
+    private static CheckinRoleList recordsOf(byte[] json) throws IOException {
+        var list = CheckinRoleListReader.read(new ByteArrayInputStream(json));
+        Checkin.computeRoles(list);
+        return list;
+    }
+}
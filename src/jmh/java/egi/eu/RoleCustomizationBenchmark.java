@@ -0,0 +1,114 @@
+package egi.eu;
+
+import io.quarkus.oidc.UserInfo;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.runtime.QuarkusPrincipal;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import egi.checkin.model.CheckinUser;
+
+
+/***
+ * Benchmark building the roles and attributes of a security identity from the user information,
+ * for users with an increasing number of entitlements. Only a few of the entitlements are for
+ * the configured VO, most are for other VOs, as is the case for users active in many communities.
+ *
+ * No Check-in configuration is set, so identities are never cached and each call builds them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoleCustomizationBenchmark {
+
+    private static final String PREFIX = "urn:mace:egi.eu:group:";
+    private static final String SUFFIX = "#aai.egi.eu";
+
+    @Param({ "10", "100", "1000" })
+    public int entitlements;
+
+    // How OIDC passes the user information, see quarkus.oidc.user-info-source
+    @Param({ "parsed", "json" })
+    public String userInfo;
+
+    private SlmRoleCustomization roleCustomization;
+    private SecurityIdentity identity;
+
+
+    /***
+     * Setup the user and the identity to augment
+     */
+    @Setup
+    public void setup() {
+        final var config = config();
+        this.roleCustomization = new SlmRoleCustomization();
+        this.roleCustomization.setConfig(config);
+
+        final var voPrefix = PREFIX + config.vo() + ":";
+        final var groupPrefix = voPrefix + config.group() + ":role=";
+        var user = new CheckinUser("e9c37aa0d1cf14c56e560f9f9915da6761f54383badb501a2867bc43581b835c@egi.eu")
+                .setFirstName("John")
+                .setLastName("Doe")
+                .setEmail("john.doe@example.org");
+        user.emailIsVerified = true;
+        user.addAssurance("https://aai.egi.eu/LoA#Substantial");
+        user.addEntitlement(voPrefix + "role=member" + SUFFIX);
+        user.addEntitlement(groupPrefix + "member" + SUFFIX);
+        user.addEntitlement(groupPrefix + "process-manager" + SUFFIX);
+
+        // One in ten entitlements is for the configured group, half of them for a specific entity
+        for(int i = 3; i < this.entitlements; i++) {
+            if(0 == i % 10)
+                user.addEntitlement(groupPrefix + (0 == i % 20 ? "sla-owner-" + i : "ua-owner") + SUFFIX);
+            else
+                user.addEntitlement(PREFIX + "vo.example" + (i % 50) + ".eu:" +
+                                    (0 == i % 2 ? "role=member" : "group" + i + ":role=manager") + SUFFIX);
+        }
+
+        var builder = QuarkusSecurityIdentity.builder();
+        builder.setPrincipal(new QuarkusPrincipal("benchmark"));
+        if(this.userInfo.equals("parsed"))
+            builder.addAttribute("userinfo", new UserInfo(user.toJsonString()));
+        else
+            builder.addAttribute("userinfo", user.toJsonString());
+
+        this.identity = builder.build();
+    }
+
+    @Benchmark
+    public SecurityIdentity build() {
+        return this.roleCustomization.augment(this.identity, null).await().indefinitely();
+    }
+
+    /***
+     * The configuration of the IMS, same as in application.yml
+     */
+    private static IntegratedManagementSystemConfig config() {
+        return new IntegratedManagementSystemConfig() {
+            @Override
+            public String vo() { return "vo.tools.egi.eu"; }
+
+            @Override
+            public String group() { return "SLM"; }
+
+            @Override
+            public Map<String, String> roles() {
+                return Map.of("process-owner", "process-owner",
+                              "process-manager", "process-manager",
+                              "process-developer", "process-developer",
+                              "catalog-owner", "catalog-owner",
+                              "sla-owner", "sla-owner",
+                              "ola-owner", "ola-owner",
+                              "ua-owner", "ua-owner",
+                              "report-owner", "report-owner");
+            }
+
+            @Override
+            public List<String> ownerRoles() { return List.of("report-owner", "ua-owner", "ola-owner", "sla-owner"); }
+        };
+    }
+}
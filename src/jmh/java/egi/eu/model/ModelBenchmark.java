@@ -0,0 +1,86 @@
+package egi.eu.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import egi.checkin.model.CheckinUser;
+import egi.eu.Users;
+import egi.eu.entity.ProcessEntity;
+import egi.eu.entity.UserEntity;
+
+
+/***
+ * Benchmark constructing the pages and models returned by the API endpoints,
+ * and the entities stored when a process is updated
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelBenchmark {
+
+    private static final String BASE_URI = "https://api.example.org/ims/users?from=0&limit=100";
+
+    // Number of users in the source of a page, and of requirements and interfaces of a process
+    @Param({ "10", "100", "1000" })
+    public int size;
+
+    private List<CheckinUser> checkinUsers;
+    private List<Role> roles;
+    private Users.PageOfRoles pageOfRoles;
+    private Map<String, UserEntity> users;
+    private ProcessEntity latest;
+    private Process process;        // Changed version of the latest one, half the requirements changed
+
+
+    /***
+     * Generate the source of the pages and the process
+     */
+    @Setup
+    public void setup() {
+        this.checkinUsers = SyntheticModels.checkinUsers(this.size);
+        this.roles = SyntheticModels.roleVersions(this.size).stream().map(Role::new).toList();
+        this.pageOfRoles = new Users.PageOfRoles(null, 0, 0, null);
+
+        this.users = SyntheticModels.userEntities(Math.max(2, this.size / 10));
+        this.latest = SyntheticModels.processEntity(this.size, this.users);
+        this.process = new Process(this.latest);
+        this.process.changeDescription = "Updated requirements";
+        for(var requirement : this.process.requirements)
+            if(0 == requirement.id % 2)
+                requirement.requirement += " (updated)";
+    }
+
+    @Benchmark
+    public Users.PageOfRoles genericEntity() {
+        // Resolves the name and the type parameters of the page
+        return new Users.PageOfRoles(null, 0, 0, null);
+    }
+
+    @Benchmark
+    public Page<Role, Long> populate() {
+        return this.pageOfRoles.populate(BASE_URI, 0L, 100, this.roles, true);
+    }
+
+    @Benchmark
+    public Users.PageOfUsers pageOfUsers() {
+        return new Users.PageOfUsers(BASE_URI, 0, 100, this.checkinUsers);
+    }
+
+    @Benchmark
+    public ProcessEntity copyWithStatus() {
+        return new ProcessEntity(this.latest, Process.ProcessStatus.DEPRECATED);
+    }
+
+    @Benchmark
+    public ProcessEntity copyChanges() {
+        return new ProcessEntity(this.process, this.latest, this.users);
+    }
+
+    @Benchmark
+    public Process processOf() {
+        return new Process(this.latest);
+    }
+}
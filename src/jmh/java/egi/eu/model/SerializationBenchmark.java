@@ -0,0 +1,68 @@
+package egi.eu.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import egi.eu.Users;
+
+
+/***
+ * Benchmark serializing the models returned by the API endpoints to JSON
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    // Number of requirements and interfaces of the process, versions of the role, and users on the page
+    @Param({ "10", "100", "1000" })
+    public int size;
+
+    private ObjectWriter processWriter;
+    private ObjectWriter roleWriter;
+    private ObjectWriter pageWriter;
+    private Process process;
+    private Role role;
+    private Users.PageOfUsers page;
+
+
+    /***
+     * Generate the models, setup writers configured like the Quarkus object mapper
+     */
+    @Setup
+    public void setup() {
+        var mapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS);
+
+        this.processWriter = mapper.writerFor(Process.class);
+        this.roleWriter = mapper.writerFor(Role.class);
+        this.pageWriter = mapper.writerFor(Users.PageOfUsers.class);
+
+        var users = SyntheticModels.userEntities(Math.max(2, this.size / 10));
+        this.process = new Process(SyntheticModels.processEntity(this.size, users));
+        this.role = new Role(SyntheticModels.roleVersions(this.size));
+        this.page = new Users.PageOfUsers(null, 0, this.size, SyntheticModels.checkinUsers(this.size));
+    }
+
+    @Benchmark
+    public byte[] process() throws JsonProcessingException {
+        return this.processWriter.writeValueAsBytes(this.process);
+    }
+
+    @Benchmark
+    public byte[] role() throws JsonProcessingException {
+        return this.roleWriter.writeValueAsBytes(this.role);
+    }
+
+    @Benchmark
+    public byte[] pageOfUsers() throws JsonProcessingException {
+        return this.pageWriter.writeValueAsBytes(this.page);
+    }
+}
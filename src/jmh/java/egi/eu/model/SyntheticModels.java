@@ -0,0 +1,126 @@
+package egi.eu.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import egi.checkin.model.CheckinUser;
+import egi.eu.entity.ProcessEntity;
+import egi.eu.entity.RoleEntity;
+import egi.eu.entity.UserEntity;
+
+
+/***
+ * Synthetic entities and models for the benchmarks, sized by the caller
+ */
+class SyntheticModels {
+
+    private static final String MARKDOWN =
+            "The process **shall** be reviewed periodically, see the [procedures](https://example.org/procedures)";
+
+    /***
+     * Generate users
+     * @param count Number of users
+     * @return Users as returned by Check-in
+     */
+    static List<CheckinUser> checkinUsers(int count) {
+        var users = new ArrayList<CheckinUser>(count);
+        for(int i = 0; i < count; i++) {
+            var user = new CheckinUser(String.format("%064x@egi.eu", i))
+                    .setFirstName("Given" + i)
+                    .setLastName("Family" + i)
+                    .setFullName("Given" + i + " Family" + i)
+                    .setEmail("user" + i + "@example.org");
+            user.addRole("process-member");
+            users.add(user);
+        }
+
+        return users;
+    }
+
+    /***
+     * Generate users, as stored in the database
+     * @param count Number of users
+     * @return Users by Check-in user ID
+     */
+    static Map<String, UserEntity> userEntities(int count) {
+        var users = new HashMap<String, UserEntity>();
+        for(var user : checkinUsers(count)) {
+            var entity = new UserEntity(new User(user));
+            entity.id = (long)users.size() + 1;
+            users.put(entity.checkinUserId, entity);
+        }
+
+        return users;
+    }
+
+    /***
+     * Generate a process, as stored in the database
+     * @param requirements Number of requirements and of interfaces
+     * @param users The users to pick the responsibles of the requirements from
+     * @return Approved process
+     */
+    static ProcessEntity processEntity(int requirements, Map<String, UserEntity> users) {
+        var process = new ProcessEntity();
+        process.id = 1L;
+        process.description = MARKDOWN;
+        process.contact = "slm@example.org";
+        process.nextReview = LocalDateTime.of(2030, 1, 1, 0, 0);
+        process.status = Process.ProcessStatus.APPROVED.getValue();
+        process.version = 1;
+        process.changedOn = LocalDateTime.of(2024, 1, 1, 0, 0);
+        process.changeDescription = "Initial version";
+
+        final var responsibles = new ArrayList<>(users.values());
+        process.changeBy = responsibles.get(0);
+        process.requirements = new HashSet<>();
+        process.interfaces = new HashSet<>();
+        for(int i = 0; i < requirements; i++) {
+            var requirement = new ProcessEntity.Requirement();
+            requirement.id = (long)i + 1;
+            requirement.code = "SLM" + i;
+            requirement.requirement = MARKDOWN;
+            requirement.source = "ISO 20000-1";
+            requirement.responsibles = new HashSet<>();
+            requirement.responsibles.add(responsibles.get(i % responsibles.size()));
+            requirement.responsibles.add(responsibles.get((i + 1) % responsibles.size()));
+            process.requirements.add(requirement);
+
+            var itf = new ProcessEntity.Interface();
+            itf.id = (long)i + 1;
+            itf.direction = 0 == i % 2 ? "In" : "Out";
+            itf.description = MARKDOWN;
+            itf.relevantMaterial = MARKDOWN;
+            itf.interfacesWith = "CAPM";
+            process.interfaces.add(itf);
+        }
+
+        return process;
+    }
+
+    /***
+     * Generate the versions of a role, as stored in the database
+     * @param count Number of versions
+     * @return Versions, starting with the latest
+     */
+    static List<RoleEntity> roleVersions(int count) {
+        var versions = new ArrayList<RoleEntity>(count);
+        for(int i = count; i > 0; i--) {
+            var role = new RoleEntity();
+            role.id = (long)i;
+            role.role = "process-manager";
+            role.name = "Process Manager";
+            role.tasks = MARKDOWN;
+            role.status = Role.RoleStatus.IMPLEMENTED.getValue();
+            role.version = i;
+            role.changedOn = LocalDateTime.of(2024, 1, 1, 0, 0).plusDays(i);
+            role.changeDescription = "Version " + i;
+            versions.add(role);
+        }
+
+        return versions;
+    }
+}
@@ -2,9 +2,12 @@ package egi.checkin;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.eclipse.microprofile.rest.client.RestClientBuilder;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.eclipse.microprofile.rest.client.RestClientDefinitionException;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import io.smallrye.mutiny.tuples.Tuple2;
 
 import jakarta.ws.rs.core.Response.Status;
@@ -13,12 +16,21 @@ import org.jboss.logging.MDC;
 
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
 import java.text.Format;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import egi.eu.IntegratedManagementSystemConfig;
 import egi.eu.ActionException;
@@ -33,10 +45,24 @@ public class Checkin {
 
     private static final Logger log = Logger.getLogger(Checkin.class);
     private static CheckinService checkin;
-    private static Map<String, CheckinUser> voMembers;  // Does not cache assigned roles
-    private static long voMembersUpdatedAt = 0;         // Milliseconds since epoch
-    private static CheckinRoleList roleRecords;
-    private static long rolesUpdatedAt = 0;             // Milliseconds since epoch
+    private static CheckinRecordCache recordCache;      // Role records of any group or VO, groups
+    private static CheckinResilience resilience;        // Timeouts, retries, circuit breaker, bulkhead
+    private static Cache<String, CheckinRecordCache.Entry<CheckinUser>> userInfoCache; // By access token hash
+
+    // Indexed membership of the configured VO and group, replaced (never modified) when the records change
+    private static final AtomicReference<MembershipSnapshot> membership = new AtomicReference<>();
+    private static volatile boolean warm = false;        // Membership of the configured group was published
+    private static MembershipSnapshotFile snapshotFile;  // Where to save the membership, null to not save it
+    private static final AtomicLong expiryCheckAt = new AtomicLong(Long.MAX_VALUE); // Next validity boundary check
+
+    // Observers of changes to the role records of any group or VO
+    private static final List<Consumer<MembershipChanges>> changeListeners = new CopyOnWriteArrayList<>();
+
+    // Fetches of role records currently in progress, keyed by coId/groupName
+    private static final ConcurrentMap<String, Uni<CheckinRoleList>> inFlightFetches = new ConcurrentHashMap<>();
+
+    // Reloads of role records after writes, keyed by coId/groupName
+    private static final CheckinRefreshScheduler refreshScheduler = new CheckinRefreshScheduler();
 
     private CheckinConfig checkinConfig;
     private IntegratedManagementSystemConfig imsConfig;
@@ -46,37 +72,357 @@ public class Checkin {
 
 
     /***
-     * Check if the VO members are cached, and the cache is not stale
-     * @return True if VO members are available in the cache
+     * Check if cached records can be used.
+     * When refreshing in the background, stale records can be used until they exceed the max staleness.
+     * @param entry The cached records, can be null
+     * @return True if records are available in the cache
      */
-    private boolean voMembersCached() {
-        if(null == Checkin.voMembers)
+    private boolean recordsCached(CheckinRecordCache.Entry<?> entry) {
+        if(null == entry || null == entry.value)
             return false;
 
-        final long millisecondsSinceEpoch = Instant.now().toEpochMilli();
-        final boolean stale = Checkin.voMembersUpdatedAt + this.checkinConfig.cacheMembers() < millisecondsSinceEpoch;
-        return !stale;
+        return cacheUsable(entry.updatedAt, entry.timeToLive);
     }
 
     /***
-     * Check if the role records are cached, and the cache is not stale
-     * @return True if role records are available in the cache
+     * Get how long the records of a group or VO can be cached.
+     * @param groupName The group or VO
+     * @return Time-to-live in milliseconds
      */
-    private boolean rolesCached() {
-        if(null == roleRecords)
-            return false;
+    private long cacheTimeToLive(String groupName) {
+        if(groupName.equals(this.imsConfig.vo()))
+            return this.checkinConfig.cacheMembers();
+        if(groupName.equals(this.imsConfig.group()))
+            return this.checkinConfig.cacheRoles();
+
+        return this.checkinConfig.cacheGroups();
+    }
 
+    /***
+     * Check if a cache can be used.
+     * @param updatedAt When the cache was last updated, milliseconds since epoch
+     * @param timeToLive How long the cache is fresh, in milliseconds
+     * @return True if the cache is fresh, or it is stale but we are allowed to serve it
+     *         while it is being refreshed in the background
+     */
+    private boolean cacheUsable(long updatedAt, long timeToLive) {
+        final long millisecondsSinceEpoch = Instant.now().toEpochMilli();
+        var expiresAt = updatedAt + timeToLive;
+        if(this.checkinConfig.cacheRefresh())
+            expiresAt += this.checkinConfig.cacheMaxStale();
+
+        return expiresAt >= millisecondsSinceEpoch;
+    }
+
+    /***
+     * Check if a cache is stale, i.e. it should be refreshed.
+     * @param updatedAt When the cache was last updated, milliseconds since epoch
+     * @param timeToLive How long the cache is fresh, in milliseconds
+     * @param lead Consider the cache stale this many milliseconds before it actually expires
+     * @return True if the cache is stale
+     */
+    private static boolean cacheStale(long updatedAt, long timeToLive, long lead) {
         final long millisecondsSinceEpoch = Instant.now().toEpochMilli();
-        final boolean stale = rolesUpdatedAt + this.checkinConfig.cacheRoles() < millisecondsSinceEpoch;
-        return !stale;
+        return updatedAt + timeToLive - lead < millisecondsSinceEpoch;
+    }
+
+    /***
+     * Ensure no role records are cached for a group, as they do not reflect Check-in after a write
+     * (need to reload them on next API call).
+     * @param groupName The group or VO
+     * @param reason Why the records are dropped, see {@link CheckinMetrics#cacheInvalidated(String, String)}
+     */
+    private void invalidateCachedRoleRecords(String groupName, String reason) {
+        Checkin.recordCache.invalidateRecords(this.checkinConfig.coId(), groupName);
+        CheckinMetrics.cacheInvalidated(cacheName(groupName), reason);
+    }
+
+    /***
+     * Reload the cached role records of a group after the writes applied to them, to pick up what else
+     * Check-in changed (e.g. modification times). The reload happens in the background after a delay,
+     * so that a burst of writes causes a single reload, meanwhile reads are served from the patched records.
+     * @param groupName The group or VO
+     */
+    private void reloadCachedRoleRecordsAfterWrites(String groupName) {
+        final var coId = this.checkinConfig.coId();
+        final var delay = this.checkinConfig.cacheRefreshAfterWrites();
+        if(delay <= 0)
+            return;
+
+        Checkin.refreshScheduler.schedule(coId + "/" + groupName, delay,
+                () -> fetchSharedAsync(groupName, CheckinMetrics.ON_WRITE)
+                        .onFailure().invoke(e -> {
+                            // Do not keep serving records we could not confirm
+                            Checkin.recordCache.invalidateRecords(coId, groupName);
+                        }));
+    }
+
+    /***
+     * Get the name of the cache holding the role records of a group or VO, used to tag metrics
+     * @param groupName The group or VO
+     * @return Cache name, see {@link CheckinMetrics}
+     */
+    private String cacheName(String groupName) {
+        return groupName.equals(this.imsConfig.vo()) ? CheckinMetrics.VO_MEMBERS : CheckinMetrics.ROLES;
+    }
+
+    /***
+     * Apply a newly added record to the cached role records of a group, instead of reloading them.
+     * If write-through is disabled, or the cache cannot be patched, the cached records are dropped.
+     * @param groupName The group the record was added to
+     * @param added Details of the new record, see also {@link CheckinObject}
+     * @param checkinUserId The user the record is about
+     * @param roleName The name of the role, or "member" for a membership record
+     */
+    private void addCachedRoleRecord(String groupName, CheckinObject added, String checkinUserId, String roleName) {
+        var record = this.checkinConfig.cacheWriteThrough() ? newCachedRoleRecord(groupName, added, checkinUserId, roleName) : null;
+        if(null == record) {
+            invalidateCachedRoleRecords(groupName, "write");
+            return;
+        }
+
+        patchCachedRoleRecords(groupName, List.of(record), Map.of());
+    }
+
+    /***
+     * Apply the change of status of a record to the cached role records of a group, instead of reloading them.
+     * If write-through is disabled, or the record is not in the cache (drift), the cached records are dropped.
+     * @param groupName The group the record belongs to
+     * @param roleId The Id of the updated record
+     * @param status The new status of the record
+     */
+    private void updateCachedRoleRecord(String groupName, long roleId, String status) {
+        if(!this.checkinConfig.cacheWriteThrough()) {
+            invalidateCachedRoleRecords(groupName, "write");
+            return;
+        }
+
+        MDC.put("roleId", roleId);
+        patchCachedRoleRecords(groupName, List.of(), Map.of(roleId, status));
+    }
+
+    /***
+     * Apply the successful changes of a batch to the cached role records of a group, with a single update.
+     * If write-through is disabled, or the cache cannot be patched, the cached records are dropped.
+     * @param groupName The group the changes were made in
+     * @param changes The changes of the batch, only the ones that changed Check-in are applied
+     */
+    private void applyCachedRoleChanges(String groupName, List<RoleChange> changes) {
+        var added = new ArrayList<CheckinRole>();
+        var statusById = new HashMap<Long, String>();
+        boolean invalidate = !this.checkinConfig.cacheWriteThrough();
+        for(var change : changes) {
+            if(!change.changed)
+                continue;
+
+            if(null != change.record)
+                statusById.put(change.record.roleId, change.assign ? "Active" : "Deleted");
+            else if(!invalidate) {
+                var record = newCachedRoleRecord(groupName, change.added, change.checkinUserId, change.roleName);
+                if(null == record)
+                    invalidate = true;
+                else
+                    added.add(record);
+            }
+        }
+
+        if(added.isEmpty() && statusById.isEmpty())
+            // Nothing changed in Check-in
+            return;
+
+        if(invalidate) {
+            invalidateCachedRoleRecords(groupName, "write");
+            return;
+        }
+
+        patchCachedRoleRecords(groupName, added, statusById);
+    }
+
+    /***
+     * Construct the cached record of a role record that was added to Check-in.
+     * @param groupName The group the record was added to
+     * @param added Details of the new record, see also {@link CheckinObject}
+     * @param checkinUserId The user the record is about
+     * @param roleName The name of the role, or "member" for a membership record
+     * @return The record, null if Check-in did not return the Id of the new record
+     */
+    private CheckinRole newCachedRoleRecord(String groupName, CheckinObject added, String checkinUserId, String roleName) {
+        long roleId = 0;
+        try {
+            if(null != added && null != added.Id)
+                roleId = Long.parseLong(added.Id);
+        }
+        catch(NumberFormatException e) {
+            // Handled below
+        }
+
+        if(0 == roleId)
+            return null;
+
+        // Construct the record the same way it was sent to Check-in
+        final var coId = this.checkinConfig.coId();
+        final var isRole = !roleName.equals("member");
+        final var request = isRole ?
+                new CheckinRoleList(checkinUserId, groupName, coId, roleName, "member", "Active") :
+                new CheckinRoleList(checkinUserId, groupName, coId, "member", "Active");
+
+        var record = request.records.get(0);
+        record.roleId = roleId;
+        record.role = roleName.toLowerCase();
+        record.created = new Date();
+        record.modified = record.created;
+
+        // Use the full details of the user (names, emails) from the cached VO records
+        var person = findCachedPerson(checkinUserId);
+        if(null != person)
+            record.person = person;
+
+        return record;
+    }
+
+    /***
+     * Add new records and change the status of existing ones in the cached role records of a group,
+     * then notify the observers about all of them at once, and reload the records after the writes settle.
+     * If the cache cannot be patched, or an updated record is not in the cache (drift), the cached records are dropped.
+     * @param groupName The group the records belong to
+     * @param added The new records
+     * @param statusById The new status of the updated records, by record Id
+     */
+    private void patchCachedRoleRecords(String groupName, List<CheckinRole> added, Map<Long, String> statusById) {
+        final var coId = this.checkinConfig.coId();
+        final var updated = new ArrayList<CheckinRole>();
+        var patched = Checkin.recordCache.patchRecords(coId, groupName, records -> {
+            var copy = new CheckinRoleList(records);
+            updated.clear();
+            for(int i = 0; i < copy.records.size(); i++) {
+                var existing = copy.records.get(i);
+                var status = statusById.get(existing.roleId);
+                if(null != status) {
+                    // Replace the cached record, other callers may still be using the existing one
+                    var record = new CheckinRole(existing);
+                    record.status = status;
+                    record.deleted = status.equalsIgnoreCase("Deleted");
+                    record.modified = new Date();
+                    record.revision++;
+                    copy.records.set(i, record);
+                    updated.add(record);
+                }
+            }
+
+            copy.records.addAll(added);
+            return copy;
+        });
+
+        if(!patched) {
+            // Nothing cached for this group, will be loaded on the next call
+            invalidateCachedRoleRecords(groupName, "write");
+            return;
+        }
+
+        if(updated.size() != statusById.size()) {
+            // The cache does not reflect what is in Check-in, reload on next call
+            log.infof("Updated %d of %d records in cache, dropping cached role records", updated.size(), statusById.size());
+            invalidateCachedRoleRecords(groupName, "drift");
+            return;
+        }
+
+        var changes = new ArrayList<MembershipChanges.Change>(updated.size() + added.size());
+        for(var record : updated)
+            changes.add(new MembershipChanges.Change(MembershipChanges.Kind.UPDATED, record));
+        for(var record : added)
+            changes.add(new MembershipChanges.Change(MembershipChanges.Kind.ADDED, record));
+
+        publishChanges(new MembershipChanges(groupName, changes));
+        reloadCachedRoleRecordsAfterWrites(groupName);
+    }
+
+    /***
+     * Register an observer of changes to the role records of any group or VO,
+     * e.g. to invalidate derived caches or to audit role changes.
+     * Changes are detected when records are reloaded from Check-in, and when
+     * successful writes are applied to the cached records.
+     * @param listener Called with the changed records, must not block
+     */
+    public static void addChangeListener(Consumer<MembershipChanges> listener) {
+        changeListeners.add(listener);
     }
 
     /***
-     * Ensure no role records are cached (need to reload them on next API call)
+     * Unregister an observer of changes to role records
+     * @param listener The observer to remove
      */
-    private void invalidateCachedRoleRecords() {
-       Checkin.roleRecords = null;
-       Checkin.rolesUpdatedAt = 0;
+    public static void removeChangeListener(Consumer<MembershipChanges> listener) {
+        changeListeners.remove(listener);
+    }
+
+    /***
+     * Notify observers about changed role records
+     * @param changes The changed records
+     */
+    private void publishChanges(MembershipChanges changes) {
+        if(changes.isEmpty())
+            return;
+
+        MDC.put("groupName", changes.groupName);
+        log.debugf("%d role records changed", changes.changes.size());
+
+        if(this.checkinConfig.traceRoles()) {
+            for(var change : changes.changes) {
+                MDC.put("roleId", change.roleId);
+                MDC.put("roleName", change.role);
+                MDC.put("roleStatus", change.status);
+                MDC.put("userId", change.checkinUserId);
+                log.infof("recordId:%d %s %s:%s -> userId:%s", change.roleId, change.kind, change.status, change.role, change.checkinUserId);
+            }
+
+            MDC.remove("roleId");
+            MDC.remove("roleName");
+            MDC.remove("roleStatus");
+            MDC.remove("userId");
+        }
+
+        for(var listener : changeListeners) {
+            try {
+                listener.accept(changes);
+            }
+            catch(RuntimeException e) {
+                log.warn("Role change listener failed");
+                log.debug(e.getMessage());
+            }
+        }
+    }
+
+    /***
+     * Reload the cached role records of a group if a write failed in a way that shows our view of the
+     * group is out of date (e.g. the record we tried to update no longer exists).
+     * @param groupName The group the write was made in
+     * @param e The failure of the write
+     */
+    private void invalidateOnDrift(String groupName, Throwable e) {
+        var cause = e instanceof CheckinServiceException ? e : e.getCause();
+        if(cause instanceof CheckinServiceException ce) {
+            final var status = Status.fromStatusCode(ce.getResponse().getStatus());
+            if(Status.BAD_REQUEST != status)
+                invalidateCachedRoleRecords(groupName, "drift");
+        }
+    }
+
+    /***
+     * Find the details of a user in the cached VO records.
+     * @param checkinUserId The user to look for
+     * @return User details, null if not found
+     */
+    private CheckinRole.Person findCachedPerson(String checkinUserId) {
+        var cached = Checkin.recordCache.getRecords(this.checkinConfig.coId(), this.imsConfig.vo());
+        if(null == cached || null == cached.value.records)
+            return null;
+
+        for(var record : cached.value.records) {
+            if(null != record.person && checkinUserId.equals(record.person.checkinUserId()))
+                return record.person;
+        }
+
+        return null;
     }
 
     /**
@@ -86,12 +432,33 @@ public class Checkin {
     public boolean init(CheckinConfig checkinConfig, IntegratedManagementSystemConfig imsConfig, String stub) {
 
         this.stub = stub;
+        this.checkinConfig = checkinConfig;
+        this.imsConfig = imsConfig;
 
         if(null != checkin)
             return true;
 
-        this.checkinConfig = checkinConfig;
-        this.imsConfig = imsConfig;
+        synchronized(Checkin.class) {
+            if(null == recordCache) {
+                // Keep entries past their TTL when they can be served stale
+                final long retention = this.checkinConfig.cacheRefresh() ? this.checkinConfig.cacheMaxStale() : 0;
+                recordCache = new CheckinRecordCache(this.checkinConfig.cacheMaxEntries(), retention);
+                CheckinMetrics.registerGauges(recordCache, Checkin.membership,
+                        this.checkinConfig.coId(), this.imsConfig.vo(), this.imsConfig.group());
+            }
+
+            if(null == resilience)
+                resilience = new CheckinResilience(this.checkinConfig);
+
+            if(null == userInfoCache)
+                userInfoCache = Caffeine.newBuilder()
+                        .maximumSize(this.checkinConfig.cacheUserInfoMaxEntries())
+                        .expireAfter(new CheckinRecordCache.EntryExpiry<CheckinRecordCache.Entry<CheckinUser>>())
+                        .build();
+
+            if(null == snapshotFile && this.checkinConfig.cacheSnapshot().isPresent())
+                snapshotFile = new MembershipSnapshotFile(this.checkinConfig.cacheSnapshot().get());
+        }
 
         MDC.put("checkinServer", this.checkinConfig.server());
 
@@ -108,8 +475,8 @@ public class Checkin {
         }
 
         try {
-            // Create the REST client for EGI Check-in
-            var rcb = RestClientBuilder.newBuilder().baseUrl(urlCheckin);
+            // Create the REST client for EGI Check-in, with pooled keep-alive connections
+            var rcb = CheckinTransport.builder(this.checkinConfig, urlCheckin);
             checkin = rcb.build(CheckinService.class);
 
             MDC.remove("checkinServer");
@@ -137,7 +504,61 @@ public class Checkin {
             return Uni.createFrom().failure(new ActionException("notReady"));
         }
 
-        return checkin.getUserInfoAsync(token, stub);
+        return resilience.read(CheckinResilience.USER_INFO, () -> checkin.getUserInfoAsync(token, stub));
+    }
+
+    /***
+     * Retrieve information about authenticated user, from the cache if it was already
+     * retrieved with the same access token.
+     * @param token Check-in access token
+     * @param expiresAt When the access token expires, in seconds since epoch, 0 if not known
+     * @return User information, must not be modified as it may be cached
+     */
+    public Uni<CheckinUser> getUserInfoAsync(String token, long expiresAt) {
+        if(null == checkin) {
+            log.error("Check-in not ready, call init() first");
+            return Uni.createFrom().failure(new ActionException("notReady"));
+        }
+
+        // Do not keep the tokens, only their hashes
+        final var key = tokenHash(token);
+        var cached = null != key ? userInfoCache.getIfPresent(key) : null;
+        if(null != cached) {
+            log.debug("Using cached user info");
+            CheckinMetrics.cacheLookup(CheckinMetrics.USER_INFO, CheckinMetrics.HIT);
+            return Uni.createFrom().item(cached.value);
+        }
+
+        CheckinMetrics.cacheLookup(CheckinMetrics.USER_INFO, CheckinMetrics.MISS);
+
+        return getUserInfoAsync(token)
+            .invoke(userInfo -> {
+                // Cache until the token expires, at most for the configured time
+                long timeToLive = this.checkinConfig.cacheUserInfo();
+                if(expiresAt > 0)
+                    timeToLive = Math.min(timeToLive, expiresAt * 1000 - Instant.now().toEpochMilli());
+
+                if(null != key && null != userInfo && timeToLive > 0)
+                    userInfoCache.put(key, new CheckinRecordCache.Entry<>(userInfo, timeToLive));
+            });
+    }
+
+    /***
+     * Hash an access token, to be used as cache key
+     * @param token The access token, including the "Bearer " prefix if present
+     * @return Hash of the token, null if the token is missing or cannot be hashed
+     */
+    public static String tokenHash(String token) {
+        if(null == token || token.isBlank())
+            return null;
+
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        }
+        catch(NoSuchAlgorithmException e) {
+            return null;
+        }
     }
 
     /***
@@ -151,9 +572,31 @@ public class Checkin {
             return Uni.createFrom().failure(new ActionException("notReady"));
         }
 
+        final var coId = checkinConfig.coId();
+
+        // First check if we have them cached
+        var cached = recordCache.getGroups(coId);
+        if(recordsCached(cached)) {
+            log.info("Using cached groups");
+            CheckinMetrics.cacheLookup(CheckinMetrics.GROUPS, CheckinMetrics.HIT);
+            return Uni.createFrom().item(cached.value);
+        }
+
+        CheckinMetrics.cacheLookup(CheckinMetrics.GROUPS, CheckinMetrics.MISS);
+
         var header = getBasicAuthHeader();
-        var coId = checkinConfig.coId();
-        return checkin.listAllGroupsAsync(header, stub, coId);
+        return resilience.read(CheckinResilience.LIST_GROUPS, () -> checkin.listAllGroupsAsync(header, stub, coId))
+                .invoke(groups -> recordCache.putGroups(coId, groups, this.checkinConfig.cacheGroups()))
+                .onFailure().recoverWithUni(e -> {
+                    // Serve the last groups we got, if still retained
+                    var stale = recordCache.getGroups(coId);
+                    if(null == stale || null == stale.value)
+                        return Uni.createFrom().failure(e);
+
+                    log.warn("Check-in unavailable, using stale cached groups");
+                    CheckinMetrics.staleServed("groups");
+                    return Uni.createFrom().item(stale.value);
+                });
     }
 
     /***
@@ -172,15 +615,6 @@ public class Checkin {
         MDC.put("voName", voName);
         MDC.put("coId", this.checkinConfig.coId());
 
-        // First check if we have them cached
-        if(voMembersCached()) {
-            // We have a cache, and it's not stale
-            log.info("Using cached VO members");
-            var users = Checkin.voMembers;
-            List<CheckinUser> userList = new ArrayList<>(users.values());
-            return Uni.createFrom().item(userList);
-        }
-
         Uni<List<CheckinUser>> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
@@ -188,38 +622,325 @@ public class Checkin {
                 return getGroupMembersAndRolesAsync(voName);
             })
             .chain(voRoles -> {
-                // Got VO role records, keep just the membership ones
-                var members = filterList(voRoles.records, role -> role.role.equals("member"));
+                // Got VO role records, use the membership built from them
+                var members = getVoMembership(voRoles);
+                List<CheckinUser> userList = members.voMembers();
+                return Uni.createFrom().item(userList);
+            })
+            .onFailure().invoke(e -> {
+                log.error("Failed to get VO members");
+            });
 
-                Map<String, CheckinUser> users = new HashMap<>();
-                for(var role : members) {
-                    if(role.deleted || !role.status.equalsIgnoreCase("Active"))
-                        // Inactive membership record, skip
-                        continue;
+        return result;
+    }
 
-                    var user = new CheckinUser(role);
-                    if(!users.containsKey(user.checkinUserId))
-                        users.put(user.checkinUserId, user);
-                }
+    /***
+     * Get the membership of a group, built from the role records of both the configured VO and the group.
+     * Check-in does not enforce that users in a group are enrolled in the group's parent VO.
+     * Therefore, we must check ourselves and only consider group members that are also
+     * members of the VO. This means we need the VO role records too.
+     * @param groupName The group to get the membership of
+     * @return Indexed membership, see also {@link MembershipSnapshot}
+     */
+    private Uni<MembershipSnapshot> getMembershipAsync(String groupName) {
 
-                if(this.checkinConfig.traceRoles())
-                    logGroupMembers(members, users, false);
+        final var voName = this.imsConfig.vo();
+        final var voRecords = new ArrayList<CheckinRoleList>();
 
-                // Cache VO member list
-                Checkin.voMembers = users;
-                Checkin.voMembersUpdatedAt = Instant.now().toEpochMilli();
+        Uni<MembershipSnapshot> result = Uni.createFrom().nullItem()
 
-                // Return VO members
-                List<CheckinUser> userList = new ArrayList<>(users.values());
-                return Uni.createFrom().item(userList);
+            .chain(unused -> {
+                // Get VO role records
+                return getGroupMembersAndRolesAsync(voName);
             })
-            .onFailure().invoke(e -> {
-                log.error("Failed to get VO members");
+            .chain(voRoles -> {
+                // Got VO role records, get group role records
+                voRecords.add(voRoles);
+                return getGroupMembersAndRolesAsync(groupName);
+            })
+            .chain(groupRoles -> {
+                // Got group role records, reuse the membership if already built from these records
+                var snapshot = getGroupMembership(voRecords.get(0), groupName, groupRoles);
+                return Uni.createFrom().item(snapshot);
+            });
+
+        return result;
+    }
+
+    /***
+     * Get the membership of the VO, built from the specified VO role records.
+     * The published membership is reused if it was built from the same records,
+     * otherwise it is updated with the changed VO records.
+     * @param voRecords The role records of the VO
+     * @return Indexed membership, without group members and roles if no membership was published
+     */
+    private MembershipSnapshot getVoMembership(CheckinRoleList voRecords) {
+        var current = publishedMembership();
+        if(null != current && current.voRecords() == voRecords)
+            return current;
+
+        // Only rebuild the entries of the users whose VO records changed
+        var snapshot = null != current ?
+                current.update(voRecords, current.groupName(), current.groupRecords()) :
+                new MembershipSnapshot(voRecords, null, null);
+        if(this.checkinConfig.traceRoles())
+            logGroupMembers(voRecords.records, snapshot, false);
+
+        // Publish, unless a membership built from these VO records was published meanwhile
+        if(Checkin.membership.compareAndSet(current, snapshot))
+            scheduleExpiryCheck(snapshot);
+
+        return snapshot;
+    }
+
+    /***
+     * Get the membership of a group, built from the specified role records.
+     * The published membership is reused if it was built from the same records,
+     * otherwise it is updated with the changed records. Only the membership of the configured group is published.
+     * @param voRecords The role records of the VO
+     * @param groupName The group
+     * @param groupRecords The role records of the group
+     * @return Indexed membership
+     */
+    private MembershipSnapshot getGroupMembership(CheckinRoleList voRecords, String groupName, CheckinRoleList groupRecords) {
+        var current = publishedMembership();
+        if(null != current && current.builtFrom(voRecords, groupName, groupRecords))
+            return current;
+
+        // Only rebuild the entries of the users whose records changed
+        var snapshot = null != current ?
+                current.update(voRecords, groupName, groupRecords) :
+                new MembershipSnapshot(voRecords, groupName, groupRecords);
+        if(this.checkinConfig.traceRoles()) {
+            logGroupMembers(groupRecords.records, snapshot, true);
+            logGroupRoles(groupRecords.records, snapshot);
+        }
+
+        if(groupName.equals(this.imsConfig.group())) {
+            // Publish, unless another membership was published meanwhile
+            if(Checkin.membership.compareAndSet(current, snapshot)) {
+                Checkin.warm = true;
+                scheduleExpiryCheck(snapshot);
+                saveMembership(snapshot);
+            }
+        }
+
+        return snapshot;
+    }
+
+    /***
+     * Get the published membership, advanced past the validity boundaries (from/until) of the records
+     * that are due. This way memberships and roles start and end exactly at their boundaries,
+     * regardless of when the records are reloaded from Check-in.
+     * @return Published membership, null if none
+     */
+    private MembershipSnapshot publishedMembership() {
+        var current = Checkin.membership.get();
+        if(null == current)
+            return null;
+
+        final var now = Instant.now().toEpochMilli();
+        var advanced = current.advance(now);
+        if(advanced == current)
+            return current;
+
+        if(!Checkin.membership.compareAndSet(current, advanced))
+            // Replaced meanwhile, check the new one
+            return publishedMembership();
+
+        // The records did not change, but whether they count did
+        var voRecords = current.recordsDueBy(now, false);
+        publishChanges(new MembershipChanges(this.imsConfig.vo(), voRecords.stream()
+                .map(record -> new MembershipChanges.Change(MembershipChanges.Kind.UPDATED, record))
+                .toList()));
+        if(null != current.groupName()) {
+            var groupRecords = current.recordsDueBy(now, true);
+            publishChanges(new MembershipChanges(current.groupName(), groupRecords.stream()
+                    .map(record -> new MembershipChanges.Change(MembershipChanges.Kind.UPDATED, record))
+                    .toList()));
+        }
+
+        scheduleExpiryCheck(advanced);
+        return advanced;
+    }
+
+    /***
+     * Advance the published membership at the next validity boundary of its records,
+     * so that observers get notified even when no requests are made.
+     * @param snapshot The published membership
+     */
+    private void scheduleExpiryCheck(MembershipSnapshot snapshot) {
+        final var next = snapshot.nextBoundary();
+        if(Long.MAX_VALUE == next)
+            return;
+
+        final var now = Instant.now().toEpochMilli();
+        final var scheduled = Checkin.expiryCheckAt.get();
+        if(scheduled <= next && scheduled >= now)
+            // A check at or before this boundary is pending
+            return;
+
+        if(!Checkin.expiryCheckAt.compareAndSet(scheduled, next))
+            // Another check was scheduled meanwhile
+            return;
+
+        Uni.createFrom().voidItem()
+            .onItem().delayIt().by(Duration.ofMillis(Math.max(0, next - now)))
+            .subscribe().with(unused -> {
+                Checkin.expiryCheckAt.compareAndSet(next, Long.MAX_VALUE);
+                var advanced = publishedMembership();
+                if(null != advanced)
+                    scheduleExpiryCheck(advanced);
+            });
+    }
+
+    /***
+     * Check if the membership of the configured group is available, i.e. requests
+     * can be served without waiting for Check-in.
+     * @return True once the membership was loaded from Check-in or restored from the snapshot file
+     */
+    public static boolean isWarm() {
+        return Checkin.warm;
+    }
+
+    /***
+     * Save the membership of the configured group to the snapshot file, in the background.
+     * @param snapshot The membership to save
+     */
+    private void saveMembership(MembershipSnapshot snapshot) {
+        if(null == Checkin.snapshotFile)
+            return;
+
+        final var coId = this.checkinConfig.coId();
+        final var cachedVo = recordCache.getRecords(coId, this.imsConfig.vo());
+        final var cachedGroup = recordCache.getRecords(coId, snapshot.groupName());
+        if(null == cachedVo || cachedVo.value != snapshot.voRecords() ||
+           null == cachedGroup || cachedGroup.value != snapshot.groupRecords())
+            // The cached records changed meanwhile, the membership built from them will be saved
+            return;
+
+        var content = new MembershipSnapshotFile.Content();
+        content.coId = coId;
+        content.vo = this.imsConfig.vo();
+        content.group = snapshot.groupName();
+        content.voUpdatedAt = cachedVo.updatedAt;
+        content.voRecords = cachedVo.value;
+        content.groupUpdatedAt = cachedGroup.updatedAt;
+        content.groupRecords = cachedGroup.value;
+
+        Checkin.snapshotFile.saveAsync(content, Infrastructure.getDefaultWorkerPool());
+    }
+
+    /***
+     * Restore the membership of the configured group from the snapshot file, if it is not too old.
+     * The restored records are cached with the time they were loaded from Check-in, so they will be
+     * reloaded (in the background, when refreshing caches) once they are stale.
+     * This performs blocking I/O, call it at startup.
+     * @return True if the membership was restored
+     */
+    public boolean restoreMembership() {
+        if(null == Checkin.snapshotFile || null != Checkin.membership.get())
+            return false;
+
+        var content = Checkin.snapshotFile.load();
+        if(null == content || null == content.voRecords || null == content.groupRecords)
+            return false;
+
+        final var coId = this.checkinConfig.coId();
+        final var vo = this.imsConfig.vo();
+        final var group = this.imsConfig.group();
+        if(!coId.equals(content.coId) || !vo.equals(content.vo) || !group.equals(content.group)) {
+            log.info("Membership snapshot is for another VO or group, ignoring it");
+            return false;
+        }
+
+        final var voTimeToLive = cacheTimeToLive(vo);
+        final var groupTimeToLive = cacheTimeToLive(group);
+        if(!cacheUsable(content.voUpdatedAt, voTimeToLive) || !cacheUsable(content.groupUpdatedAt, groupTimeToLive)) {
+            log.info("Membership snapshot is too old, ignoring it");
+            return false;
+        }
+
+        recordCache.putRecords(coId, vo, content.voRecords, content.voUpdatedAt, voTimeToLive);
+        recordCache.putRecords(coId, group, content.groupRecords, content.groupUpdatedAt, groupTimeToLive);
+        getGroupMembership(content.voRecords, group, content.groupRecords);
+
+        log.info("Restored membership snapshot");
+        return true;
+    }
+
+    /***
+     * Reload the cached VO members and role records of the configured group, if they are
+     * about to expire. Used to refresh the caches in the background, so that requests are
+     * served from the cache without waiting for Check-in.
+     * @param lead Reload caches that expire within this many milliseconds
+     * @return True if all reloads succeeded, failures are logged but do not fail the returned Uni
+     */
+    public Uni<Boolean> refreshCachesAsync(long lead) {
+        if(null == checkin) {
+            log.error("Check-in not ready, call init() first");
+            return Uni.createFrom().failure(new ActionException("notReady"));
+        }
+
+        final var vo = this.imsConfig.vo();
+        final var group = this.imsConfig.group();
+        final var cachedVo = recordCache.getRecords(this.checkinConfig.coId(), vo);
+        final var refreshVo = null == cachedVo ||
+                cacheStale(cachedVo.updatedAt, cachedVo.timeToLive, lead);
+        final var cachedGroup = recordCache.getRecords(this.checkinConfig.coId(), group);
+        final var refreshGroup = null == cachedGroup ||
+                cacheStale(cachedGroup.updatedAt, cachedGroup.timeToLive, lead);
+
+        Uni<Boolean> result = Uni.createFrom().nullItem()
+
+            .chain(unused -> {
+                if(!refreshVo)
+                    return Uni.createFrom().item(true);
+
+                log.debug("Refreshing cached VO members");
+                return fetchSharedAsync(vo, CheckinMetrics.ON_SCHEDULE)
+                        .replaceWith(true)
+                        .onFailure().recoverWithItem(e -> {
+                            log.warn("Failed to refresh cached VO members");
+                            return false;
+                        });
+            })
+            .chain(voRefreshed -> {
+                if(!refreshGroup || null == group || group.isBlank())
+                    return Uni.createFrom().item(voRefreshed);
+
+                log.debug("Refreshing cached group role records");
+                return fetchSharedAsync(group, CheckinMetrics.ON_SCHEDULE)
+                        .replaceWith(voRefreshed)
+                        .onFailure().recoverWithItem(e -> {
+                            log.warn("Failed to refresh cached group role records");
+                            return false;
+                        });
+            })
+            .chain(refreshed -> {
+                if((!refreshVo && !refreshGroup) || null == group || group.isBlank())
+                    return Uni.createFrom().item(refreshed);
+
+                // Build the membership from the reloaded records now, so that requests do not have to
+                return getMembershipAsync(group)
+                        .replaceWith(refreshed)
+                        .onFailure().recoverWithItem(e -> false);
             });
 
         return result;
     }
 
+    /***
+     * Run a cache reload in the background, without making the caller wait for it.
+     * Failures are logged, the stale cache keeps being served until it exceeds the max staleness.
+     * @param reload The reload to run
+     */
+    private void revalidate(Uni<?> reload) {
+        reload.subscribe().with(
+            unused -> log.debug("Refreshed stale cache"),
+            e -> log.warn("Failed to refresh stale cache"));
+    }
+
     /***
      * List all members of a group or virtual organization (VO).
      * Although multiple membership records can exist for a user, e.g. with different
@@ -235,25 +956,13 @@ public class Checkin {
         Uni<List<CheckinUser>> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
-                // Check-in does not enforce that users in a group are enrolled in the group's parent VO.
-                // Therefore, we must check ourselves and only return group members that are also
-                // members of the VO. This means we need the list of VO members, even if we are being
-                // called just to list members of the configured group.
-                return listVoMembersAsync(this.imsConfig.vo());
-            })
-            .chain(vom -> {
-                // VO members are now cached, get group role records
+                // Get the membership of the group, which only includes users that are also VO members
                 log.info("Getting members of group " + groupName);
-                return getGroupMembersAndRolesAsync(groupName);
+                return getMembershipAsync(groupName);
             })
-            .chain(groupRoles -> {
-                // Got group role records, keep just the membership ones
-                var members = filterToGroupMembers(groupRoles, this.checkinConfig.traceRoles());
-                if(null == members)
-                    return Uni.createFrom().failure(new ActionException("notReady"));
-
+            .chain(membership -> {
                 // Return group members
-                List<CheckinUser> userList = new ArrayList<>(members.values());
+                List<CheckinUser> userList = membership.groupMembers();
                 return Uni.createFrom().item(userList);
             })
             .onFailure().invoke(e -> {
@@ -263,46 +972,6 @@ public class Checkin {
         return result;
     }
 
-    /***
-     * Filter records to the ones that indicate membership in the group.
-     * @param groupRoles List of Check-in role records
-     * @param logRecords Whether to dump the membership records in the log
-     * @return List of member users, null on error
-     */
-    private Map<String, CheckinUser> filterToGroupMembers(CheckinRoleList groupRoles, boolean logRecords) {
-        if(!voMembersCached()) {
-            // We need the VO members to be already cached
-            log.error("Cannot filter group members, VO members not loaded");
-            return null;
-        }
-
-        // Keep just the records that mean membership in the group
-        var members = filterList(groupRoles.records, role -> role.role.equals("member"));
-
-        Map<String, CheckinUser> users = new HashMap<>();
-        for(var role : members) {
-            if(role.deleted || null == role.status || !role.status.equalsIgnoreCase("Active"))
-                // Not an active membership record, skip
-                continue;
-
-            // Only include users that are members of the configured VO
-            var user = new CheckinUser(role);
-            if(null == user.checkinUserId || user.checkinUserId.isBlank())
-                // Skip invalid users too
-                continue;
-
-            if(null != Checkin.voMembers && Checkin.voMembers.containsKey(user.checkinUserId) &&
-                    !users.containsKey(user.checkinUserId))
-                // This is a membership record, not a role record
-                users.put(user.checkinUserId, user);
-        }
-
-        if(logRecords)
-            logGroupMembers(members, users, true);
-
-        return users;
-    }
-
     /***
      * Add a user to a group.
      * @param checkinUserId The Id of the user to add to the group
@@ -334,19 +1003,13 @@ public class Checkin {
                 // add a new record for the role, we must check whether there is a record for this role
                 // that is marked deleted, and if so restore that instead of adding a new one.
                 // First, get the group membership records.
-                return getGroupMembersAndRolesAsync(groupName);
+                return getMembershipAsync(groupName);
             })
-            .chain(roles -> {
+            .chain(membership -> {
                 // Got group membership records
-                var deleted = filterList(roles.records,
-                                         role -> checkinUserId.equals(role.person.checkinUserId()) &&
-                                                 role.role.equals("member") &&
-                                                 (role.deleted || role.status.equalsIgnoreCase("Deleted")) &&
-                                                 null == role.from && null == role.until);
-
-                if(!deleted.isEmpty()) {
+                var deletedRole = membership.deletedRecord(checkinUserId, MembershipSnapshot.MEMBER);
+                if(null != deletedRole) {
                     // Deleted membership record found, restore it
-                    var deletedRole = deleted.get(0);
                     MDC.put("roleId", deletedRole.roleId);
 
                     log.info("Restore membership record");
@@ -357,7 +1020,8 @@ public class Checkin {
 
                     // Restore group membership
                     var restoreRoles = new CheckinRoleList(checkinUserId, groupName, coId, "member", "Active");
-                    return checkin.updateUserRoleAsync(header, stub, deletedRole.roleId, restoreRoles);
+                    return resilience.write(CheckinResilience.UPDATE_ROLE,
+                            () -> checkin.updateUserRoleAsync(header, stub, deletedRole.roleId, restoreRoles));
                 }
 
                 // Signal that we need to add a new membership record
@@ -371,7 +1035,8 @@ public class Checkin {
                     log.info("Add membership record");
 
                     var addRoles = new CheckinRoleList(checkinUserId, groupName, coId, "member", "Active");
-                    return checkin.addUserRoleAsync(header, stub, addRoles);
+                    return resilience.write(CheckinResilience.ADD_ROLE,
+                            () -> checkin.addUserRoleAsync(header, stub, addRoles));
                 }
 
                 // Uniformize the response of the add and update Check-in endpoints
@@ -384,33 +1049,22 @@ public class Checkin {
                 return Uni.createFrom().item(updatedObject);
             })
             .chain(updated -> {
-                // Success, invalidate cached role records
-                invalidateCachedRoleRecords();
+                // Success, update cached role records
+                if(deletedRoles.isEmpty())
+                    addCachedRoleRecord(groupName, updated, checkinUserId, "member");
+                else
+                    updateCachedRoleRecord(groupName, deletedRoles.get(0).roleId, "Active");
+
                 return Uni.createFrom().item(updated);
             })
             .onFailure().recoverWithUni(e -> {
                 log.errorf("Failed to %s membership record", deletedRoles.isEmpty() ? "add" : "restore");
 
-                // Check if this is a 400 error, if so pass the messages
-                // detailing what is wrong with which field to the caller
-                var fieldErrors = getBadRequestFieldErrors(e);
-                if(null != fieldErrors) {
-                    // Use the first field error as the description
-                    String description = null;
-                    String field = null;
-                    for (var entry : fieldErrors.entrySet()) {
-                        field = entry.getKey();
-                        description = entry.getValue();
-                        break;
-                    }
+                invalidateOnDrift(groupName, e);
 
-                    if(null != field && null != description) {
-                        var ae = new ActionException("badRequest", description, Tuple2.of("field", field));
-                        return Uni.createFrom().failure(ae);
-                    }
-                }
-
-                return Uni.createFrom().failure(e);
+                // If this is a 400 error, pass the messages detailing
+                // what is wrong with which field to the caller
+                return Uni.createFrom().failure(writeFailure(e));
             });
 
         return result;
@@ -435,32 +1089,28 @@ public class Checkin {
         MDC.put("userId", checkinUserId);
 
         final var header = getBasicAuthHeader();
-        final var deletedRoles = new ArrayList<CheckinRole>();
+        final var activeRoles = new ArrayList<CheckinRole>();
 
         Uni<Boolean> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
                 // First, get the group membership records
-                return getGroupMembersAndRolesAsync(groupName);
+                return getMembershipAsync(groupName);
             })
-            .chain(roles -> {
+            .chain(membership -> {
                 // Got group membership records
-                var active = filterList(roles.records,
-                                        role -> checkinUserId.equals(role.person.checkinUserId()) &&
-                                                role.role.equals("member") &&
-                                                !role.deleted && !role.status.equalsIgnoreCase("Deleted") &&
-                                                null == role.from && null == role.until);
-
-                if(!active.isEmpty()) {
+                var activeRole = membership.activeRecord(checkinUserId, MembershipSnapshot.MEMBER);
+                if(null != activeRole) {
                     // Active membership record found, delete it
-                    var activeRole = active.get(0);
                     MDC.put("roleId", activeRole.roleId);
 
                     log.info("Delete membership record");
+                    activeRoles.add(activeRole);
 
                     // Delete group membership
                     var deleteRoles = new CheckinRoleList(checkinUserId, groupName, coId, "member", "Deleted");
-                    return checkin.updateUserRoleAsync(header, stub, activeRole.roleId, deleteRoles);
+                    return resilience.write(CheckinResilience.UPDATE_ROLE,
+                            () -> checkin.updateUserRoleAsync(header, stub, activeRole.roleId, deleteRoles));
                 }
 
                 // Nothing to do
@@ -468,33 +1118,20 @@ public class Checkin {
             })
             .chain(updated -> {
                 // Membership record marked deleted, success
-                // Invalidate cached role records
-                invalidateCachedRoleRecords();
+                // Update cached role records
+                if(!activeRoles.isEmpty())
+                    updateCachedRoleRecord(groupName, activeRoles.get(0).roleId, "Deleted");
+
                 return Uni.createFrom().item(true);
             })
             .onFailure().recoverWithUni(e -> {
                 log.error("Failed to delete membership record");
 
-                // Check if this is a 400 error, if so pass the messages
-                // detailing what is wrong with which field to the caller
-                var fieldErrors = getBadRequestFieldErrors(e);
-                if(null != fieldErrors) {
-                    // Use the first field error as the description
-                    String description = null;
-                    String field = null;
-                    for (var entry : fieldErrors.entrySet()) {
-                        field = entry.getKey();
-                        description = entry.getValue();
-                        break;
-                    }
+                invalidateOnDrift(groupName, e);
 
-                    if(null != field && null != description) {
-                        var ae = new ActionException("badRequest", description, Tuple2.of("field", field));
-                        return Uni.createFrom().failure(ae);
-                    }
-                }
-
-                return Uni.createFrom().failure(e);
+                // If this is a 400 error, pass the messages detailing
+                // what is wrong with which field to the caller
+                return Uni.createFrom().failure(writeFailure(e));
             });
 
         return result;
@@ -503,7 +1140,7 @@ public class Checkin {
     /***
      * List all users with assigned roles in a group.
      * @param groupName The group under which assigned roles are considered
-     * @param roleName Only return users holding roles that match this expression.
+     * @param roleName Only return users holding roles that begin with this fragment (or match this expression).
      *                 If empty or null, all users holding roles are returned.
      *                 Note: Using this parameter means the returned users will not have
      *                 all their roles reported, just the ones matching this expression.
@@ -518,25 +1155,14 @@ public class Checkin {
         Uni<List<CheckinUser>> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
-                // Check-in does not enforce that users in a group are enrolled in the group's parent VO.
-                // Therefore, we must check ourselves and only return group members that are also
-                // members of the VO. This means we need the list of VO members, even if we are being
-                // called just to list members of the configured group.
-                return listVoMembersAsync(this.imsConfig.vo());
-            })
-            .chain(vom -> {
-                // VO members are now cached, get group role records
+                // Get the membership of the group, roles are only considered for users
+                // that are members of both the VO and the group
                 log.info("Getting users with roles in group " + groupName);
-                return getGroupMembersAndRolesAsync(groupName);
+                return getMembershipAsync(groupName);
             })
-            .chain(groupRoles -> {
-                // Got group role records, keep just the role ones
-                var usersWithRoles = filterToUsersWithGroupRoles(groupRoles, roleName, this.checkinConfig.traceRoles());
-                if(null == usersWithRoles)
-                    return Uni.createFrom().failure(new ActionException("notReady"));
-
+            .chain(membership -> {
                 // Return users with roles
-                List<CheckinUser> users = usersWithRoles.values().stream().toList();
+                List<CheckinUser> users = membership.usersWithRoles(roleName);
                 return Uni.createFrom().item(users);
             })
             .onFailure().invoke(e -> {
@@ -546,80 +1172,6 @@ public class Checkin {
         return result;
     }
 
-    /***
-     * Filter records to the ones that indicate assigned roles in the group.
-     * @param groupRoles List of Check-in role records
-     * @param roleName Only return users holding roles that match this expression.
-     *                 If empty or null, all users holding roles are returned.
-     *                 Note: Using this parameter means the returned users will not have
-     *                 all their roles reported, just the ones matching this expression.
-     * @param logRecords Whether to dump the records in the log
-     * @return List of users holding roles in the group, null on error.
-     *         Unlike the cached list of VO members, the users in the returned list
-     *         will have their <b>roles</b> field filled.
-     */
-    private Map<String, CheckinUser> filterToUsersWithGroupRoles(CheckinRoleList groupRoles, String roleName, boolean logRecords) {
-        if(!voMembersCached()) {
-            // We need the VO members to be already cached
-            log.error("Cannot filter group roles, VO members not loaded");
-            return null;
-        }
-
-        // When determining assigned roles, ensure the user is a member in both the VO and the group
-        // The VO members are cached, but the group members we need to calculate
-        var members = filterToGroupMembers(groupRoles, false);
-
-        // Keep just the records that mean assigned role in the group
-        // If an expression is specified, consider just matching roles
-        final String rexRole = null != roleName ? roleName.replace("-", "\\-") + ".*" : null;
-        var records = filterList(groupRoles.records, role -> {
-            if(role.checkIfRole()) {
-                return null == roleName || roleName.isBlank() || role.role.matches(rexRole);
-            }
-
-            return false;
-        });
-
-        Map<String, CheckinUser> users = new HashMap<>();    // Users with assigned roles
-        for(var role : records) {
-            if(role.deleted || !role.status.equalsIgnoreCase("Active"))
-                // Not an active role record, skip
-                continue;
-
-            // Only include users that are members of both the VO and the group
-            var user = new CheckinUser(role);
-            if(null == user.checkinUserId || user.checkinUserId.isBlank())
-                // Skip invalid users too
-                continue;
-
-            if(null != Checkin.voMembers && Checkin.voMembers.containsKey(user.checkinUserId) &&
-                    members.containsKey(user.checkinUserId)) {
-                // The user mentioned in this role record is both a VO and group member
-                if(users.containsKey(user.checkinUserId)) {
-                    // This user already holds some role, add this role too
-                    var existingUser = users.get(user.checkinUserId);
-                    if(null == existingUser) {
-                        log.error("User should already hold some role(s)");
-                        continue;
-                    }
-
-                    // Store role name in the user
-                    existingUser.addRole(role.role);
-                    continue;
-                }
-
-                // This user does not yet hold any role, add it
-                user.addRole(role.role);
-                users.put(user.checkinUserId, user);
-            }
-        }
-
-        if(logRecords)
-            logGroupRoles(records, users);
-
-        return users;
-    }
-
     /***
      * List all roles currently assigned in a group.
      * @param groupName The group under which assigned roles are considered
@@ -638,25 +1190,14 @@ public class Checkin {
         Uni<List<RoleInfo>> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
-                // Check-in does not enforce that users in a group are enrolled in the group's parent VO.
-                // Therefore, we must check ourselves and only return group members that are also
-                // members of the VO. This means we need the list of VO members, even if we are being
-                // called just to list members of the configured group.
-                return listVoMembersAsync(this.imsConfig.vo());
-            })
-            .chain(vom -> {
-                // VO members are now cached, get group role records
+                // Get the membership of the group, roles are only considered for users
+                // that are members of both the VO and the group
                 log.info("Getting assigned roles in group " + groupName);
-                return getGroupMembersAndRolesAsync(groupName);
+                return getMembershipAsync(groupName);
             })
-            .chain(groupRoles -> {
-                // Got group role records, keep just the role ones
-                var rolesWithUsers = filterToGroupRoles(groupRoles, roleName, this.checkinConfig.traceRoles());
-                if(null == rolesWithUsers)
-                    return Uni.createFrom().failure(new ActionException("notReady"));
-
+            .chain(membership -> {
                 // Return roles
-                List<RoleInfo> roles = rolesWithUsers.values().stream().toList();
+                List<RoleInfo> roles = membership.roles(roleName);
                 return Uni.createFrom().item(roles);
             })
             .onFailure().invoke(e -> {
@@ -666,110 +1207,6 @@ public class Checkin {
         return result;
     }
 
-    /***
-     * Filter records to the ones that indicate assigned roles in the group.
-     * @param groupRoles List of Check-in role records
-     * @param roleName Role name fragment or regular expression
-     * @param logRecords Whether to dump the records in the log
-     * @return Roles currently assigned in the group, null on error.
-     *         Unlike the cached list of VO members, the users in the returned roles
-     *         will have their <b>roles</b> field filled.
-     */
-    private Map<String, RoleInfo> filterToGroupRoles(CheckinRoleList groupRoles, String roleName, boolean logRecords) {
-        if (!voMembersCached()) {
-            // We need the VO members to be already cached
-            log.error("Cannot filter group roles, VO members not loaded");
-            return null;
-        }
-
-        // When determining assigned roles, ensure the user is a member in both the VO and the group
-        // The VO members are cached, but the group members we need to calculate
-        var members = filterToGroupMembers(groupRoles, false);
-
-        // Keep just the records that mean assigned role in the group
-        // If an expression is specified, consider just matching roles
-        final String rexRole = null != roleName ? roleName.replace("-", "\\-") + ".*" : null;
-        var records = filterList(groupRoles.records, role -> {
-            if(role.checkIfRole()) {
-                return null == roleName || roleName.isBlank() || role.role.matches(rexRole);
-            }
-
-            return false;
-        });
-
-        Map<String, CheckinUser> users = new HashMap<>(); // Users with assigned roles
-        Map<String, RoleInfo> roles = new HashMap<>();   // Roles assigned in the group
-        Map<String, Set<String>> roleUsers = new HashMap<>(); // Tracks which role is assigned to which users
-        for(var roleRecord : records) {
-            if(roleRecord.deleted || !roleRecord.status.equalsIgnoreCase("Active"))
-                // Not an active role record, skip
-                continue;
-
-            // Only include users that are members of both the VO and the group
-            var user = new CheckinUser(roleRecord);
-            if(null == user.checkinUserId || user.checkinUserId.isBlank())
-                // Skip invalid users too
-                continue;
-
-            if(null != Checkin.voMembers && Checkin.voMembers.containsKey(user.checkinUserId) &&
-                    members.containsKey(user.checkinUserId)) {
-                // The user mentioned in this role record is both a VO and group member
-                RoleInfo role = null;
-                Set<String> usersWithRole = null;
-                if(roles.containsKey(roleRecord.role)) {
-                    role = roles.get(roleRecord.role);
-                    usersWithRole = roleUsers.get(roleRecord.role);
-                }
-                else {
-                    // This is a role we see for the first time
-                    role = new RoleInfo(roleRecord.role);
-                    roles.put(roleRecord.role, role);
-
-                    usersWithRole = new HashSet<>();
-                    roleUsers.put(roleRecord.role, usersWithRole);
-                }
-
-                if(users.containsKey(user.checkinUserId)) {
-                    // This user already holds some role, add this role too
-                    var existingUser = users.get(user.checkinUserId);
-                    if(null == existingUser) {
-                        log.error("User should already hold some role(s)");
-                        continue;
-                    }
-
-                    // Store role name in the user
-                    existingUser.addRole(role.role);
-
-                    if(!usersWithRole.contains(existingUser.checkinUserId))
-                        // Store the user in the role
-                        role.addUser(existingUser);
-
-                    // Remember that we added this user to this role, as the role's user collection allows duplicates
-                    usersWithRole.add(existingUser.checkinUserId);
-                    continue;
-                }
-
-                // This user does not hold any role yet, add it
-                users.put(user.checkinUserId, user);
-
-                // Store role name in the user
-                user.addRole(roleRecord.role);
-
-                if(!usersWithRole.contains(user.checkinUserId))
-                    // Store the user in the role
-                    role.addUser(user);
-
-                // Remember that we added this user to this role, as the role's user collection allows duplicates
-                usersWithRole.add(user.checkinUserId);
-            }
-        }
-
-        if(logRecords)
-            logGroupRoles(records, users);
-
-        return roles;
-    }
-
     /***
      * Assign a role to a user.
      * @param checkinUserId The Id of the user to assign the role to
@@ -783,15 +1220,16 @@ public class Checkin {
             return Uni.createFrom().failure(new ActionException("notReady"));
         }
 
-        if(voMembersCached()) {
-            if(!Checkin.voMembers.containsKey(checkinUserId)) {
+        final var coId = checkinConfig.coId();
+
+        final var cachedVo = recordCache.getRecords(coId, this.imsConfig.vo());
+        if(recordsCached(cachedVo)) {
+            if(!getVoMembership(cachedVo.value).isVoMember(checkinUserId)) {
                 log.error("Unknown user");
                 return Uni.createFrom().failure(new ActionException("notFound", "Unknown user"));
             }
         }
 
-        final var coId = checkinConfig.coId();
-
         MDC.put("coId", coId);
         MDC.put("groupName", groupName);
         MDC.put("roleName", roleName);
@@ -803,41 +1241,30 @@ public class Checkin {
         Uni<CheckinObject> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
-                // We need the list of VO members to be able to determine group membership
-                return listVoMembersAsync(this.imsConfig.vo());
-            })
-            .chain(vom -> {
                 // Check-in allows multiple role records for the same role.
                 // However, once there are multiple records, with (at least) one being marked deleted,
                 // attempts to remove the role from the user (by marking it deleted) will fail,
                 // as there is already a record marked deleted for the role. Therefore, before we
                 // add a new record for the role, we must check whether there is a record for this role
                 // that is marked deleted, and if so restore that instead of adding a new one.
-                // First, get the group role records.
-                return getGroupMembersAndRolesAsync(groupName);
+                // First, get the group role records (the membership also considers the VO members).
+                return getMembershipAsync(groupName);
             })
-            .chain(roles -> {
+            .chain(membership -> {
                 // Got group role records, check if the user is a member of the group
-                var members = filterToGroupMembers(roles, false);
-                if(null == members || !members.containsKey(checkinUserId)) {
+                if(!membership.isGroupMember(checkinUserId)) {
                     // The user is not member of the group, cannot assign roles
                     log.error("User not member of group, cannot assign role");
                     return Uni.createFrom().failure(new ActionException("badRequest", "Cannot assign role to non-member"));
                 }
 
-                return Uni.createFrom().item(roles);
+                return Uni.createFrom().item(membership);
             })
-            .chain(roles -> {
+            .chain(membership -> {
                 // Got group role records
-                var deleted = filterList(roles.records,
-                        role -> checkinUserId.equals(role.person.checkinUserId()) &&
-                                role.checkIfRole() && role.role.equalsIgnoreCase(roleName) &&
-                                (role.deleted || role.status.equalsIgnoreCase("Deleted")) &&
-                                null == role.from && null == role.until);
-
-                if(!deleted.isEmpty()) {
+                var deletedRole = membership.deletedRecord(checkinUserId, roleName);
+                if(null != deletedRole) {
                     // Deleted role record found, restore it
-                    var deletedRole = deleted.get(0);
                     MDC.put("roleId", deletedRole.roleId);
 
                     log.info("Restore role record");
@@ -848,7 +1275,8 @@ public class Checkin {
 
                     // Restore role
                     var restoreRoles = new CheckinRoleList(checkinUserId, groupName, coId, roleName, "member", "Active");
-                    return checkin.updateUserRoleAsync(header, stub, deletedRole.roleId, restoreRoles);
+                    return resilience.write(CheckinResilience.UPDATE_ROLE,
+                            () -> checkin.updateUserRoleAsync(header, stub, deletedRole.roleId, restoreRoles));
                 }
 
                 // Signal that we need to add a new role record
@@ -862,7 +1290,8 @@ public class Checkin {
                     log.info("Add role record");
 
                     var addRoles = new CheckinRoleList(checkinUserId, groupName, coId, roleName, "member", "Active");
-                    return checkin.addUserRoleAsync(header, stub, addRoles);
+                    return resilience.write(CheckinResilience.ADD_ROLE,
+                            () -> checkin.addUserRoleAsync(header, stub, addRoles));
                 }
 
                 // Uniformize the response of the add and update Check-in endpoints
@@ -875,33 +1304,22 @@ public class Checkin {
                 return Uni.createFrom().item(updatedObject);
             })
             .chain(updated -> {
-                // Success, invalidate role cache
-                invalidateCachedRoleRecords();
+                // Success, update role cache
+                if(deletedRoles.isEmpty())
+                    addCachedRoleRecord(groupName, updated, checkinUserId, roleName);
+                else
+                    updateCachedRoleRecord(groupName, deletedRoles.get(0).roleId, "Active");
+
                 return Uni.createFrom().item(updated);
             })
             .onFailure().recoverWithUni(e -> {
                 log.errorf("Failed to %s role record", deletedRoles.isEmpty() ? "add" : "restore");
 
-                // Check if this is a 400 error, if so pass the messages
-                // detailing what is wrong with which field to the caller
-                var fieldErrors = getBadRequestFieldErrors(e);
-                if(null != fieldErrors) {
-                    // Use the first field error as the description
-                    String description = null;
-                    String field = null;
-                    for (var entry : fieldErrors.entrySet()) {
-                        field = entry.getKey();
-                        description = entry.getValue();
-                        break;
-                    }
+                invalidateOnDrift(groupName, e);
 
-                    if(null != field && null != description) {
-                        var ae = new ActionException("badRequest", description, Tuple2.of("field", field));
-                        return Uni.createFrom().failure(ae);
-                    }
-                }
-
-                return Uni.createFrom().failure(e);
+                // If this is a 400 error, pass the messages detailing
+                // what is wrong with which field to the caller
+                return Uni.createFrom().failure(writeFailure(e));
             });
 
         return result;
@@ -927,32 +1345,28 @@ public class Checkin {
         MDC.put("userId", checkinUserId);
 
         final var header = getBasicAuthHeader();
-        final var deletedRoles = new ArrayList<CheckinRole>();
+        final var activeRoles = new ArrayList<CheckinRole>();
 
         Uni<Boolean> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
                 // First, get the group membership records
-                return getGroupMembersAndRolesAsync(groupName);
+                return getMembershipAsync(groupName);
             })
-            .chain(roles -> {
+            .chain(membership -> {
                 // Got group membership records
-                var active = filterList(roles.records,
-                        role -> checkinUserId.equals(role.person.checkinUserId()) &&
-                                role.checkIfRole() && role.role.equalsIgnoreCase(roleName) &&
-                                !role.deleted && !role.status.equalsIgnoreCase("Deleted") &&
-                                null == role.from && null == role.until);
-
-                if(!active.isEmpty()) {
+                var activeRole = membership.activeRecord(checkinUserId, roleName);
+                if(null != activeRole) {
                     // Active role record found, delete it
-                    var activeRole = active.get(0);
                     MDC.put("roleId", activeRole.roleId);
 
                     log.info("Delete role record");
+                    activeRoles.add(activeRole);
 
                     // Delete role
                     var deleteRoles = new CheckinRoleList(checkinUserId, groupName, coId, roleName, "member", "Deleted");
-                    return checkin.updateUserRoleAsync(header, stub, activeRole.roleId, deleteRoles);
+                    return resilience.write(CheckinResilience.UPDATE_ROLE,
+                            () -> checkin.updateUserRoleAsync(header, stub, activeRole.roleId, deleteRoles));
                 }
 
                 // Nothing to do
@@ -960,38 +1374,168 @@ public class Checkin {
             })
             .chain(updated -> {
                 // Role record marked deleted, success
-                // Invalidate role cache
-                invalidateCachedRoleRecords();
+                // Update role cache
+                if(!activeRoles.isEmpty())
+                    updateCachedRoleRecord(groupName, activeRoles.get(0).roleId, "Deleted");
+
                 return Uni.createFrom().item(true);
             })
             .onFailure().recoverWithUni(e -> {
                 log.error("Failed to delete role record");
 
-                // Check if this is a 400 error, if so pass the messages
-                // detailing what is wrong with which field to the caller
-                var fieldErrors = getBadRequestFieldErrors(e);
-                if(null != fieldErrors) {
-                    // Use the first field error as the description
-                    String description = null;
-                    String field = null;
-                    for (var entry : fieldErrors.entrySet()) {
-                        field = entry.getKey();
-                        description = entry.getValue();
-                        break;
+                invalidateOnDrift(groupName, e);
+
+                // If this is a 400 error, pass the messages detailing
+                // what is wrong with which field to the caller
+                return Uni.createFrom().failure(writeFailure(e));
+            });
+
+        return result;
+    }
+
+    /***
+     * Assign and revoke roles, or add users to and remove them from a group, in a batch.
+     * All changes are resolved against the same group membership, the writes to Check-in are made
+     * with bounded parallelism, and the successful ones are applied to the cached role records at once.
+     * Each change succeeds or fails on its own, the outcome is stored in the change.
+     * @param groupName The group in which the roles are assigned.
+     *                  Users must be included in this group before roles can be assigned to them,
+     *                  a batch that includes users cannot also assign roles to them.
+     * @param changes The roles to assign and revoke, "member" for group membership,
+     *                at most one change per user and role
+     * @return The changes, with their outcome
+     */
+    public Uni<List<RoleChange>> changeUserRolesAsync(String groupName, List<RoleChange> changes) {
+        if(null == checkin) {
+            log.error("Check-in not ready, call init() first");
+            return Uni.createFrom().failure(new ActionException("notReady"));
+        }
+
+        final var coId = checkinConfig.coId();
+
+        MDC.put("coId", coId);
+        MDC.put("groupName", groupName);
+        MDC.put("roleChanges", changes.size());
+
+        final var header = getBasicAuthHeader();
+        final var writes = new ArrayList<RoleChange>();
+
+        Uni<List<RoleChange>> result = Uni.createFrom().nullItem()
+
+            .chain(unused -> {
+                // Get the group role records once for all changes
+                return getMembershipAsync(groupName);
+            })
+            .chain(membership -> {
+                // Got group role records, find the record each change needs
+                // (see assignUserRoleAsync() for why deleted records are restored)
+                var seen = new HashSet<String>();
+                for(var change : changes) {
+                    if(!seen.add(change.checkinUserId + "/" + change.roleName.toLowerCase())) {
+                        change.fail(new ActionException("badRequest", "Multiple changes for the same role and user"));
+                        continue;
                     }
 
-                    if(null != field && null != description) {
-                        var ae = new ActionException("badRequest", description, Tuple2.of("field", field));
-                        return Uni.createFrom().failure(ae);
+                    if(change.assign) {
+                        if(MembershipSnapshot.MEMBER.equals(change.roleName)) {
+                            if(!membership.isVoMember(change.checkinUserId)) {
+                                change.fail(new ActionException("notFound", "Unknown user"));
+                                continue;
+                            }
+                        }
+                        else if(!membership.isGroupMember(change.checkinUserId)) {
+                            change.fail(new ActionException("badRequest", "Cannot assign role to non-member"));
+                            continue;
+                        }
+                        if(null != membership.activeRecord(change.checkinUserId, change.roleName))
+                            // Already has the role
+                            continue;
+
+                        change.record = membership.deletedRecord(change.checkinUserId, change.roleName);
+                    }
+                    else {
+                        change.record = membership.activeRecord(change.checkinUserId, change.roleName);
+                        if(null == change.record)
+                            // Does not have the role
+                            continue;
                     }
+
+                    writes.add(change);
                 }
 
-                return Uni.createFrom().failure(e);
+                log.infof("Changing %d role records", writes.size());
+
+                if(writes.isEmpty())
+                    return Uni.createFrom().voidItem();
+
+                // Make the writes, a few at a time
+                final var concurrency = Math.max(1, this.checkinConfig.batchWrites());
+                return Multi.createFrom().iterable(writes)
+                        .onItem().transformToUni(change -> writeRoleChangeAsync(header, groupName, change))
+                        .merge(concurrency)
+                        .collect().last()
+                        .replaceWithVoid();
+            })
+            .chain(unused -> {
+                // Writes done, update role cache once
+                for(var change : writes)
+                    if(null != change.failure)
+                        invalidateOnDrift(groupName, change.failure);
+
+                applyCachedRoleChanges(groupName, writes);
+
+                for(var change : writes)
+                    if(null != change.failure)
+                        change.failure = writeFailure(change.failure);
+
+                return Uni.createFrom().item(changes);
+            })
+            .onFailure().invoke(e -> {
+                log.error("Failed to change role records");
             });
 
         return result;
     }
 
+    /***
+     * Make the write to Check-in needed by a change in a batch.
+     * @param header Authorization header for Check-in
+     * @param groupName The group in which the role is assigned
+     * @param change The change, receives the outcome of the write
+     * @return The change, never fails
+     */
+    private Uni<RoleChange> writeRoleChangeAsync(String header, String groupName, RoleChange change) {
+        final var coId = checkinConfig.coId();
+        final var status = change.assign ? "Active" : "Deleted";
+        final var roles = MembershipSnapshot.MEMBER.equals(change.roleName) ?
+                new CheckinRoleList(change.checkinUserId, groupName, coId, "member", status) :
+                new CheckinRoleList(change.checkinUserId, groupName, coId, change.roleName, "member", status);
+
+        Uni<?> write;
+        if(null != change.record) {
+            // Restore deleted role record, or mark active one deleted
+            final var roleId = change.record.roleId;
+            write = resilience.write(CheckinResilience.UPDATE_ROLE,
+                    () -> checkin.updateUserRoleAsync(header, stub, roleId, roles));
+        }
+        else
+            // Add new role record
+            write = resilience.write(CheckinResilience.ADD_ROLE,
+                    () -> checkin.addUserRoleAsync(header, stub, roles))
+                    .invoke(added -> change.added = added);
+
+        return write
+                .map(unused -> {
+                    change.changed = true;
+                    return change;
+                })
+                .onFailure().recoverWithItem(e -> {
+                    log.errorf("Failed to %s role %s of user %s", change.assign ? "assign" : "revoke",
+                               change.roleName, change.checkinUserId);
+                    return change.fail(e);
+                });
+    }
+
     /***
      * List all role records for a group or virtual organization (VO).
      * Computes the role field.
@@ -1006,63 +1550,170 @@ public class Checkin {
         MDC.put("coId", coId);
 
         // First check if we have them cached
-        final var group = this.imsConfig.group();
-        if(null != group && !group.isBlank() && group.equals(groupName) && rolesCached()) {
-            // We have a cache, and it's not stale
-            log.info("Using cached group role records");
-            return Uni.createFrom().item(roleRecords);
+        final var cached = recordCache.getRecords(coId, groupName);
+        if(recordsCached(cached)) {
+            // We have a cache we can use
+            if(cacheStale(cached.updatedAt, cached.timeToLive, 0)) {
+                // Serve the stale role records, but reload them in the background
+                log.info("Using stale cached group role records");
+                CheckinMetrics.cacheLookup(cacheName(groupName), CheckinMetrics.STALE);
+                revalidate(fetchSharedAsync(groupName, CheckinMetrics.ON_STALE));
+            }
+            else {
+                log.info("Using cached group role records");
+                CheckinMetrics.cacheLookup(cacheName(groupName), CheckinMetrics.HIT);
+            }
+
+            return Uni.createFrom().item(cached.value);
         }
 
+        return fetchSharedAsync(groupName, CheckinMetrics.ON_MISS)
+                .onFailure().recoverWithUni(e -> {
+                    // Serve the last records we got, if still retained
+                    var stale = lastKnownRecords(coId, groupName);
+                    if(null == stale)
+                        return Uni.createFrom().failure(e);
+
+                    log.warn("Check-in unavailable, using stale group role records");
+                    CheckinMetrics.staleServed("roles");
+                    return Uni.createFrom().item(stale);
+                });
+    }
+
+    /***
+     * Get the last known role records of a group or VO, regardless of their age.
+     * @param coId The collaboration the group belongs to
+     * @param groupName The group or VO
+     * @return Records from the cache (if still retained) or from the published membership, null if none
+     */
+    private CheckinRoleList lastKnownRecords(String coId, String groupName) {
+        var cached = recordCache.getRecords(coId, groupName);
+        if(null != cached && null != cached.value)
+            return cached.value;
+
+        var current = Checkin.membership.get();
+        if(null != current) {
+            if(groupName.equals(this.imsConfig.vo()))
+                return current.voRecords();
+            if(groupName.equals(current.groupName()))
+                return current.groupRecords();
+        }
+
+        return null;
+    }
+
+    /***
+     * Fetch all role records for a group or virtual organization (VO) from Check-in, bypassing the cache.
+     * Concurrent fetches for the same group share a single call to Check-in.
+     * @param groupName The group or VO to list records of.
+     * @param trigger What caused the fetch, see {@link CheckinMetrics}.
+     *                When fetching because the records are not cached, the lookup is counted as
+     *                a miss, or as coalesced if it joined a fetch already in progress.
+     * @return List of records, see also {@link CheckinRoleList}
+     */
+    private Uni<CheckinRoleList> fetchSharedAsync(final String groupName, final String trigger) {
+
+        final var coId = checkinConfig.coId();
+        final var key = coId + "/" + groupName;
+        final var started = new AtomicBoolean(false);
+        var fetch = inFlightFetches.computeIfAbsent(key, k -> {
+            started.set(true);
+            return fetchGroupMembersAndRolesAsync(coId, groupName, trigger)
+                    .onTermination().invoke(() -> inFlightFetches.remove(k))
+                    .memoize().indefinitely();
+        });
+
+        if(CheckinMetrics.ON_MISS.equals(trigger))
+            CheckinMetrics.cacheLookup(cacheName(groupName), started.get() ? CheckinMetrics.MISS : CheckinMetrics.COALESCED);
+
+        return fetch;
+    }
+
+    /***
+     * Compute the role field of role records received from Check-in.
+     * A role record can represent membership in a group or VO (when title is not set)
+     * or a role (when title is set to the role name and affiliation is "member").
+     * @param roles The records to update
+     */
+    static void computeRoles(CheckinRoleList roles) {
+        if(null == roles || null == roles.records)
+            return;
+
+        for (var role : roles.records) {
+            // Set the role field to be "member" to signal membership in the group/VO
+            // and the name of the role otherwise, making this field easier to use than
+            // the affiliation/title pair.
+            if(null != role.title && !role.title.isBlank())
+                role.role = role.title.toLowerCase();
+            else
+                role.role = null != role.affiliation ? role.affiliation.toLowerCase() : null;
+
+            // Check consistency of deleted flag with the status
+            if(Boolean.TRUE.equals(role.deleted) && !"Deleted".equalsIgnoreCase(role.status)) {
+                MDC.put("roleId", role.roleId);
+                MDC.put("roleStatus", role.status);
+
+                log.warn("Check-in record is marked deleted but has inconsistent status");
+            }
+        }
+
+        MDC.remove("roleId");
+        MDC.remove("roleStatus");
+    }
+
+    /***
+     * Fetch all role records for a group or virtual organization (VO) from Check-in.
+     * Computes the role field and caches the records.
+     * Use {@link #fetchSharedAsync(String, String)} instead, which avoids duplicate fetches.
+     * @param coId The Id of the collaboration that owns the group or VO
+     * @param groupName The group or VO to list records of
+     * @param trigger What caused the fetch, see {@link CheckinMetrics}
+     * @return List of records, see also {@link CheckinRoleList}
+     */
+    private Uni<CheckinRoleList> fetchGroupMembersAndRolesAsync(final String coId, final String groupName, final String trigger) {
+
         Uni<CheckinRoleList> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
                 // Get role records
                 log.debug("Getting Check-in records");
                 var header = getBasicAuthHeader();
-                return checkin.listGroupMembersAsync(header, stub, coId, groupName);
+                return resilience.read(CheckinResilience.LIST_MEMBERS,
+                                       () -> checkin.listGroupMembersAsync(header, stub, coId, groupName));
             })
             .chain(roles -> {
                 // Got role records
-                if(null != roles.records) {
-                    // A role record can represent membership in a group or VO
-                    // (when title is not set) or a role (when title is set to the role name
-                    // and affiliation is "member")
-                    for (var role : roles.records) {
-                        // Set the role field to be "member" to signal membership in the group/VO
-                        // and the name of the role otherwise, making this field easier to use than
-                        // the affiliation/title pair.
-                        if(null != role.title && !role.title.isBlank())
-                            role.role = role.title.toLowerCase();
-                        else
-                            role.role = null != role.affiliation ? role.affiliation.toLowerCase() : null;
-
-                        // Check consistency of deleted flag with the status
-                        if(role.deleted && !role.status.equalsIgnoreCase("Deleted")) {
-                            MDC.put("roleId", role.roleId);
-                            MDC.put("roleStatus", role.status);
-
-                            log.warn("Check-in record is marked deleted but has inconsistent status");
-                        }
-                    }
-
-                    MDC.remove("roleId");
-                    MDC.remove("roleStatus");
-                }
+                computeRoles(roles);
 
                 // Success
                 if(!this.checkinConfig.traceRoles())
                     log.debug("Got Check-in records");
 
-                if(null != group && !group.isBlank() && group.equals(groupName)) {
-                    // Cache group role records
-                    roleRecords = roles;
-                    rolesUpdatedAt = Instant.now().toEpochMilli();
+                // Compare with the cached records, to only process what changed
+                var records = roles;
+                var outcome = "changed";
+                final var cached = recordCache.getRecords(coId, groupName);
+                if(null != cached && null != cached.value) {
+                    final var changes = MembershipChanges.between(groupName, cached.value, roles);
+                    if(changes.isEmpty()) {
+                        // Nothing changed, keep the cached records (and the membership built from them)
+                        records = cached.value;
+                        outcome = "unchanged";
+                    }
+                    else
+                        publishChanges(changes);
                 }
 
-                return Uni.createFrom().item(roles);
+                CheckinMetrics.cacheRefreshed(cacheName(groupName), trigger, outcome);
+
+                // Cache role records
+                recordCache.putRecords(coId, groupName, records, cacheTimeToLive(groupName));
+
+                return Uni.createFrom().item(records);
             })
             .onFailure().invoke(e -> {
                 log.error("Failed to get Check-in records");
+                CheckinMetrics.cacheRefreshed(cacheName(groupName), trigger, "failed");
             });
 
         return result;
@@ -1071,27 +1722,30 @@ public class Checkin {
     /***
      * Log all membership records of a Check-in group or VO.
      * @param records The Check-in membership records for the group or VO
-     * @param users The users identified to be members
+     * @param membership The membership built from the records, used to name the users
      * @param onlyGroup Whether logging records only for users included in the configured group
      *                  or for all members of the configured VO.
      */
-    private void logGroupMembers(List<CheckinRole> records, Map<String, CheckinUser> users, boolean onlyGroup) {
+    private void logGroupMembers(List<CheckinRole> records, MembershipSnapshot membership, boolean onlyGroup) {
 
-        log.infof("Found %d active members in %s %s", users.size(),
+        log.infof("Found %d active members in %s %s",
+                onlyGroup ? membership.groupMemberCount() : membership.voMemberCount(),
                 onlyGroup ? "group" : "VO",
                 onlyGroup ? this.imsConfig.group() : "");
 
         Format formatter = new SimpleDateFormat("yyyy-MM-dd");
 
         for(var role : records) {
+            if(!MembershipSnapshot.MEMBER.equals(role.role) || null == role.person)
+                // Not a membership record
+                continue;
+
             var checkinUserId = role.person.checkinUserId();
             if(null == checkinUserId)
                 continue;
 
             var trace = "userId:" + checkinUserId;
-            var user = users.get(checkinUserId);
-            if(null == user && onlyGroup && voMembersCached())
-                user = Checkin.voMembers.get(checkinUserId);
+            var user = membership.voMember(checkinUserId);
 
             MDC.put("roleId", role.roleId);
             MDC.put("roleStatus", role.status);
@@ -1130,23 +1784,26 @@ public class Checkin {
     /***
      * Log all role records of a Check-in group.
      * @param records The Check-in role records for the group
-     * @param users The users identified to hold roles in the group
+     * @param membership The membership built from the records, used to name the users
      */
-    private void logGroupRoles(List<CheckinRole> records, Map<String, CheckinUser> users) {
+    private void logGroupRoles(List<CheckinRole> records, MembershipSnapshot membership) {
 
-        log.infof("Found %d users with matching role(s) in group %s", users.size(), this.imsConfig.group());
+        log.infof("Found %d users with role(s) in group %s",
+                membership.usersWithRoles(null).size(), this.imsConfig.group());
 
         Format formatter = new SimpleDateFormat("yyyy-MM-dd");
 
         for(var role : records) {
+            if(!role.checkIfRole() || null == role.person)
+                // Not a role record
+                continue;
+
             var checkinUserId = role.person.checkinUserId();
             if(null == checkinUserId)
                 continue;
 
             var trace = "userId:" + checkinUserId;
-            var user = users.get(checkinUserId);
-            if(null == user && voMembersCached())
-                user = Checkin.voMembers.get(checkinUserId);
+            var user = membership.voMember(checkinUserId);
 
             MDC.put("roleId", role.roleId);
             MDC.put("roleName", role.role);
@@ -1225,14 +1882,25 @@ public class Checkin {
     }
 
     /***
-     * Filter a list with a predicate.
-     * @param criteria The predicate to apply to each element
-     * @param list The list to filter
-     * @param <T> Type of list elements
-     * @return Another list containing just the matching elements
+     * Describe the failure of a write to Check-in.
+     * @param e The exception
+     * @return For a bad request with field errors, a badRequest ActionException that uses the
+     *         first field error as its description, otherwise the exception itself
      */
-    private<T> List<T> filterList(List<T> list, Predicate<T> criteria) {
-        return list.stream().filter(criteria).collect(Collectors.<T>toList());
+    private Throwable writeFailure(Throwable e) {
+        var fieldErrors = getBadRequestFieldErrors(e);
+        if(null != fieldErrors) {
+            // Use the first field error as the description
+            for(var entry : fieldErrors.entrySet()) {
+                var field = entry.getKey();
+                var description = entry.getValue();
+                if(null != field && null != description)
+                    return new ActionException("badRequest", description, Tuple2.of("field", field));
+                break;
+            }
+        }
+
+        return e;
     }
 
     /***
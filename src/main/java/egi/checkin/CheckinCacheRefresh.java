@@ -0,0 +1,72 @@
+package egi.checkin;
+
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import org.jboss.logging.Logger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import egi.eu.IntegratedManagementSystemConfig;
+
+
+/***
+ * Loads the cached Check-in records at startup, and reloads them in the background before they expire.
+ * This way requests keep being served from the cache, without waiting for Check-in.
+ */
+@ApplicationScoped
+public class CheckinCacheRefresh {
+
+    private static final Logger log = Logger.getLogger(CheckinCacheRefresh.class);
+
+    @Inject
+    CheckinConfig checkinConfig;
+
+    @Inject
+    IntegratedManagementSystemConfig imsConfig;
+
+
+    /***
+     * Create the Check-in client and warm up the caches, so that the first requests do not
+     * have to wait for Check-in. The membership saved by a previous run is restored if available,
+     * otherwise the records are loaded from Check-in in the background.
+     */
+    void onStart(@Observes StartupEvent event) {
+        var checkin = new Checkin();
+        if(!checkin.init(this.checkinConfig, this.imsConfig, null)) {
+            log.error("Cannot warm up Check-in caches");
+            return;
+        }
+
+        if(checkin.restoreMembership())
+            return;
+
+        checkin.refreshCachesAsync(0).subscribe().with(
+            refreshed -> log.debugf("Warmed up Check-in caches: %s", refreshed),
+            e -> log.warn("Failed to warm up Check-in caches"));
+    }
+
+    /***
+     * Reload the caches that expire before the next run
+     */
+    @Scheduled(every = "${egi.checkin.cache-refresh-every}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> refreshCaches() {
+        if(!this.checkinConfig.cacheRefresh())
+            return Uni.createFrom().voidItem();
+
+        var checkin = new Checkin();
+        if(!checkin.init(this.checkinConfig, this.imsConfig, null)) {
+            log.error("Cannot refresh Check-in caches");
+            return Uni.createFrom().voidItem();
+        }
+
+        // Same setting as the schedule of this method, read with the same duration syntax
+        final var lead = this.checkinConfig.cacheRefreshEvery().toMillis();
+        return checkin.refreshCachesAsync(lead)
+                .onFailure().recoverWithItem(false)
+                .replaceWithVoid();
+    }
+}
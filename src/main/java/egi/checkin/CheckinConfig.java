@@ -4,6 +4,10 @@ import io.smallrye.config.ConfigMapping;
 import io.smallrye.config.WithName;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
 
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
 
 /***
  * The EGI Check-in configuration
@@ -27,6 +31,115 @@ public interface CheckinConfig {
     @WithName("cache-roles")
     int cacheRoles();
 
+    // How long to cache records of other groups, and the list of groups
+    @WithName("cache-groups")
+    int cacheGroups();
+
+    // Maximum number of groups/VOs to cache records for
+    @WithName("cache-max-entries")
+    int cacheMaxEntries();
+
+    // Apply successful writes to the cached records, instead of dropping them
+    @WithName("cache-write-through")
+    boolean cacheWriteThrough();
+
+    // Reload cached VO members and role records in the background, before they expire
+    @WithName("cache-refresh")
+    boolean cacheRefresh();
+
+    // How often to check if the caches need reloading
+    @WithName("cache-refresh-every")
+    Duration cacheRefreshEvery();
+
+    // When cached records are found out of date after a write, keep serving them and reload them once
+    // after this many milliseconds, so a burst of writes causes a single reload. 0 drops them right away.
+    @WithName("cache-refresh-after-writes")
+    int cacheRefreshAfterWrites();
+
+    // How long to cache the user information of an access token, capped by the token's expiry
+    @WithName("cache-user-info")
+    int cacheUserInfo();
+
+    // Maximum number of access tokens to cache user information for
+    @WithName("cache-user-info-max-entries")
+    int cacheUserInfoMaxEntries();
+
+    // How long to cache the roles and attributes of an access token, capped by the token's expiry, 0 to not cache them
+    @WithName("cache-identity")
+    int cacheIdentity();
+
+    // Maximum number of access tokens to cache roles and attributes for
+    @WithName("cache-identity-max-entries")
+    int cacheIdentityMaxEntries();
+
+    // How long after they expired can cached records still be used, if reloading them fails
+    @WithName("cache-max-stale")
+    int cacheMaxStale();
+
+    // Timeouts of calls to Check-in by endpoint, in milliseconds
+    // (user-info, list-groups, list-members, add-role, update-role)
+    @WithName("timeouts")
+    Map<String, Integer> timeouts();
+
+    // How many times to retry failed reads, and the initial and maximum delay between retries (in milliseconds)
+    @WithName("read-retries")
+    int readRetries();
+
+    @WithName("read-retry-backoff")
+    int readRetryBackoff();
+
+    @WithName("read-retry-max-backoff")
+    int readRetryMaxBackoff();
+
+    // Fail fast after this many consecutive failed calls, until Check-in recovers
+    @WithName("circuit-failures")
+    int circuitFailures();
+
+    // How long to fail fast before trying Check-in again, in milliseconds
+    @WithName("circuit-open-for")
+    int circuitOpenFor();
+
+    // Maximum number of concurrent writes to Check-in
+    @WithName("max-concurrent-writes")
+    int maxConcurrentWrites();
+
+    // Number of writes a batch of role changes makes concurrently, keep below max-concurrent-writes
+    // to leave room for other callers
+    @WithName("batch-writes")
+    int batchWrites();
+
+    // Maximum number of concurrent calls per endpoint, calls above the limit wait in a queue
+    // (user-info, list-groups, list-members, add-role, update-role), unlimited when missing
+    @WithName("max-in-flight")
+    Map<String, Integer> maxInFlight();
+
+    // Maximum number of calls waiting per endpoint, calls above the limit are rejected
+    @WithName("max-queued")
+    int maxQueued();
+
+    // Maximum number of connections to Check-in
+    @WithName("connection-pool-size")
+    int connectionPoolSize();
+
+    // How long to keep idle connections open, in seconds
+    @WithName("connection-keep-alive")
+    int connectionKeepAlive();
+
+    // Maximum number of calls waiting for a connection, -1 for unlimited
+    @WithName("connection-max-waiting")
+    int connectionMaxWaiting();
+
+    // Use HTTP/2 when Check-in supports it, and how many concurrent calls to send over a connection
+    @WithName("http2")
+    boolean http2();
+
+    @WithName("http2-max-streams")
+    int http2MaxStreams();
+
+    // File to save the last membership snapshot to, loaded at startup to serve requests before Check-in answers
+    @WithName("cache-snapshot")
+    Optional<String> cacheSnapshot();
+
     @WithName("trace-roles")
     boolean traceRoles();
 }
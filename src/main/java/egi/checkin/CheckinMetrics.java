@@ -0,0 +1,206 @@
+package egi.checkin;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.ws.rs.WebApplicationException;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToDoubleFunction;
+
+
+/***
+ * Metrics about the Check-in caches and the membership built from them.
+ * Check-in is not a CDI bean, meters are registered with the global registry (Quarkus adds its registries to it).
+ * The calls to Check-in are timed by {@link CheckinResilience} (checkin.requests, tagged with endpoint,
+ * outcome and status), the connection pool by {@link CheckinTransport}.
+ *
+ * The caches are named after the configuration of their time-to-live:
+ * - vo-members: role records of the configured VO (cache-vo-members)
+ * - roles: role records of groups (cache-roles)
+ * - groups: the groups of the collaboration (cache-groups)
+ * - user-info: user information by access token (cache-user-info)
+ * - identity: roles and attributes of the security identity by access token (cache-identity)
+ */
+public class CheckinMetrics {
+
+    // Caches
+    public static final String VO_MEMBERS = "vo-members";
+    public static final String ROLES = "roles";
+    public static final String GROUPS = "groups";
+    public static final String USER_INFO = "user-info";
+    public static final String IDENTITY = "identity";
+
+    // Results of cache lookups
+    public static final String HIT = "hit";                 // Fresh
+    public static final String STALE = "stale";             // Stale, served while reloaded in the background
+    public static final String MISS = "miss";               // Not cached, loaded from Check-in
+    public static final String COALESCED = "coalesced";     // Not cached, joined a load already in progress
+
+    // What caused role records to be reloaded
+    public static final String ON_MISS = "miss";
+    public static final String ON_STALE = "stale";
+    public static final String ON_SCHEDULE = "background";
+    public static final String ON_WRITE = "write";
+
+    private static final MeterRegistry registry = Metrics.globalRegistry;
+
+    private static boolean gaugesRegistered = false;
+
+
+    /***
+     * Count a lookup in a cache
+     * @param cache The cache, see the constants of this class
+     * @param result The result of the lookup, see the constants of this class
+     */
+    public static void cacheLookup(String cache, String result) {
+        Counter.builder("checkin.cache.lookups")
+                .description("Lookups in the Check-in caches")
+                .tag("cache", cache)
+                .tag("result", result)
+                .register(registry)
+                .increment();
+    }
+
+    /***
+     * Count the reload of cached role records from Check-in
+     * @param cache The cache, see the constants of this class
+     * @param trigger What caused the reload, see the constants of this class
+     * @param outcome "changed", "unchanged" or "failed"
+     */
+    public static void cacheRefreshed(String cache, String trigger, String outcome) {
+        Counter.builder("checkin.cache.refreshes")
+                .description("Reloads of cached role records from Check-in")
+                .tag("cache", cache)
+                .tag("trigger", trigger)
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    /***
+     * Count cached role records found out of date, to be reloaded
+     * @param cache The cache, see the constants of this class
+     * @param reason "write" when a write could not be applied to the cache,
+     *               "drift" when the cache was found to not reflect Check-in
+     */
+    public static void cacheInvalidated(String cache, String reason) {
+        Counter.builder("checkin.cache.invalidations")
+                .description("Cached role records found out of date")
+                .tag("cache", cache)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /***
+     * Count the requests served with stale records because Check-in failed.
+     * @param records The kind of records served, "roles" or "groups"
+     */
+    public static void staleServed(String records) {
+        Counter.builder("checkin.stale.served")
+                .description("Reads served from stale cached records because Check-in failed")
+                .tag("records", records)
+                .register(registry)
+                .increment();
+    }
+
+    /***
+     * Get the status class of the response to a call to Check-in, used to tag the call metrics
+     * @param failure The failure of the call, null on success
+     * @return "2xx", "4xx", "5xx", or "none" if Check-in did not answer
+     */
+    public static String statusOf(Throwable failure) {
+        if(null == failure)
+            return "2xx";
+
+        var cause = failure instanceof WebApplicationException ? failure : failure.getCause();
+        if(cause instanceof WebApplicationException we && null != we.getResponse())
+            return (we.getResponse().getStatus() / 100) + "xx";
+
+        return "none";
+    }
+
+    /***
+     * Report the age and size of the cached role records, and the size of the published membership.
+     * @param cache The cached records
+     * @param membership The published membership
+     * @param coId The collaboration of the configured VO and group
+     * @param vo The configured VO
+     * @param group The configured group
+     */
+    public static synchronized void registerGauges(CheckinRecordCache cache, AtomicReference<MembershipSnapshot> membership,
+                                                   String coId, String vo, String group) {
+        if(gaugesRegistered)
+            return;
+
+        // Cached role records
+        registerRecordGauges(cache, coId, vo, VO_MEMBERS);
+        if(null != group && !group.isBlank())
+            registerRecordGauges(cache, coId, group, ROLES);
+
+        // Membership
+        registerMembershipGauge(membership, "checkin.membership.members", "vo", MembershipSnapshot::voMemberCount,
+                "Active members of the configured VO");
+        registerMembershipGauge(membership, "checkin.membership.members", "group", MembershipSnapshot::groupMemberCount,
+                "Active members of the configured group that are also VO members");
+        registerMembershipGauge(membership, "checkin.membership.role.holders", "group", MembershipSnapshot::roleHolderCount,
+                "Members of the configured group holding at least one role");
+
+        Gauge.builder("checkin.membership.heap", membership, m -> {
+                    var snapshot = m.get();
+                    return null != snapshot ? snapshot.estimatedSize() : 0;
+                })
+                .description("Estimated heap used by the indexed membership of the configured VO and group")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("checkin.membership.heap.per.member", membership, m -> {
+                    var snapshot = m.get();
+                    return null != snapshot && snapshot.voMemberCount() > 0 ?
+                            (double)snapshot.estimatedSize() / snapshot.voMemberCount() : 0;
+                })
+                .description("Estimated heap used by the indexed membership, per VO member")
+                .baseUnit("bytes")
+                .register(registry);
+
+        gaugesRegistered = true;
+    }
+
+    /***
+     * Report the age and number of the cached role records of a group or VO
+     */
+    private static void registerRecordGauges(CheckinRecordCache cache, String coId, String groupName, String name) {
+        Gauge.builder("checkin.cache.age", cache, c -> {
+                    var cached = c.peekRecords(coId, groupName);
+                    return null != cached ? (Instant.now().toEpochMilli() - cached.updatedAt) / 1000.0 : Double.NaN;
+                })
+                .description("Time since the cached role records were loaded from Check-in")
+                .tag("cache", name)
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("checkin.cache.records", cache, c -> {
+                    var cached = c.peekRecords(coId, groupName);
+                    return null != cached && null != cached.value && null != cached.value.records ?
+                            cached.value.records.size() : 0;
+                })
+                .description("Number of cached role records")
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    /***
+     * Report a count of the published membership
+     */
+    private static void registerMembershipGauge(AtomicReference<MembershipSnapshot> membership, String metric, String scope,
+                                                ToDoubleFunction<MembershipSnapshot> count, String description) {
+        Gauge.builder(metric, membership, m -> {
+                    var snapshot = m.get();
+                    return null != snapshot ? count.applyAsDouble(snapshot) : 0;
+                })
+                .description(description)
+                .tag("scope", scope)
+                .register(registry);
+    }
+}
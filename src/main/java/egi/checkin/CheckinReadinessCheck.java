@@ -0,0 +1,24 @@
+package egi.checkin;
+
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+
+/***
+ * Reports ready once the membership of the configured group is available,
+ * i.e. user and role requests will be served without waiting for Check-in.
+ */
+@Readiness
+@ApplicationScoped
+public class CheckinReadinessCheck implements HealthCheck {
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("Check-in membership")
+                .status(Checkin.isWarm())
+                .build();
+    }
+}
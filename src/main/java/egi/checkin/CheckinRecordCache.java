@@ -0,0 +1,218 @@
+package egi.checkin;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import egi.checkin.model.CheckinGroupList;
+import egi.checkin.model.CheckinRoleList;
+
+
+/***
+ * Size-bounded cache of Check-in records, keyed by collaboration and group (COU).
+ * Each entry has its own time-to-live, e.g. VO members can be cached longer than group roles.
+ * Entries are kept past their time-to-live for the configured retention, so that they can be
+ * served while being refreshed (or while Check-in is down).
+ */
+public class CheckinRecordCache {
+
+    private static final String ROLES = "roles:";
+    private static final String GROUPS = "groups:";
+
+    private final Cache<String, Entry<?>> cache;
+
+
+    /***
+     * A cached value and when it was loaded
+     * @param <T> Type of the cached value
+     */
+    public static class Entry<T> {
+
+        public final T value;
+        public final long updatedAt;    // Milliseconds since epoch
+        public final long timeToLive;   // Milliseconds
+
+        /***
+         * Construct entry loaded now
+         * @param value The value to cache
+         * @param timeToLive How long the value is fresh, in milliseconds
+         */
+        public Entry(T value, long timeToLive) {
+            this(value, Instant.now().toEpochMilli(), timeToLive);
+        }
+
+        /***
+         * Construct entry loaded at the specified time
+         * @param value The value to cache
+         * @param updatedAt When the value was loaded, milliseconds since epoch
+         * @param timeToLive How long the value is fresh, in milliseconds
+         */
+        public Entry(T value, long updatedAt, long timeToLive) {
+            this.value = value;
+            this.updatedAt = updatedAt;
+            this.timeToLive = timeToLive;
+        }
+    }
+
+
+    /***
+     * Expires cache entries after their own time-to-live, plus a retention.
+     * Reading an entry does not extend its life, updating it restarts it.
+     * @param <V> Type of the cached entries
+     */
+    public static class EntryExpiry<V extends Entry<?>> implements Expiry<String, V> {
+
+        private final long retention;   // Milliseconds
+
+        /***
+         * Construct expiry without retention
+         */
+        public EntryExpiry() { this(0); }
+
+        /***
+         * Construct expiry
+         * @param retention How long to keep entries after they expired, in milliseconds
+         */
+        public EntryExpiry(long retention) { this.retention = retention; }
+
+        @Override
+        public long expireAfterCreate(String key, V entry, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(entry.timeToLive + this.retention);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, V entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, V entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+
+    /***
+     * Construct cache
+     * @param maxEntries The maximum number of entries to hold
+     * @param retention How long to keep entries after they expired, in milliseconds
+     */
+    public CheckinRecordCache(int maxEntries, long retention) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new EntryExpiry<Entry<?>>(retention))
+                .recordStats()
+                .build();
+
+        // See CheckinMetrics about the registry
+        CaffeineCacheMetrics.monitor(Metrics.globalRegistry, this.cache, "checkin.records");
+    }
+
+    /***
+     * Get the cached role records of a group or VO
+     * @param coId The collaboration the group belongs to
+     * @param groupName The group or VO
+     * @return Cached records, null if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public Entry<CheckinRoleList> getRecords(String coId, String groupName) {
+        return (Entry<CheckinRoleList>)this.cache.getIfPresent(ROLES + coId + "/" + groupName);
+    }
+
+    /***
+     * Get the cached role records of a group or VO, without counting it as a lookup in the cache statistics
+     * @param coId The collaboration the group belongs to
+     * @param groupName The group or VO
+     * @return Cached records, null if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public Entry<CheckinRoleList> peekRecords(String coId, String groupName) {
+        return (Entry<CheckinRoleList>)this.cache.asMap().get(ROLES + coId + "/" + groupName);
+    }
+
+    /***
+     * Cache the role records of a group or VO
+     * @param coId The collaboration the group belongs to
+     * @param groupName The group or VO
+     * @param records The records to cache
+     * @param timeToLive How long the records are fresh, in milliseconds
+     * @return The cached entry
+     */
+    public Entry<CheckinRoleList> putRecords(String coId, String groupName, CheckinRoleList records, long timeToLive) {
+        return putRecords(coId, groupName, records, Instant.now().toEpochMilli(), timeToLive);
+    }
+
+    /***
+     * Cache the role records of a group or VO, loaded at the specified time
+     * @param coId The collaboration the group belongs to
+     * @param groupName The group or VO
+     * @param records The records to cache
+     * @param updatedAt When the records were loaded, milliseconds since epoch
+     * @param timeToLive How long the records are fresh, in milliseconds
+     * @return The cached entry
+     */
+    public Entry<CheckinRoleList> putRecords(String coId, String groupName, CheckinRoleList records, long updatedAt, long timeToLive) {
+        var entry = new Entry<>(records, updatedAt, timeToLive);
+        this.cache.put(ROLES + coId + "/" + groupName, entry);
+        return entry;
+    }
+
+    /***
+     * Replace the cached role records of a group or VO with a patched version.
+     * The patched records keep the load time (and expiry) of the records they replace.
+     * @param coId The collaboration the group belongs to
+     * @param groupName The group or VO
+     * @param patch Function that returns the patched records, must not modify the records it receives
+     * @return True if records were cached and have been patched
+     */
+    @SuppressWarnings("unchecked")
+    public boolean patchRecords(String coId, String groupName, UnaryOperator<CheckinRoleList> patch) {
+        var patched = this.cache.asMap().computeIfPresent(ROLES + coId + "/" + groupName, (key, entry) -> {
+            var cached = (Entry<CheckinRoleList>)entry;
+            if(null == cached.value)
+                return cached;
+
+            return new Entry<>(patch.apply(cached.value), cached.updatedAt, cached.timeToLive);
+        });
+
+        return null != patched;
+    }
+
+    /***
+     * Drop the cached role records of a group or VO
+     * @param coId The collaboration the group belongs to
+     * @param groupName The group or VO
+     */
+    public void invalidateRecords(String coId, String groupName) {
+        this.cache.invalidate(ROLES + coId + "/" + groupName);
+    }
+
+    /***
+     * Get the cached list of groups in a collaboration
+     * @param coId The collaboration
+     * @return Cached groups, null if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public Entry<CheckinGroupList> getGroups(String coId) {
+        return (Entry<CheckinGroupList>)this.cache.getIfPresent(GROUPS + coId);
+    }
+
+    /***
+     * Cache the list of groups in a collaboration
+     * @param coId The collaboration
+     * @param groups The groups to cache
+     * @param timeToLive How long the groups are fresh, in milliseconds
+     * @return The cached entry
+     */
+    public Entry<CheckinGroupList> putGroups(String coId, CheckinGroupList groups, long timeToLive) {
+        var entry = new Entry<>(groups, timeToLive);
+        this.cache.put(GROUPS + coId, entry);
+        return entry;
+    }
+}
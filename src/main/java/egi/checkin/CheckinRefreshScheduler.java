@@ -0,0 +1,49 @@
+package egi.checkin;
+
+import io.smallrye.mutiny.Uni;
+import org.jboss.logging.Logger;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+
+/***
+ * Coalesces the reloads of cached role records requested after writes.
+ * The first request for a group schedules a reload after a delay, the requests made until
+ * the reload starts share it. Requests made while it runs schedule another reload, as the
+ * records it gets may predate their writes.
+ */
+public class CheckinRefreshScheduler {
+
+    private static final Logger log = Logger.getLogger(CheckinRefreshScheduler.class);
+
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();   // Keyed by coId/groupName
+
+
+    /***
+     * Request a reload, unless one is already scheduled
+     * @param key Identifies the records to reload
+     * @param delay How long to wait before reloading, in milliseconds
+     * @param reload Supplies the reload
+     * @return True if a reload was scheduled, false if the request joined an already scheduled one
+     */
+    public boolean schedule(String key, long delay, Supplier<Uni<?>> reload) {
+        if(!this.scheduled.add(key))
+            return false;
+
+        Uni.createFrom().voidItem()
+            .onItem().delayIt().by(Duration.ofMillis(delay))
+            .chain(unused -> {
+                // Requests from now on need another reload
+                this.scheduled.remove(key);
+                return reload.get();
+            })
+            .subscribe().with(
+                unused -> log.debugf("Reloaded %s after writes", key),
+                e -> log.warnf("Failed to reload %s after writes", key));
+
+        return true;
+    }
+}
@@ -0,0 +1,427 @@
+package egi.checkin;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.UniEmitter;
+import org.jboss.logging.Logger;
+import org.jboss.logging.MDC;
+
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response.Status;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import egi.eu.ActionException;
+
+
+/***
+ * Guards the calls to Check-in with timeouts, retries, a circuit breaker, and bulkheads.
+ * - Each call times out after the time configured for its endpoint.
+ * - The number of concurrent calls to an endpoint can be limited, calls above the limit
+ *   wait in a bounded queue (the wait does not count towards the timeout).
+ * - Reads (idempotent GETs) are retried with exponential backoff and jitter.
+ * - After too many consecutive failures the circuit opens, and calls fail fast
+ *   until a trial call succeeds.
+ * - The number of concurrent writes is limited, writes above the limit are rejected.
+ * Only transient failures (timeouts, connection errors, 5xx and 429 responses) are retried
+ * and counted by the circuit breaker. Calls rejected by the bulkheads never reached Check-in,
+ * so they leave the circuit breaker alone.
+ */
+public class CheckinResilience {
+
+    private static final Logger log = Logger.getLogger(CheckinResilience.class);
+
+    // Endpoints, used to configure timeouts and to tag metrics
+    public static final String USER_INFO = "user-info";
+    public static final String LIST_GROUPS = "list-groups";
+    public static final String LIST_MEMBERS = "list-members";
+    public static final String ADD_ROLE = "add-role";
+    public static final String UPDATE_ROLE = "update-role";
+
+    private static final int DEFAULT_TIMEOUT = 10000; // milliseconds
+
+    // Decisions of the circuit breaker
+    private static final int DENIED = 0;
+    private static final int ALLOWED = 1;
+    private static final int TRIAL = 2;       // Half-open, the call checks if Check-in recovered
+
+    private final CheckinConfig config;
+    private final MeterRegistry registry = Metrics.globalRegistry;
+
+    // Circuit breaker
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();          // Milliseconds since epoch, 0 when closed
+    private final AtomicBoolean trialInProgress = new AtomicBoolean();
+
+    // Bulkheads
+    private final Semaphore writes;
+    private final Map<String, EndpointLimiter> limiters = new ConcurrentHashMap<>();
+
+
+    /***
+     * Failure of a call rejected by a bulkhead, before calling Check-in
+     */
+    private static class Rejection extends ActionException {
+
+        Rejection(String message) { super("tooManyRequests", message); }
+    }
+
+    /***
+     * Limits the concurrent calls to an endpoint, queueing the calls above the limit
+     */
+    private class EndpointLimiter {
+
+        private final String endpoint;
+        private final int maxInFlight;
+        private final Queue<Waiter> waiting = new ArrayDeque<>();
+        private int inFlight = 0;
+        private final Timer waitTime;
+
+        /***
+         * A call waiting for other calls to complete
+         */
+        private static class Waiter {
+
+            static final int WAITING = 0;
+            static final int GRANTED = 1;
+            static final int CANCELLED = 2;
+
+            final UniEmitter<? super Void> emitter;
+            final AtomicInteger state = new AtomicInteger(WAITING);
+
+            Waiter(UniEmitter<? super Void> emitter) { this.emitter = emitter; }
+        }
+
+        EndpointLimiter(String endpoint, int maxInFlight) {
+            this.endpoint = endpoint;
+            this.maxInFlight = maxInFlight;
+
+            final var registry = CheckinResilience.this.registry;
+            Gauge.builder("checkin.in.flight", this, l -> l.inFlight)
+                    .description("Calls to Check-in in progress")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            Gauge.builder("checkin.queued", this, l -> l.queued())
+                    .description("Calls to Check-in waiting for other calls to the same endpoint to complete")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            this.waitTime = Timer.builder("checkin.queue.wait")
+                    .description("Time calls to Check-in waited for other calls to the same endpoint to complete")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+        }
+
+        /***
+         * Wait until the call can be made
+         * @return Completes when the call can be made, fails if too many calls are waiting
+         */
+        Uni<Void> acquire() {
+            final var sample = Timer.start(CheckinResilience.this.registry);
+            final var waiter = new AtomicReference<Waiter>();
+            return Uni.createFrom().<Void>emitter(emitter -> {
+                        synchronized(this) {
+                            if(this.inFlight < this.maxInFlight) {
+                                this.inFlight++;
+                                emitter.complete(null);
+                                return;
+                            }
+
+                            if(this.waiting.size() < CheckinResilience.this.config.maxQueued()) {
+                                // Completed by release()
+                                waiter.set(new Waiter(emitter));
+                                this.waiting.add(waiter.get());
+                                return;
+                            }
+                        }
+
+                        rejected(this.endpoint, "queue-full");
+                        emitter.fail(new Rejection("Too many pending calls to Check-in, try again later"));
+                    })
+                    .onCancellation().invoke(() -> {
+                        var w = waiter.get();
+                        if(null == w)
+                            return;
+
+                        if(w.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+                            synchronized(this) {
+                                this.waiting.remove(w);
+                            }
+                        }
+                        else if(Waiter.GRANTED == w.state.get())
+                            // Got the slot but will not use it
+                            release();
+                    })
+                    .invoke(() -> sample.stop(this.waitTime));
+        }
+
+        /***
+         * Signal that a call completed, lets the next waiting call through
+         */
+        void release() {
+            while(true) {
+                Waiter next;
+                synchronized(this) {
+                    next = this.waiting.poll();
+                    if(null == next) {
+                        this.inFlight--;
+                        return;
+                    }
+                }
+
+                // Hand over the slot, unless the waiting call was cancelled meanwhile
+                if(next.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                    next.emitter.complete(null);
+                    return;
+                }
+            }
+        }
+
+        private synchronized int queued() { return this.waiting.size(); }
+    }
+
+
+    /***
+     * Constructor
+     * @param config The Check-in configuration
+     */
+    public CheckinResilience(CheckinConfig config) {
+        this.config = config;
+        this.writes = new Semaphore(config.maxConcurrentWrites());
+
+        // See CheckinMetrics about the registry
+        Gauge.builder("checkin.circuit.state", this, r -> r.state())
+                .description("State of the circuit breaker for Check-in calls (0 closed, 1 half-open, 2 open)")
+                .register(this.registry);
+        Gauge.builder("checkin.writes.active", this.writes, w -> config.maxConcurrentWrites() - w.availablePermits())
+                .description("Writes to Check-in in progress")
+                .register(this.registry);
+    }
+
+    /***
+     * Call an idempotent Check-in endpoint, retrying transient failures.
+     * @param endpoint The endpoint being called, see the constants of this class
+     * @param call Supplies the call, invoked once per attempt
+     * @return Result of the call
+     */
+    public <T> Uni<T> read(String endpoint, Supplier<Uni<T>> call) {
+        return Uni.createFrom().deferred(() -> {
+            final var decision = allowCall();
+            if(DENIED == decision) {
+                rejected(endpoint, "circuit-open");
+                return Uni.createFrom().failure(new ActionException("unavailable", "Check-in is unavailable"));
+            }
+
+            final var attempts = new AtomicInteger();
+            final var sample = Timer.start(this.registry);
+            var attempt = Uni.createFrom().deferred(() -> {
+                        if(attempts.incrementAndGet() > 1)
+                            Counter.builder("checkin.retries")
+                                    .description("Retried calls to Check-in")
+                                    .tag("endpoint", endpoint)
+                                    .register(this.registry)
+                                    .increment();
+                        return limited(endpoint, () -> call.get()
+                                .ifNoItem().after(timeout(endpoint)).failWith(() -> timedOut(endpoint)));
+                    });
+
+            if(this.config.readRetries() > 0)
+                attempt = attempt
+                    .onFailure(CheckinResilience::transientFailure).retry()
+                    .withBackOff(Duration.ofMillis(this.config.readRetryBackoff()),
+                                 Duration.ofMillis(this.config.readRetryMaxBackoff()))
+                    .withJitter(0.5)
+                    .atMost(this.config.readRetries());
+
+            return attempt
+                    .onTermination().invoke((item, failure, cancelled) ->
+                            completed(endpoint, sample, TRIAL == decision, failure, cancelled));
+        });
+    }
+
+    /***
+     * Call a Check-in endpoint that changes data, without retrying.
+     * @param endpoint The endpoint being called, see the constants of this class
+     * @param call Supplies the call
+     * @return Result of the call
+     */
+    public <T> Uni<T> write(String endpoint, Supplier<Uni<T>> call) {
+        return Uni.createFrom().deferred(() -> {
+            // Check the bulkhead first, so that a rejected write does not take the trial call of the circuit breaker
+            if(!this.writes.tryAcquire()) {
+                rejected(endpoint, "bulkhead-full");
+                return Uni.createFrom().failure(new Rejection("Too many concurrent changes, try again later"));
+            }
+
+            final var decision = allowCall();
+            if(DENIED == decision) {
+                this.writes.release();
+                rejected(endpoint, "circuit-open");
+                return Uni.createFrom().failure(new ActionException("unavailable", "Check-in is unavailable"));
+            }
+
+            final var sample = Timer.start(this.registry);
+            return limited(endpoint, () -> call.get()
+                        .ifNoItem().after(timeout(endpoint)).failWith(() -> timedOut(endpoint)))
+                    .onTermination().invoke((item, failure, cancelled) -> {
+                        this.writes.release();
+                        completed(endpoint, sample, TRIAL == decision, failure, cancelled);
+                    });
+        });
+    }
+
+    /***
+     * Make a call once the number of concurrent calls to its endpoint is below the configured limit
+     * @param endpoint The endpoint being called
+     * @param call Supplies the call
+     * @return Result of the call
+     */
+    private <T> Uni<T> limited(String endpoint, Supplier<Uni<T>> call) {
+        final var maxInFlight = this.config.maxInFlight().getOrDefault(endpoint, 0);
+        if(maxInFlight <= 0)
+            return Uni.createFrom().<T>deferred(call::get);
+
+        final var limiter = this.limiters.computeIfAbsent(endpoint, e -> new EndpointLimiter(e, maxInFlight));
+        return limiter.acquire()
+                .chain(unused -> Uni.createFrom().<T>deferred(call::get)
+                        .onTermination().invoke(limiter::release));
+    }
+
+    /***
+     * Check if a failure is transient, i.e. the call may succeed if retried
+     * @param e The failure
+     * @return True for timeouts, connection errors, and responses with status 5xx or 429,
+     *         false for calls rejected before calling Check-in
+     */
+    public static boolean transientFailure(Throwable e) {
+        if(e instanceof ActionException ae)
+            return "timeout".equals(ae.id());
+
+        var we = e instanceof WebApplicationException ? (WebApplicationException)e :
+                 e.getCause() instanceof WebApplicationException ? (WebApplicationException)e.getCause() : null;
+        if(null != we) {
+            final var status = we.getResponse().getStatus();
+            return status >= Status.INTERNAL_SERVER_ERROR.getStatusCode() ||
+                   status == Status.TOO_MANY_REQUESTS.getStatusCode();
+        }
+
+        // Connection refused/reset, DNS failures, etc.
+        return true;
+    }
+
+    /***
+     * Check if the circuit breaker lets a call through.
+     * Once the circuit has been open for the configured time, a single trial call is let through.
+     * @return DENIED, ALLOWED, or TRIAL if this is the call that checks if Check-in recovered
+     */
+    private int allowCall() {
+        final var opened = this.openedAt.get();
+        if(0 == opened)
+            return ALLOWED;
+
+        if(Instant.now().toEpochMilli() - opened < this.config.circuitOpenFor())
+            return DENIED;
+
+        // Half-open, let one call through to check if Check-in recovered
+        return this.trialInProgress.compareAndSet(false, true) ? TRIAL : DENIED;
+    }
+
+    /***
+     * Record the outcome of a call, in the circuit breaker and in the metrics
+     * @param trial Whether this was the trial call of the half-open circuit
+     */
+    private void completed(String endpoint, Timer.Sample sample, boolean trial, Throwable failure, boolean cancelled) {
+        if(failure instanceof Rejection) {
+            // Did not reach Check-in, already counted by rejected(), let another call check if Check-in recovered
+            if(trial)
+                this.trialInProgress.set(false);
+            return;
+        }
+
+        String outcome;
+        if(cancelled) {
+            outcome = "cancelled";
+            if(trial)
+                this.trialInProgress.set(false);
+        }
+        else if(null == failure || !transientFailure(failure)) {
+            // Check-in answered, even if with an error
+            outcome = null == failure ? "success" : "error";
+            this.consecutiveFailures.set(0);
+            if(0 != this.openedAt.getAndSet(0))
+                log.info("Check-in recovered, closing circuit");
+            this.trialInProgress.set(false);
+        }
+        else {
+            outcome = failure instanceof ActionException ? "timeout" : "failure";
+            final var failures = this.consecutiveFailures.incrementAndGet();
+            if(this.trialInProgress.getAndSet(false) || failures >= this.config.circuitFailures()) {
+                if(0 == this.openedAt.getAndSet(Instant.now().toEpochMilli()))
+                    log.warnf("Check-in failing, opening circuit after %d failures", failures);
+            }
+        }
+
+        sample.stop(Timer.builder("checkin.requests")
+                .description("Calls to Check-in")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .tag("status", cancelled ? "none" : CheckinMetrics.statusOf(failure))
+                .register(this.registry));
+    }
+
+    /***
+     * Record a call rejected without calling Check-in
+     */
+    private void rejected(String endpoint, String reason) {
+        Counter.builder("checkin.rejected")
+                .description("Calls to Check-in rejected by the circuit breaker or bulkhead")
+                .tag("endpoint", endpoint)
+                .tag("reason", reason)
+                .register(this.registry)
+                .increment();
+    }
+
+    /***
+     * Get the timeout of an endpoint
+     */
+    private Duration timeout(String endpoint) {
+        final var timeouts = this.config.timeouts();
+        return Duration.ofMillis(timeouts.getOrDefault(endpoint, DEFAULT_TIMEOUT));
+    }
+
+    /***
+     * Build the failure of a call that timed out
+     */
+    private static ActionException timedOut(String endpoint) {
+        MDC.put("checkinEndpoint", endpoint);
+        log.warn("Check-in call timed out");
+        MDC.remove("checkinEndpoint");
+
+        return new ActionException("timeout", "Check-in did not respond in time");
+    }
+
+    /***
+     * Get the state of the circuit breaker
+     * @return 0 if closed, 1 if half-open, 2 if open
+     */
+    double state() {
+        final var opened = this.openedAt.get();
+        if(0 == opened)
+            return 0;
+
+        return Instant.now().toEpochMilli() - opened < this.config.circuitOpenFor() ? 2 : 1;
+    }
+}
@@ -0,0 +1,254 @@
+package egi.checkin;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+
+
+/***
+ * Streaming reader for the role records returned by the Check-in VoMembers endpoint.
+ * Reads the records one by one, keeping only the fields used by this service, instead of
+ * binding the whole response. The identifiers, names, and email addresses of users
+ * are pruned to the ones {@link egi.checkin.model.CheckinUser} uses.
+ */
+@Consumes(MediaType.APPLICATION_JSON)
+public class CheckinRoleListReader implements MessageBodyReader<CheckinRoleList> {
+
+    private static final JsonFactory factory = new JsonFactory();
+    private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return CheckinRoleList.class.equals(type);
+    }
+
+    @Override
+    public CheckinRoleList readFrom(Class<CheckinRoleList> type, Type genericType, Annotation[] annotations,
+                                    MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
+                                    InputStream entityStream) throws IOException {
+        return read(entityStream);
+    }
+
+    /***
+     * Read role records
+     * @param in JSON response of the VoMembers endpoint
+     * @return The role records, see also {@link CheckinRoleList}
+     */
+    public static CheckinRoleList read(InputStream in) throws IOException {
+        var list = new CheckinRoleList();
+        list.records = new ArrayList<>();
+
+        try(var parser = factory.createParser(in)) {
+            if(JsonToken.START_OBJECT != parser.nextToken())
+                throw new IOException("Expected role record list");
+
+            while(JsonToken.FIELD_NAME == parser.nextToken()) {
+                final var field = parser.getCurrentName();
+                final var token = parser.nextToken();
+                switch(field) {
+                    case "RequestType" -> list.requestType = parser.getValueAsString();
+                    case "ResponseType" -> list.kind = parser.getValueAsString();
+                    case "Version" -> list.version = parser.getValueAsString();
+                    case "CoPersonRoles" -> {
+                        if(JsonToken.START_ARRAY == token) {
+                            while(JsonToken.START_OBJECT == parser.nextToken())
+                                list.records.add(readRole(parser));
+                        }
+                        else
+                            parser.skipChildren();
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        return list;
+    }
+
+    /***
+     * Read a role record, the parser is positioned on its start
+     */
+    private static CheckinRole readRole(JsonParser parser) throws IOException {
+        var role = new CheckinRole();
+        while(JsonToken.FIELD_NAME == parser.nextToken()) {
+            final var field = parser.getCurrentName();
+            parser.nextToken();
+            switch(field) {
+                case "Id" -> role.roleId = parser.getValueAsLong();
+                case "Person" -> role.person = readPerson(parser);
+                case "CouId" -> role.groupId = parser.getValueAsLong();
+                case "Affiliation" -> role.affiliation = parser.getValueAsString();
+                case "Title" -> role.title = parser.getValueAsString();
+                case "Status" -> role.status = parser.getValueAsString();
+                case "ValidFrom" -> role.from = readDate(parser);
+                case "ValidThrough" -> role.until = readDate(parser);
+                case "Modified" -> role.modified = readDate(parser);
+                case "Revision" -> role.revision = parser.getValueAsInt();
+                case "Deleted" -> role.deleted = JsonToken.VALUE_NULL == parser.currentToken() ? null : parser.getValueAsBoolean();
+                default -> parser.skipChildren();
+            }
+        }
+
+        return role;
+    }
+
+    /***
+     * Read the user of a role record, the parser is positioned on its start
+     */
+    private static CheckinRole.Person readPerson(JsonParser parser) throws IOException {
+        if(JsonToken.START_OBJECT != parser.currentToken()) {
+            parser.skipChildren();
+            return null;
+        }
+
+        var person = new CheckinRole.Person();
+        while(JsonToken.FIELD_NAME == parser.nextToken()) {
+            final var field = parser.getCurrentName();
+            final var token = parser.nextToken();
+            switch(field) {
+                case "Id" -> person.Id = parser.getValueAsLong();
+                case "Identifier" -> {
+                    // Keep just the Check-in user Id
+                    if(JsonToken.START_ARRAY == token) {
+                        while(JsonToken.START_OBJECT == parser.nextToken())
+                            readIdentifier(parser, person);
+                    }
+                    else if(JsonToken.START_OBJECT == token)
+                        readIdentifier(parser, person);
+                    else
+                        parser.skipChildren();
+                }
+                case "Name" -> {
+                    // Keep just the first complete name
+                    if(JsonToken.START_ARRAY == token) {
+                        while(JsonToken.START_OBJECT == parser.nextToken())
+                            readName(parser, person);
+                    }
+                    else if(JsonToken.START_OBJECT == token)
+                        readName(parser, person);
+                    else
+                        parser.skipChildren();
+                }
+                case "EmailAddress" -> {
+                    // Keep just the first email address
+                    if(JsonToken.START_ARRAY == token) {
+                        while(JsonToken.START_OBJECT == parser.nextToken())
+                            readEmail(parser, person);
+                    }
+                    else if(JsonToken.START_OBJECT == token)
+                        readEmail(parser, person);
+                    else
+                        parser.skipChildren();
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        return person;
+    }
+
+    /***
+     * Read an identifier of a user, keep it if it is the Check-in user Id
+     */
+    private static void readIdentifier(JsonParser parser, CheckinRole.Person person) throws IOException {
+        var identifier = new CheckinRole.Person.Identifier();
+        while(JsonToken.FIELD_NAME == parser.nextToken()) {
+            final var field = parser.getCurrentName();
+            parser.nextToken();
+            switch(field) {
+                case "Type" -> identifier.kind = parser.getValueAsString();
+                case "type" -> identifier.type = parser.getValueAsString();
+                case "Id" -> identifier.id = parser.getValueAsString();
+                case "identifier" -> identifier.identifier = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+
+        if(null != person.ids || null == identifier.type || !identifier.type.equalsIgnoreCase("epuid"))
+            return;
+
+        person.ids = new ArrayList<>(1);
+        person.ids.add(identifier);
+    }
+
+    /***
+     * Read a name of a user, keep it if it is the first complete one
+     */
+    private static void readName(JsonParser parser, CheckinRole.Person person) throws IOException {
+        var name = new CheckinRole.Person.Name();
+        while(JsonToken.FIELD_NAME == parser.nextToken()) {
+            final var field = parser.getCurrentName();
+            parser.nextToken();
+            switch(field) {
+                case "given" -> name.given = parser.getValueAsString();
+                case "family" -> name.family = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+
+        if(null != person.names ||
+           null == name.given || name.given.isBlank() || null == name.family || name.family.isBlank())
+            return;
+
+        person.names = new ArrayList<>(1);
+        person.names.add(name);
+    }
+
+    /***
+     * Read an email address of a user, keep it if it is the first one
+     */
+    private static void readEmail(JsonParser parser, CheckinRole.Person person) throws IOException {
+        var email = new CheckinRole.Person.Email();
+        while(JsonToken.FIELD_NAME == parser.nextToken()) {
+            final var field = parser.getCurrentName();
+            parser.nextToken();
+            switch(field) {
+                case "mail" -> email.mail = parser.getValueAsString();
+                case "verified" -> email.verified = parser.getValueAsBoolean();
+                default -> parser.skipChildren();
+            }
+        }
+
+        if(null != person.emails || null == email.mail || email.mail.isBlank())
+            return;
+
+        person.emails = new ArrayList<>(1);
+        person.emails.add(email);
+    }
+
+    /***
+     * Read a date in the format used by Check-in (UTC)
+     * @return The date, null if missing or invalid
+     */
+    private static Date readDate(JsonParser parser) throws IOException {
+        final var value = parser.getValueAsString();
+        if(null == value || value.isBlank())
+            return null;
+
+        try {
+            return Date.from(LocalDateTime.parse(value, dateFormat).toInstant(ZoneOffset.UTC));
+        }
+        catch(DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -16,6 +16,7 @@ import egi.checkin.model.*;
  * REST client for EGI Check-in
  */
 @RegisterProvider(value = CheckinServiceExceptionMapper.class)
+@RegisterProvider(value = CheckinRoleListReader.class)
 public interface CheckinService {
 
     @GET
@@ -0,0 +1,82 @@
+package egi.checkin;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.quarkus.rest.client.reactive.QuarkusRestClientBuilder;
+import io.vertx.core.http.HttpClientOptions;
+import org.jboss.resteasy.reactive.client.api.QuarkusRestClientProperties;
+
+import java.net.URL;
+
+
+/***
+ * HTTP transport used to call Check-in.
+ * Connections are pooled and kept alive between calls, so that the TLS handshake is not
+ * repeated for every call. HTTP/2 can be enabled to multiplex calls over fewer connections.
+ *
+ * The pool is instrumented by Quarkus under the client name "checkin":
+ * - http.client.connections: open connections (active count and how long they were open)
+ * - http.client.pending: calls waiting for a response, i.e. connections in use
+ * - http.client.queue.size, http.client.queue.delay: calls waiting for a pooled connection, and for how long
+ * This adds checkin.connections.idle, the open connections not in use.
+ */
+public class CheckinTransport {
+
+    public static final String CLIENT_NAME = "checkin";
+
+    private static boolean gaugesRegistered = false;
+
+
+    /***
+     * Prepare a REST client builder that uses the configured transport
+     * @param config The Check-in configuration
+     * @param baseUrl The Check-in server
+     * @return REST client builder
+     */
+    public static QuarkusRestClientBuilder builder(CheckinConfig config, URL baseUrl) {
+        var options = new HttpClientOptions()
+                .setMetricsName("rest-client|" + CLIENT_NAME)   // Tags the pool metrics with clientName=checkin
+                .setKeepAlive(true)
+                .setMaxWaitQueueSize(config.connectionMaxWaiting())
+                .setPoolCleanerPeriod(1000);
+
+        if(config.http2())
+            // Each connection carries multiple concurrent calls
+            options.setHttp2MultiplexingLimit(config.http2MaxStreams());
+
+        registerGauges(Metrics.globalRegistry);
+
+        return QuarkusRestClientBuilder.newBuilder()
+                .baseUrl(baseUrl)
+                .httpClientOptions(options)
+                // These are applied on top of the options above
+                .property(QuarkusRestClientProperties.NAME, CLIENT_NAME)
+                .property(QuarkusRestClientProperties.CONNECTION_POOL_SIZE, config.connectionPoolSize())
+                .property(QuarkusRestClientProperties.CONNECTION_TTL, config.connectionKeepAlive())
+                .property(QuarkusRestClientProperties.KEEP_ALIVE_ENABLED, true)
+                .property(QuarkusRestClientProperties.HTTP2, config.http2());
+    }
+
+    /***
+     * Report the idle connections in the pool, derived from the connection metrics of Quarkus
+     * See {@link CheckinMetrics} about the registry.
+     */
+    private static synchronized void registerGauges(MeterRegistry registry) {
+        if(gaugesRegistered)
+            return;
+
+        Gauge.builder("checkin.connections.idle", registry, r -> {
+                    var open = r.find("http.client.connections").tag("clientName", CLIENT_NAME).longTaskTimer();
+                    var inUse = r.find("http.client.pending").tag("clientName", CLIENT_NAME).gauge();
+                    if(null == open)
+                        return 0;
+
+                    return Math.max(0, open.activeTasks() - (null != inUse ? inUse.value() : 0));
+                })
+                .description("Open connections to Check-in that are not in use")
+                .register(registry);
+
+        gaugesRegistered = true;
+    }
+}
@@ -0,0 +1,240 @@
+package egi.checkin;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinUser;
+
+
+/***
+ * Table of the Check-in users referenced by membership snapshots.
+ * Each user is stored once and identified by an int handle, so that memberships and roles
+ * can be held as sets of handles instead of copies of the users (and of their 64 character Ids).
+ * Users are only added or updated, never removed.
+ *
+ * The snapshots built from each other share the handles and the Ids, but each one has its own copy
+ * of the details (see {@link #copy()}), so updating the details of a user for a new snapshot does not
+ * change the snapshots already published. The table is replaced when a snapshot is built from scratch.
+ */
+public class CheckinUserTable {
+
+    // Estimated sizes of the JVM objects used, in bytes (64-bit JVM, compressed references)
+    static final int OBJECT_HEADER = 16;
+    static final int REFERENCE = 4;
+    static final int MAP_ENTRY = 32;
+    static final int BOXED_INT = 16;
+
+    private final Handles handles;      // Shared with the tables copied from this one
+    private volatile Entry[] entries;   // By handle, only ever changed before the snapshot using it is published
+
+
+    /***
+     * The handles of the users, and their (interned) Check-in user Ids
+     */
+    private static class Handles {
+
+        final ConcurrentMap<String, Integer> byId = new ConcurrentHashMap<>();    // By Check-in user Id
+        volatile String[] ids = new String[64];                                   // By handle
+        volatile int size = 0;
+    }
+
+
+    /***
+     * The details of a user
+     */
+    private static class Entry {
+
+        final String checkinUserId;
+        final String firstName;
+        final String lastName;
+        final String email;
+        final boolean emailIsVerified;
+
+        Entry(String checkinUserId, String firstName, String lastName, String email, boolean emailIsVerified) {
+            this.checkinUserId = checkinUserId;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.email = email;
+            this.emailIsVerified = emailIsVerified;
+        }
+
+        /***
+         * Check if another entry holds the same details
+         */
+        boolean sameAs(Entry other) {
+            return Objects.equals(this.firstName, other.firstName) &&
+                   Objects.equals(this.lastName, other.lastName) &&
+                   Objects.equals(this.email, other.email) &&
+                   this.emailIsVerified == other.emailIsVerified;
+        }
+    }
+
+
+    /***
+     * Constructor, creates an empty table
+     */
+    public CheckinUserTable() {
+        this(new Handles(), new Entry[64]);
+    }
+
+    private CheckinUserTable(Handles handles, Entry[] entries) {
+        this.handles = handles;
+        this.entries = entries;
+    }
+
+    /***
+     * Copy the table for a new snapshot.
+     * The copy shares the handles and the Ids of the users, but has its own details.
+     * @return New table, adding or updating users in it does not change this table
+     */
+    public CheckinUserTable copy() {
+        return new CheckinUserTable(this.handles, this.entries.clone());
+    }
+
+    /***
+     * Add the user of a role record, or update its details if the user is already in the table
+     * @param checkinUserId The Check-in user Id of the record's user
+     * @param record The role record, the first complete name and the first email address of its user are stored
+     * @return Handle of the user
+     */
+    public int add(String checkinUserId, CheckinRole record) {
+        synchronized(this.handles) {
+            var handle = this.handles.byId.get(checkinUserId);
+            if(null == handle) {
+                // New user, intern the Id
+                handle = this.handles.size;
+                var ids = this.handles.ids;
+                if(handle == ids.length)
+                    ids = Arrays.copyOf(ids, handle * 2);
+
+                ids[handle] = checkinUserId;
+                this.handles.ids = ids;
+                this.handles.size = handle + 1;
+                this.handles.byId.put(checkinUserId, handle);
+            }
+
+            final var entry = entryOf(this.handles.ids[handle], record);
+            var entries = this.entries;
+            if(handle >= entries.length)
+                entries = Arrays.copyOf(entries, Math.max(entries.length * 2, handle + 1));
+
+            var existing = entries[handle];
+            if(null == existing || !existing.sameAs(entry))
+                // Keep the interned Id, replace the details
+                entries[handle] = entry;
+
+            this.entries = entries;     // Volatile write, publishes the entry
+            return handle;
+        }
+    }
+
+    /***
+     * Get the handle of a user
+     * @param checkinUserId The Check-in user Id
+     * @return Handle of the user, -1 if the user is not in the table
+     */
+    public int handle(String checkinUserId) {
+        if(null == checkinUserId)
+            return -1;
+
+        // Tables copied from the same one can each have users the other does not have
+        var handle = this.handles.byId.get(checkinUserId);
+        if(null == handle)
+            return -1;
+
+        final var entries = this.entries;
+        return handle < entries.length && null != entries[handle] ? handle : -1;
+    }
+
+    /***
+     * Get the Check-in user Id of a user
+     * @param handle Handle of the user
+     * @return Check-in user Id, this is the same (interned) string for all snapshots sharing this table
+     */
+    public String checkinUserId(int handle) {
+        return this.entries[handle].checkinUserId;
+    }
+
+    /***
+     * Build the API model of a user
+     * @param handle Handle of the user
+     * @return New user, without roles
+     */
+    public CheckinUser user(int handle) {
+        final var entry = this.entries[handle];
+        var user = new CheckinUser(entry.checkinUserId)
+                .setFirstName(entry.firstName)
+                .setLastName(entry.lastName)
+                .setEmail(entry.email);
+        if(null != entry.firstName && null != entry.lastName)
+            user.setFullName(entry.firstName + " " + entry.lastName);
+        user.emailIsVerified = entry.emailIsVerified;
+
+        return user;
+    }
+
+    /***
+     * Get the number of users in the table, including the ones only added to the tables copied from it
+     */
+    public int size() { return this.handles.size; }
+
+    /***
+     * Estimate the heap used by the table
+     * @return Estimated size in bytes
+     */
+    public long estimatedSize() {
+        final var entries = this.entries;
+        long bytes = OBJECT_HEADER + (long)entries.length * REFERENCE + (long)this.handles.ids.length * REFERENCE;
+        for(final var entry : entries) {
+            if(null == entry)
+                continue;
+
+            bytes += OBJECT_HEADER + 4L * REFERENCE + MAP_ENTRY + BOXED_INT;
+            bytes += stringSize(entry.checkinUserId) + stringSize(entry.firstName) +
+                     stringSize(entry.lastName) + stringSize(entry.email);
+        }
+
+        return bytes;
+    }
+
+    /***
+     * Extract the details of the user of a role record,
+     * same as {@link CheckinUser#CheckinUser(CheckinRole)}
+     */
+    private static Entry entryOf(String checkinUserId, CheckinRole record) {
+        String firstName = null, lastName = null, email = null;
+        boolean emailIsVerified = false;
+
+        // Get first complete name
+        if(null != record.person.names)
+            for(var name : record.person.names) {
+                if(null != name.family && !name.family.isBlank() && null != name.given && !name.given.isBlank()) {
+                    firstName = name.given;
+                    lastName = name.family;
+                    break;
+                }
+            }
+
+        // Get first email address
+        if(null != record.person.emails)
+            for(var mail : record.person.emails) {
+                if(null != mail.mail && !mail.mail.isBlank()) {
+                    email = mail.mail;
+                    emailIsVerified = mail.verified;
+                    break;
+                }
+            }
+
+        return new Entry(checkinUserId, firstName, lastName, email, emailIsVerified);
+    }
+
+    /***
+     * Estimate the heap used by a string (compact Latin-1 strings)
+     */
+    static long stringSize(String s) {
+        return null == s ? 0 : OBJECT_HEADER + 8 + OBJECT_HEADER + s.length();
+    }
+}
@@ -0,0 +1,175 @@
+package egi.checkin;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+
+
+/***
+ * The differences between two versions of the Check-in role records of a group or VO.
+ * Records are matched by their Id, and considered changed when any field used to build
+ * the membership differs, including the details of the user and the validity interval.
+ */
+public class MembershipChanges {
+
+    public enum Kind { ADDED, UPDATED, REMOVED }
+
+    /***
+     * A changed record
+     */
+    public static class Change {
+
+        public final Kind kind;
+        public final long roleId;
+        public final String checkinUserId;
+        public final String role;       // "member" for membership records
+        public final String status;
+        public final CheckinRole record;   // The new record, or the removed one
+
+        public Change(Kind kind, CheckinRole record) {
+            this.kind = kind;
+            this.roleId = record.roleId;
+            this.checkinUserId = null != record.person ? record.person.checkinUserId() : null;
+            this.role = record.role;
+            this.status = record.status;
+            this.record = record;
+        }
+    }
+
+    public final String groupName;
+    public final List<Change> changes;
+
+
+    /***
+     * Constructor
+     * @param groupName The group or VO the records belong to
+     * @param changes The changed records
+     */
+    public MembershipChanges(String groupName, List<Change> changes) {
+        this.groupName = groupName;
+        this.changes = changes;
+    }
+
+    /***
+     * Compare two versions of the role records of a group or VO
+     * @param groupName The group or VO the records belong to
+     * @param previous The previous records, null if there were none
+     * @param current The current records, null if there are none
+     * @return The changes, no changes if the two versions are the same
+     */
+    public static MembershipChanges between(String groupName, CheckinRoleList previous, CheckinRoleList current) {
+        if(previous == current)
+            return new MembershipChanges(groupName, List.of());
+
+        final var previousRecords = null != previous && null != previous.records ? previous.records : List.<CheckinRole>of();
+        final var currentRecords = null != current && null != current.records ? current.records : List.<CheckinRole>of();
+
+        Map<Long, CheckinRole> previousById = new LinkedHashMap<>();
+        for(var record : previousRecords)
+            previousById.putIfAbsent(record.roleId, record);
+
+        List<Change> changes = new ArrayList<>();
+        for(var record : currentRecords) {
+            var previousRecord = previousById.remove(record.roleId);
+            if(null == previousRecord)
+                changes.add(new Change(Kind.ADDED, record));
+            else if(previousRecord != record && changed(previousRecord, record))
+                changes.add(new Change(Kind.UPDATED, record));
+        }
+
+        for(var record : previousById.values())
+            changes.add(new Change(Kind.REMOVED, record));
+
+        return new MembershipChanges(groupName, changes);
+    }
+
+    /***
+     * Check if there are no changes
+     */
+    public boolean isEmpty() { return this.changes.isEmpty(); }
+
+    /***
+     * Get the users affected by the changes
+     * @return Check-in user Ids
+     */
+    public Set<String> users() {
+        Set<String> users = new LinkedHashSet<>();
+        for(var change : this.changes)
+            if(null != change.checkinUserId)
+                users.add(change.checkinUserId);
+
+        return users;
+    }
+
+    /***
+     * Check if a record has changed
+     * @param previous The previous version of the record
+     * @param current The current version of the record
+     * @return True if the record has changed
+     */
+    private static boolean changed(CheckinRole previous, CheckinRole current) {
+        return previous.revision != current.revision ||
+               !Objects.equals(previous.modified, current.modified) ||
+               !Objects.equals(previous.status, current.status) ||
+               !Objects.equals(previous.deleted, current.deleted) ||
+               !Objects.equals(previous.role, current.role) ||
+               !Objects.equals(previous.title, current.title) ||
+               !Objects.equals(previous.affiliation, current.affiliation) ||
+               !Objects.equals(previous.from, current.from) ||
+               !Objects.equals(previous.until, current.until) ||
+               changed(previous.person, current.person);
+    }
+
+    /***
+     * Check if the details of a user have changed
+     * @param previous The previous details of the user
+     * @param current The current details of the user
+     * @return True if the identifiers, names, or email addresses have changed
+     */
+    private static boolean changed(CheckinRole.Person previous, CheckinRole.Person current) {
+        if(previous == current)
+            return false;
+        if(null == previous || null == current)
+            return true;
+
+        return previous.Id != current.Id ||
+               !Objects.equals(previous.type, current.type) ||
+               changed(previous.ids, current.ids, (a, b) ->
+                       Objects.equals(a.kind, b.kind) && Objects.equals(a.id, b.id) &&
+                       Objects.equals(a.type, b.type) && Objects.equals(a.identifier, b.identifier)) ||
+               changed(previous.names, current.names, (a, b) ->
+                       Objects.equals(a.type, b.type) && Objects.equals(a.given, b.given) &&
+                       Objects.equals(a.middle, b.middle) && Objects.equals(a.family, b.family)) ||
+               changed(previous.emails, current.emails, (a, b) ->
+                       Objects.equals(a.type, b.type) && Objects.equals(a.mail, b.mail) &&
+                       a.verified == b.verified);
+    }
+
+    /***
+     * Check if a list of user details has changed
+     * @param previous The previous details
+     * @param current The current details
+     * @param same Tells if two details are the same
+     * @return True if the lists differ in size or in any of their elements
+     */
+    private static <T> boolean changed(List<T> previous, List<T> current, BiPredicate<T, T> same) {
+        if(previous == current)
+            return false;
+
+        final var previousSize = null != previous ? previous.size() : 0;
+        final var currentSize = null != current ? current.size() : 0;
+        if(previousSize != currentSize)
+            return true;
+
+        for(int i = 0; i < currentSize; i++) {
+            var a = previous.get(i);
+            var b = current.get(i);
+            if(a != b && (null == a || null == b || !same.test(a, b)))
+                return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,662 @@
+package egi.checkin;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+import egi.checkin.model.CheckinUser;
+import egi.eu.model.RoleInfo;
+
+
+/***
+ * Immutable view of the membership in a virtual organization (VO) and one of its groups,
+ * indexed for lookups. Built once from the Check-in role records of the VO and the group,
+ * then shared by all requests until the records change.
+ *
+ * Records with a validity period (from/until) only count while valid, as of the time the snapshot
+ * was built. The boundaries of these periods are queued by time, so that {@link #advance(long)} can
+ * rebuild just the entries of the users whose records became valid or expired meanwhile.
+ *
+ * Note: Check-in does not enforce that users in a group are enrolled in the group's parent VO.
+ *       Group members and role holders are only included if they are also VO members.
+ */
+public class MembershipSnapshot {
+
+    public static final String MEMBER = "member";
+
+    private static final Pattern REGEX_META = Pattern.compile("[\\\\\\[\\](){}.*+?^$|]");
+
+    private final String groupName;
+    private final CheckinRoleList voRecords;
+    private final CheckinRoleList groupRecords;
+
+    private final CheckinUserTable users;                               // Handles shared with the snapshots built from this one
+    private final Map<String, List<CheckinRole>> voRecordsByUser;       // By Check-in user Id
+    private final Map<String, List<CheckinRole>> groupRecordsByUser;    // By Check-in user Id
+
+    // Sets of user handles, see CheckinUserTable
+    private final BitSet voMembers;
+    private final BitSet groupMembers;
+    private final NavigableMap<String, BitSet> roleHolders;             // By role name
+
+    // Validity boundaries after asOf, the records that become valid or expire then
+    private final long asOf;                                            // Milliseconds since epoch
+    private final NavigableMap<Long, List<CheckinRole>> voBoundaries;
+    private final NavigableMap<Long, List<CheckinRole>> groupBoundaries;
+
+    private final long estimatedSize;                                   // Bytes
+
+
+    /***
+     * Build snapshot from Check-in records
+     * @param voRecords The role records of the VO, with the role field computed
+     * @param groupName The group, null to only index the VO
+     * @param groupRecords The role records of the group, with the role field computed, can be null
+     */
+    public MembershipSnapshot(CheckinRoleList voRecords, String groupName, CheckinRoleList groupRecords) {
+        this(null, voRecords, groupName, groupRecords, System.currentTimeMillis());
+    }
+
+    /***
+     * Build snapshot from Check-in records, reusing what is unchanged in a previous snapshot.
+     * Only the entries of the users whose records changed, or whose records became valid or expired
+     * since the previous snapshot was built, are rebuilt.
+     * @param previous The snapshot to start from, null to build from scratch
+     * @param voRecords The role records of the VO, with the role field computed
+     * @param groupName The group, null to only index the VO
+     * @param groupRecords The role records of the group, with the role field computed, can be null
+     * @param asOf Validity periods are evaluated at this time, milliseconds since epoch
+     */
+    private MembershipSnapshot(MembershipSnapshot previous,
+                               CheckinRoleList voRecords, String groupName, CheckinRoleList groupRecords,
+                               long asOf) {
+        this.groupName = groupName;
+        this.voRecords = voRecords;
+        this.groupRecords = groupRecords;
+        this.asOf = asOf;
+
+        Map<String, List<CheckinRole>> voRecordsByUser;
+        Map<String, List<CheckinRole>> groupRecordsByUser;
+        BitSet voMembers;
+        BitSet groupMembers;
+        NavigableMap<String, BitSet> roleHolders;
+        NavigableMap<Long, List<CheckinRole>> voBoundaries;
+        NavigableMap<Long, List<CheckinRole>> groupBoundaries;
+        Set<String> affectedUsers;
+
+        if(null == previous) {
+            // Index everything
+            this.users = new CheckinUserTable();
+            voRecordsByUser = groupByUser(voRecords);
+            groupRecordsByUser = groupByUser(groupRecords);
+            voMembers = new BitSet();
+            groupMembers = new BitSet();
+            roleHolders = new TreeMap<>();
+
+            affectedUsers = new LinkedHashSet<>(voRecordsByUser.keySet());
+            affectedUsers.addAll(groupRecordsByUser.keySet());
+
+            voBoundaries = new TreeMap<>();
+            groupBoundaries = new TreeMap<>();
+        }
+        else {
+            // Start from the previous indexes, then update the entries of the users with changed records
+            final var voChanges = MembershipChanges.between(null, previous.voRecords, voRecords);
+            final var groupChanges = MembershipChanges.between(groupName, previous.groupRecords, groupRecords);
+
+            this.users = previous.users.copy();
+            voRecordsByUser = applyChanges(previous.voRecordsByUser, voChanges);
+            groupRecordsByUser = applyChanges(previous.groupRecordsByUser, groupChanges);
+            voMembers = (BitSet)previous.voMembers.clone();
+            groupMembers = (BitSet)previous.groupMembers.clone();
+            roleHolders = new TreeMap<>(previous.roleHolders);
+
+            affectedUsers = voChanges.users();
+            affectedUsers.addAll(groupChanges.users());
+
+            // Users with records that became valid or expired meanwhile
+            addUsers(affectedUsers, previous.voBoundaries.headMap(asOf, true));
+            addUsers(affectedUsers, previous.groupBoundaries.headMap(asOf, true));
+
+            voBoundaries = new TreeMap<>(previous.voBoundaries.tailMap(asOf, false));
+            groupBoundaries = new TreeMap<>(previous.groupBoundaries.tailMap(asOf, false));
+        }
+
+        // Index the affected users
+        BitSet affectedHandles = new BitSet();
+        Map<String, BitSet> affectedRoles = new HashMap<>();   // Current holders among the affected users
+        for(var checkinUserId : affectedUsers) {
+            var voUserRecords = voRecordsByUser.getOrDefault(checkinUserId, List.of());
+            var groupUserRecords = groupRecordsByUser.getOrDefault(checkinUserId, List.of());
+            int handle = this.users.handle(checkinUserId);
+            if(handle < 0) {
+                if(voUserRecords.isEmpty() && groupUserRecords.isEmpty())
+                    // Not indexed before, no records now
+                    continue;
+
+                var record = !voUserRecords.isEmpty() ? voUserRecords.get(0) : groupUserRecords.get(0);
+                handle = this.users.add(checkinUserId, record);
+            }
+
+            affectedHandles.set(handle);
+            voMembers.clear(handle);
+            groupMembers.clear(handle);
+
+            // Queue the upcoming boundaries of the validity periods of the user's records
+            if(null != previous) {
+                removeBoundaries(voBoundaries, previous.voRecordsByUser.get(checkinUserId));
+                removeBoundaries(groupBoundaries, previous.groupRecordsByUser.get(checkinUserId));
+            }
+            addBoundaries(voBoundaries, voUserRecords, asOf);
+            addBoundaries(groupBoundaries, groupUserRecords, asOf);
+
+            // Active VO member?
+            for(var record : voUserRecords) {
+                if(isActive(record, asOf) && MEMBER.equals(record.role)) {
+                    this.users.add(checkinUserId, record);
+                    voMembers.set(handle);
+                    break;
+                }
+            }
+
+            Set<String> userRoles = null;
+            for(var record : groupUserRecords) {
+                if(!isActive(record, asOf))
+                    continue;
+
+                if(MEMBER.equals(record.role)) {
+                    // Only include users that are members of the VO
+                    if(voMembers.get(handle))
+                        groupMembers.set(handle);
+                }
+                else if(record.checkIfRole()) {
+                    if(null == userRoles)
+                        userRoles = new HashSet<>();
+                    userRoles.add(record.role);
+                }
+            }
+
+            // Roles, only for users that are members of both the VO and the group
+            if(null != userRoles && groupMembers.get(handle)) {
+                for(var role : userRoles)
+                    affectedRoles.computeIfAbsent(role, r -> new BitSet()).set(handle);
+            }
+        }
+
+        // Roles that were held by affected users must be rebuilt too
+        if(null != previous)
+            for(var entry : previous.roleHolders.entrySet())
+                if(entry.getValue().intersects(affectedHandles))
+                    affectedRoles.putIfAbsent(entry.getKey(), new BitSet());
+
+        // Rebuild the affected roles, keeping the holders that were not affected
+        for(var entry : affectedRoles.entrySet()) {
+            var holders = roleHolders.get(entry.getKey());
+            holders = null != holders ? (BitSet)holders.clone() : new BitSet();
+            holders.andNot(affectedHandles);
+            holders.or(entry.getValue());
+
+            if(holders.isEmpty())
+                roleHolders.remove(entry.getKey());
+            else
+                roleHolders.put(entry.getKey(), holders);
+        }
+
+        this.voRecordsByUser = voRecordsByUser;
+        this.groupRecordsByUser = groupRecordsByUser;
+        this.voMembers = voMembers;
+        this.groupMembers = groupMembers;
+        this.roleHolders = Collections.unmodifiableNavigableMap(roleHolders);
+        this.voBoundaries = voBoundaries;
+        this.groupBoundaries = groupBoundaries;
+        this.estimatedSize = estimateSize();
+    }
+
+    /***
+     * Build a snapshot from newer versions of the records, rebuilding only the entries
+     * of the users whose records changed.
+     * @param voRecords The role records of the VO, with the role field computed
+     * @param groupName The group, null to only index the VO
+     * @param groupRecords The role records of the group, with the role field computed, can be null
+     * @return New snapshot, or this one if it was already built from these records
+     */
+    public MembershipSnapshot update(CheckinRoleList voRecords, String groupName, CheckinRoleList groupRecords) {
+        if(builtFrom(voRecords, groupName, groupRecords))
+            return this;
+
+        final var now = Math.max(System.currentTimeMillis(), this.asOf);
+        if(this.users.size() > 2 * (this.voRecordsByUser.size() + this.groupRecordsByUser.size()) + 1024)
+            // Most users in the table left, start with a new table
+            return new MembershipSnapshot(null, voRecords, groupName, groupRecords, now);
+
+        if(!Objects.equals(this.groupName, groupName))
+            // Different group, reuse just the VO indexes
+            return new MembershipSnapshot(
+                    new MembershipSnapshot(this, this.voRecords, null, null, now), voRecords, groupName, groupRecords, now);
+
+        return new MembershipSnapshot(this, voRecords, groupName, groupRecords, now);
+    }
+
+    /***
+     * Build a snapshot from the same records as of a later time, rebuilding only the entries
+     * of the users whose records became valid or expired meanwhile.
+     * @param now The time to evaluate validity periods at, milliseconds since epoch
+     * @return New snapshot, or this one if no validity period started or ended by then
+     */
+    public MembershipSnapshot advance(long now) {
+        if(now < nextBoundary())
+            return this;
+
+        return new MembershipSnapshot(this, this.voRecords, this.groupName, this.groupRecords, now);
+    }
+
+    /***
+     * Get the time when the next record becomes valid or expires
+     * @return Milliseconds since epoch, Long.MAX_VALUE if no record has an upcoming validity boundary
+     */
+    public long nextBoundary() {
+        long next = Long.MAX_VALUE;
+        if(!this.voBoundaries.isEmpty())
+            next = this.voBoundaries.firstKey();
+        if(!this.groupBoundaries.isEmpty())
+            next = Math.min(next, this.groupBoundaries.firstKey());
+
+        return next;
+    }
+
+    /***
+     * Get the records that became valid or expired between the time this snapshot was built and a later time
+     * @param now The later time, milliseconds since epoch
+     * @param group Whether to return the records of the group or of the VO
+     * @return Records whose validity boundary is due by then
+     */
+    public List<CheckinRole> recordsDueBy(long now, boolean group) {
+        var due = (group ? this.groupBoundaries : this.voBoundaries).headMap(now, true);
+        List<CheckinRole> records = new ArrayList<>();
+        for(var boundary : due.values())
+            for(var record : boundary)
+                if(!records.contains(record))
+                    records.add(record);
+
+        return records;
+    }
+
+    /***
+     * Check if this snapshot was built from the specified records
+     * @param voRecords The role records of the VO
+     * @param groupName The group
+     * @param groupRecords The role records of the group
+     * @return True if the snapshot reflects exactly these records
+     */
+    public boolean builtFrom(CheckinRoleList voRecords, String groupName, CheckinRoleList groupRecords) {
+        return this.voRecords == voRecords &&
+               this.groupRecords == groupRecords &&
+               Objects.equals(this.groupName, groupName);
+    }
+
+    public String groupName() { return this.groupName; }
+    public CheckinRoleList voRecords() { return this.voRecords; }
+    public CheckinRoleList groupRecords() { return this.groupRecords; }
+
+    /***
+     * Get the active VO members
+     * @return New users, without roles
+     */
+    public List<CheckinUser> voMembers() { return usersIn(this.voMembers); }
+
+    /***
+     * Get the active group members that are also VO members
+     * @return New users, without roles
+     */
+    public List<CheckinUser> groupMembers() { return usersIn(this.groupMembers); }
+
+    /***
+     * Get the number of active VO members
+     */
+    public int voMemberCount() { return this.voMembers.cardinality(); }
+
+    /***
+     * Get the number of active group members that are also VO members
+     */
+    public int groupMemberCount() { return this.groupMembers.cardinality(); }
+
+    /***
+     * Get the number of group members that hold at least one role
+     */
+    public int roleHolderCount() {
+        var holders = new BitSet();
+        for(var users : this.roleHolders.values())
+            holders.or(users);
+
+        return holders.cardinality();
+    }
+
+    /***
+     * Get an active member of the VO
+     * @param checkinUserId The user
+     * @return New user without roles, null if not a VO member
+     */
+    public CheckinUser voMember(String checkinUserId) {
+        final var handle = this.users.handle(checkinUserId);
+        return handle >= 0 && this.voMembers.get(handle) ? this.users.user(handle) : null;
+    }
+
+    /***
+     * Check if a user is an active member of the VO
+     */
+    public boolean isVoMember(String checkinUserId) {
+        final var handle = this.users.handle(checkinUserId);
+        return handle >= 0 && this.voMembers.get(handle);
+    }
+
+    /***
+     * Check if a user is an active member of both the group and the VO
+     */
+    public boolean isGroupMember(String checkinUserId) {
+        final var handle = this.users.handle(checkinUserId);
+        return handle >= 0 && this.groupMembers.get(handle);
+    }
+
+    /***
+     * Get the users holding roles in the group.
+     * @param roleName Only return users holding roles that begin with this fragment (or match this expression).
+     *                 If empty or null, all users holding roles are returned.
+     *                 Note: Using this parameter means the returned users will not have
+     *                 all their roles reported, just the ones matching this expression.
+     * @return New users, with their roles field filled
+     */
+    public List<CheckinUser> usersWithRoles(String roleName) {
+        final var matching = null == roleName || roleName.isBlank() ?
+                this.roleHolders : matchingRoles(this.roleHolders, roleName);
+
+        // Collect the matching roles of each user
+        BitSet holders = new BitSet();
+        for(var roleHolders : matching.values())
+            holders.or(roleHolders);
+
+        List<CheckinUser> users = new ArrayList<>(holders.cardinality());
+        for(int handle = holders.nextSetBit(0); handle >= 0; handle = holders.nextSetBit(handle + 1)) {
+            var user = this.users.user(handle);
+            for(var entry : matching.entrySet())
+                if(entry.getValue().get(handle))
+                    user.addRole(entry.getKey());
+
+            users.add(user);
+        }
+
+        return users;
+    }
+
+    /***
+     * Get the roles assigned in the group.
+     * @param roleName Only return roles that begin with this fragment (or match this expression).
+     *                 If empty or null, all assigned roles are returned.
+     * @return New roles, with the users holding them
+     */
+    public List<RoleInfo> roles(String roleName) {
+        final var matching = null == roleName || roleName.isBlank() ?
+                this.roleHolders : matchingRoles(this.roleHolders, roleName);
+
+        List<RoleInfo> roles = new ArrayList<>(matching.size());
+        for(var entry : matching.entrySet()) {
+            var roleInfo = new RoleInfo(entry.getKey());
+            for(var user : usersIn(entry.getValue()))
+                roleInfo.addUser(user);
+
+            roles.add(roleInfo);
+        }
+
+        return roles;
+    }
+
+    /***
+     * Get the active record (without validity period) of a user for a role or membership
+     * @param checkinUserId The user
+     * @param roleName The role, or "member" for membership
+     * @return Role record, null if not found
+     */
+    public CheckinRole activeRecord(String checkinUserId, String roleName) {
+        return findRecord(checkinUserId, roleName.toLowerCase(), false);
+    }
+
+    /***
+     * Get the deleted record (without validity period) of a user for a role or membership
+     * @param checkinUserId The user
+     * @param roleName The role, or "member" for membership
+     * @return Role record, null if not found
+     */
+    public CheckinRole deletedRecord(String checkinUserId, String roleName) {
+        return findRecord(checkinUserId, roleName.toLowerCase(), true);
+    }
+
+    /***
+     * Estimate the heap used by the indexes of this snapshot, including the user table.
+     * The role records themselves are not included, they are held by the record cache.
+     * The strings in the user table are counted, although usually shared with the records.
+     * @return Estimated size in bytes
+     */
+    public long estimatedSize() { return this.estimatedSize; }
+
+    /***
+     * Get the time validity periods were evaluated at
+     * @return Milliseconds since epoch
+     */
+    public long asOf() { return this.asOf; }
+
+    /***
+     * Find the first group record (without validity period) of a user for a role or membership
+     * @param checkinUserId The user
+     * @param roleName The role (lowercase), or "member" for membership
+     * @param deleted Whether to look for a deleted or for an active record
+     * @return Role record, null if not found
+     */
+    private CheckinRole findRecord(String checkinUserId, String roleName, boolean deleted) {
+        var records = this.groupRecordsByUser.get(checkinUserId);
+        if(null == records)
+            return null;
+
+        for(var record : records) {
+            if(!roleName.equals(record.role) || null != record.from || null != record.until)
+                continue;
+            if(!MEMBER.equals(record.role) && !record.checkIfRole())
+                continue;
+
+            final var isDeleted = Boolean.TRUE.equals(record.deleted) || "Deleted".equalsIgnoreCase(record.status);
+            if(isDeleted == deleted)
+                return record;
+        }
+
+        return null;
+    }
+
+    /***
+     * Build the users in a set of handles
+     * @param handles The set of user handles
+     * @return New users, in the order they were added to the user table
+     */
+    private List<CheckinUser> usersIn(BitSet handles) {
+        List<CheckinUser> users = new ArrayList<>(handles.cardinality());
+        for(int handle = handles.nextSetBit(0); handle >= 0; handle = handles.nextSetBit(handle + 1))
+            users.add(this.users.user(handle));
+
+        return users;
+    }
+
+    /***
+     * Estimate the heap used by the indexes of this snapshot
+     */
+    private long estimateSize() {
+        long bytes = this.users.estimatedSize();
+        bytes += bitSetSize(this.voMembers) + bitSetSize(this.groupMembers);
+        for(var entry : this.roleHolders.entrySet())
+            bytes += CheckinUserTable.MAP_ENTRY + CheckinUserTable.stringSize(entry.getKey()) + bitSetSize(entry.getValue());
+
+        for(var byUser : List.of(this.voRecordsByUser, this.groupRecordsByUser))
+            for(var records : byUser.values())
+                bytes += CheckinUserTable.MAP_ENTRY + CheckinUserTable.OBJECT_HEADER * 2L +
+                         (long)records.size() * CheckinUserTable.REFERENCE;
+
+        return bytes;
+    }
+
+    /***
+     * Estimate the heap used by a bit set
+     */
+    private static long bitSetSize(BitSet bits) {
+        return CheckinUserTable.OBJECT_HEADER * 2L + bits.size() / 8;
+    }
+
+    /***
+     * Select the entries of a map keyed by role name that match a role name fragment.
+     * Plain fragments are looked up as prefixes, expressions are matched against all role names.
+     * @param map The map to select from
+     * @param roleName Role name fragment or regular expression
+     * @return Matching entries
+     */
+    private static <V> SortedMap<String, V> matchingRoles(NavigableMap<String, V> map, String roleName) {
+        if(!REGEX_META.matcher(roleName).find())
+            return map.subMap(roleName, true, roleName + Character.MAX_VALUE, true);
+
+        SortedMap<String, V> matching = new TreeMap<>();
+        try {
+            final var rexRole = Pattern.compile(roleName.replace("-", "\\-") + ".*");
+            for(var entry : map.entrySet())
+                if(rexRole.matcher(entry.getKey()).matches())
+                    matching.put(entry.getKey(), entry.getValue());
+        }
+        catch(PatternSyntaxException e) {
+            // Invalid expression matches nothing
+        }
+
+        return matching;
+    }
+
+    /***
+     * Group records by the user they are about, skipping invalid records
+     * @param records The records to group
+     * @return Records in their original order, indexed by Check-in user Id
+     */
+    private static Map<String, List<CheckinRole>> groupByUser(CheckinRoleList records) {
+        Map<String, List<CheckinRole>> byUser = new LinkedHashMap<>();
+        if(null != records && null != records.records)
+            for(var record : records.records) {
+                final var checkinUserId = null != record.person ? record.person.checkinUserId() : null;
+                if(null == checkinUserId || checkinUserId.isBlank() || null == record.role)
+                    continue;
+
+                byUser.computeIfAbsent(checkinUserId, u -> new ArrayList<>()).add(record);
+            }
+
+        return byUser;
+    }
+
+    /***
+     * Apply changes to records grouped by user
+     * @param byUser The records to apply changes to, not modified
+     * @param changes The changes to apply
+     * @return Updated records, indexed by Check-in user Id
+     */
+    private static Map<String, List<CheckinRole>> applyChanges(Map<String, List<CheckinRole>> byUser, MembershipChanges changes) {
+        if(changes.isEmpty())
+            return byUser;
+
+        Map<String, List<CheckinRole>> updated = new LinkedHashMap<>(byUser);
+        Set<String> copied = new HashSet<>();
+        for(var change : changes.changes) {
+            final var checkinUserId = change.checkinUserId;
+            if(null == checkinUserId || checkinUserId.isBlank() || null == change.role)
+                continue;
+
+            var records = updated.get(checkinUserId);
+            if(!copied.contains(checkinUserId)) {
+                // Copy on first change, the previous snapshot may still be in use
+                records = null != records ? new ArrayList<>(records) : new ArrayList<>();
+                updated.put(checkinUserId, records);
+                copied.add(checkinUserId);
+            }
+
+            records.removeIf(record -> record.roleId == change.roleId);
+            if(MembershipChanges.Kind.REMOVED != change.kind)
+                records.add(change.record);
+        }
+
+        // Forget users without records
+        for(var checkinUserId : copied)
+            if(updated.get(checkinUserId).isEmpty())
+                updated.remove(checkinUserId);
+
+        return updated;
+    }
+
+    /***
+     * Add the users of the records in a range of validity boundaries
+     */
+    private static void addUsers(Set<String> users, Map<Long, List<CheckinRole>> boundaries) {
+        for(var records : boundaries.values())
+            for(var record : records)
+                if(null != record.person)
+                    users.add(record.person.checkinUserId());
+    }
+
+    /***
+     * Queue the upcoming validity boundaries of records. Only records that can be active are queued.
+     * The lists in the queue may be shared with other snapshots, they are replaced rather than modified.
+     * @param boundaries The queue to add to
+     * @param records The records of a user
+     * @param asOf Only queue boundaries after this time
+     */
+    private static void addBoundaries(NavigableMap<Long, List<CheckinRole>> boundaries, List<CheckinRole> records, long asOf) {
+        for(var record : records) {
+            if(Boolean.TRUE.equals(record.deleted) || !"Active".equalsIgnoreCase(record.status))
+                continue;
+
+            for(var boundary : new Date[] { record.from, record.until }) {
+                if(null == boundary || boundary.getTime() <= asOf)
+                    continue;
+
+                boundaries.compute(boundary.getTime(), (time, queued) -> {
+                    var updated = null != queued ? new ArrayList<>(queued) : new ArrayList<CheckinRole>(1);
+                    updated.add(record);
+                    return updated;
+                });
+            }
+        }
+    }
+
+    /***
+     * Remove the validity boundaries of records from the queue
+     * @param boundaries The queue to remove from
+     * @param records The previous records of a user, can be null
+     */
+    private static void removeBoundaries(NavigableMap<Long, List<CheckinRole>> boundaries, List<CheckinRole> records) {
+        if(null == records || boundaries.isEmpty())
+            return;
+
+        for(var record : records) {
+            for(var boundary : new Date[] { record.from, record.until }) {
+                if(null == boundary)
+                    continue;
+
+                boundaries.computeIfPresent(boundary.getTime(), (time, queued) -> {
+                    var updated = new ArrayList<>(queued);
+                    updated.removeIf(queuedRecord -> queuedRecord == record);
+                    return updated.isEmpty() ? null : updated;
+                });
+            }
+        }
+    }
+
+    /***
+     * Check if a record is active at a point in time
+     * @param record The record to check
+     * @param now Milliseconds since epoch
+     * @return True if the record is active and within its validity period
+     */
+    private static boolean isActive(CheckinRole record, long now) {
+        return !Boolean.TRUE.equals(record.deleted) && "Active".equalsIgnoreCase(record.status) &&
+               (null == record.from || record.from.getTime() <= now) &&
+               (null == record.until || record.until.getTime() > now);
+    }
+}
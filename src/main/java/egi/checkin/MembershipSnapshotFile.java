@@ -0,0 +1,149 @@
+package egi.checkin;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.logging.Logger;
+import org.jboss.logging.MDC;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import egi.checkin.model.CheckinRoleList;
+
+
+/***
+ * Compressed file holding the Check-in role records a {@link MembershipSnapshot} was built from.
+ * Saved whenever the membership of the configured group changes, and loaded at startup,
+ * so that requests can be served before Check-in is reached.
+ */
+public class MembershipSnapshotFile {
+
+    private static final Logger log = Logger.getLogger(MembershipSnapshotFile.class);
+
+    // Single record identifiers are serialized as an object, see CheckinRole.Person.IdentifierListSerializer
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Path path;
+    private final AtomicReference<Content> pending = new AtomicReference<>();  // Latest content not yet saved
+
+
+    /***
+     * The saved records, with the collaboration, VO, and group they belong to
+     */
+    public static class Content {
+
+        public String coId;
+        public String vo;
+        public String group;
+
+        public long voUpdatedAt;     // Milliseconds since epoch
+        public CheckinRoleList voRecords;
+
+        public long groupUpdatedAt;  // Milliseconds since epoch
+        public CheckinRoleList groupRecords;
+    }
+
+
+    /***
+     * Constructor
+     * @param path The file to save to and load from
+     */
+    public MembershipSnapshotFile(String path) {
+        this.path = Path.of(path);
+    }
+
+    /***
+     * Save records, replacing the file atomically so that a crash never leaves a partial file.
+     * This performs blocking I/O, do not call from the event loop.
+     * @param content The records to save
+     * @return True on success
+     */
+    public boolean save(Content content) {
+        MDC.put("snapshotFile", this.path.toString());
+
+        Path temp = null;
+        try {
+            var dir = this.path.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+
+            temp = Files.createTempFile(dir, this.path.getFileName().toString(), ".tmp");
+            try(var out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                mapper.writeValue(out, content);
+            }
+
+            Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved membership snapshot");
+            return true;
+        }
+        catch(IOException e) {
+            log.warn("Failed to save membership snapshot");
+            log.debug(e.getMessage());
+
+            if(null != temp)
+                try {
+                    Files.deleteIfExists(temp);
+                } catch(IOException ex) {}
+        }
+        finally {
+            MDC.remove("snapshotFile");
+        }
+
+        return false;
+    }
+
+    /***
+     * Save records in the background. When called again before the previous records were
+     * saved, only the latest records are saved.
+     * @param content The records to save
+     * @param executor Runs the blocking save
+     */
+    public void saveAsync(Content content, Executor executor) {
+        if(null != this.pending.getAndSet(content))
+            // A save is already scheduled, it will pick up these records
+            return;
+
+        executor.execute(() -> {
+            synchronized(this) {
+                var latest = this.pending.getAndSet(null);
+                if(null != latest)
+                    save(latest);
+            }
+        });
+    }
+
+    /***
+     * Load records.
+     * This performs blocking I/O, do not call from the event loop.
+     * @return The saved records, null if there is no file or it cannot be read
+     */
+    public Content load() {
+        MDC.put("snapshotFile", this.path.toString());
+
+        try(var in = new GZIPInputStream(Files.newInputStream(this.path))) {
+            var content = mapper.readValue(in, Content.class);
+            log.debug("Loaded membership snapshot");
+            return content;
+        }
+        catch(NoSuchFileException e) {
+            log.info("No membership snapshot to load");
+        }
+        catch(IOException e) {
+            log.warn("Failed to load membership snapshot");
+            log.debug(e.getMessage());
+        }
+        finally {
+            MDC.remove("snapshotFile");
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,60 @@
+package egi.checkin;
+
+import egi.checkin.model.CheckinObject;
+import egi.checkin.model.CheckinRole;
+
+
+/***
+ * A role assignment or revocation that is part of a batch, see {@link Checkin#changeUserRolesAsync}.
+ * Carries the outcome of the change back to the caller.
+ */
+public class RoleChange {
+
+    public final String checkinUserId;
+    public final String roleName;
+    public final boolean assign;
+
+    CheckinRole record;     // Existing record to restore or delete, null when a new record must be added
+    CheckinObject added;    // The record Check-in created, when a new record was added
+    boolean changed;
+    Throwable failure;
+
+
+    /***
+     * Constructor
+     * @param checkinUserId The user to assign the role to or revoke it from
+     * @param roleName The role
+     * @param assign True to assign the role, false to revoke it
+     */
+    public RoleChange(String checkinUserId, String roleName, boolean assign) {
+        this.checkinUserId = checkinUserId;
+        this.roleName = roleName;
+        this.assign = assign;
+    }
+
+    /***
+     * Check if Check-in was changed, false when the user already had (or did not have) the role
+     */
+    public boolean changed() { return this.changed; }
+
+    /***
+     * Check if the change was applied (or was not needed)
+     */
+    public boolean succeeded() { return null == this.failure; }
+
+    /***
+     * Get the reason the change failed
+     * @return The failure, null on success
+     */
+    public Throwable failure() { return this.failure; }
+
+    /***
+     * Mark the change as failed
+     * @param failure The reason
+     * @return Ourselves, to allow chaining calls with .
+     */
+    RoleChange fail(Throwable failure) {
+        this.failure = failure;
+        return this;
+    }
+}
@@ -128,6 +128,28 @@ public class CheckinRole {
         this.deleted = false;
     }
 
+    /***
+     * Copy constructor, the user and group details are shared with the copied record
+     */
+    public CheckinRole(CheckinRole other) {
+        this.version = other.version;
+        this.roleId = other.roleId;
+        this.person = other.person;
+        this.groupId = other.groupId;
+        this.group = other.group;
+        this.role = other.role;
+        this.affiliation = other.affiliation;
+        this.title = other.title;
+        this.status = other.status;
+        this.from = other.from;
+        this.until = other.until;
+        this.created = other.created;
+        this.modified = other.modified;
+        this.modifiedBy = other.modifiedBy;
+        this.revision = other.revision;
+        this.deleted = other.deleted;
+    }
+
     /***
      * Check if this is a membership record or a role record
      */
@@ -35,6 +35,16 @@ public class CheckinRoleList {
      */
     public CheckinRoleList() {}
 
+    /***
+     * Copy constructor, the list of records is copied but not the records themselves
+     */
+    public CheckinRoleList(CheckinRoleList other) {
+        this.requestType = other.requestType;
+        this.kind = other.kind;
+        this.version = other.version;
+        this.records = null != other.records ? new ArrayList<>(other.records) : new ArrayList<>();
+    }
+
     /***
      * Construct as request to add/update membership record
      */
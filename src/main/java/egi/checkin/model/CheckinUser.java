@@ -26,6 +26,7 @@ public class CheckinUser {
     public final static String ATTR_EMAIL = "email";
     public final static String ATTR_EMAILCHECKED = "emailVerified";
     public final static String ATTR_ASSURANCE = "assurance";
+    public final static String ATTR_USERINFO = "checkinUserInfo";
 
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
     @JsonProperty("voperson_id")
@@ -74,6 +75,22 @@ public class CheckinUser {
      */
     public CheckinUser(String checkinUserId) { this.checkinUserId = checkinUserId; }
 
+    /***
+     * Copy constructor
+     */
+    public CheckinUser(CheckinUser other) {
+        this.checkinUserId = other.checkinUserId;
+        this.fullName = other.fullName;
+        this.firstName = other.firstName;
+        this.lastName = other.lastName;
+        this.email = other.email;
+        this.emailIsVerified = other.emailIsVerified;
+        this.userName = other.userName;
+        this.assurances = null != other.assurances ? new ArrayList<>(other.assurances) : null;
+        this.entitlements = null != other.entitlements ? new ArrayList<>(other.entitlements) : null;
+        this.roles = null != other.roles ? new HashSet<>(other.roles) : null;
+    }
+
     /***
      * Construct from Check-in membership record
      */
@@ -87,6 +87,7 @@ public class ActionError {
      */
     public ActionError(String id, String description) {
         this.id = id;
+        this.description = description;
 
         updateStatusFromId();
     }
@@ -220,6 +221,9 @@ public class ActionError {
             case FORBIDDEN -> this.id = "noAccess";
             case BAD_REQUEST -> this.id = "badRequest";
             case NOT_FOUND -> this.id = "notFound";
+            case TOO_MANY_REQUESTS -> this.id = "tooManyRequests";
+            case SERVICE_UNAVAILABLE -> this.id = "unavailable";
+            case GATEWAY_TIMEOUT -> this.id = "timeout";
             default -> {
                 return false;
             }
@@ -238,6 +242,9 @@ public class ActionError {
             case "noAccess" -> this.status = Status.FORBIDDEN;
             case "badRequest" -> this.status = Status.BAD_REQUEST;
             case "notFound" -> this.status = Status.NOT_FOUND;
+            case "tooManyRequests" -> this.status = Status.TOO_MANY_REQUESTS;
+            case "unavailable" -> this.status = Status.SERVICE_UNAVAILABLE;
+            case "timeout" -> this.status = Status.GATEWAY_TIMEOUT;
             default -> {
                 return false;
             }
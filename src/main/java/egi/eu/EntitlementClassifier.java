@@ -0,0 +1,174 @@
+package egi.eu;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import egi.eu.model.Role;
+
+
+/***
+ * Maps Check-in entitlements to the roles of the IMS, compiled once from the configuration.
+ * Entitlements that grant a role are looked up in a hash map, the ones granting ownership
+ * of a specific entity (e.g. urn:mace:egi.eu:group:vo.tools.egi.eu:SLM:role=sla-owner-42#aai.egi.eu)
+ * are matched by walking a trie of the owner role names.
+ *
+ * Roles are only granted to members of the configured VO:
+ * - membership in the configured group is a prerequisite to holding process roles
+ * - membership in the IMS group is a prerequisite to holding admin roles
+ */
+public class EntitlementClassifier {
+
+    private static final String PREFIX = "urn:mace:egi.eu:group:";
+    private static final String SUFFIX = "#aai.egi.eu";
+    private static final String IMS_GROUP = "ims";
+    private static final List<String> IMS_ADMIN_ROLES = List.of("ims-owner", "ims-manager");
+
+    /***
+     * What an entitlement marks or grants
+     */
+    private enum Kind { VO_MEMBER, PROCESS_MEMBER, SYSTEM_MEMBER, PROCESS_ROLE, SYSTEM_ROLE }
+
+    private record Grant(Kind kind, String role) {}
+
+    /***
+     * Node of the trie of owner role names, keyed by character
+     */
+    private static class Node {
+
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        String role;            // Set if an owner role name ends here
+
+        Node child(char c) {
+            for(int i = 0; i < this.keys.length; i++)
+                if(this.keys[i] == c)
+                    return this.children[i];
+
+            return null;
+        }
+
+        Node addChild(char c) {
+            var child = child(c);
+            if(null == child) {
+                child = new Node();
+                this.keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+                this.children = Arrays.copyOf(this.children, this.children.length + 1);
+                this.keys[this.keys.length - 1] = c;
+                this.children[this.children.length - 1] = child;
+            }
+
+            return child;
+        }
+    }
+
+    private final Map<String, Grant> grants = new HashMap<>();      // By entitlement
+    private final String rolePrefix;                                // Of the entitlements of the configured group
+    private final Node owners = new Node();                         // Role names followed by "-"
+
+
+    /***
+     * Compile the entitlements of the configured VO, group, and roles
+     * @param config The configuration of the IMS
+     */
+    public EntitlementClassifier(IntegratedManagementSystemConfig config) {
+        final var voPrefix = PREFIX + config.vo().toLowerCase() + ":";
+        this.rolePrefix = voPrefix + config.group() + ":role=";
+
+        this.grants.put(voPrefix + "role=member" + SUFFIX, new Grant(Kind.VO_MEMBER, Role.IMS_USER));
+        this.grants.put(this.rolePrefix + "member" + SUFFIX, new Grant(Kind.PROCESS_MEMBER, Role.PROCESS_MEMBER));
+        this.grants.put(voPrefix + IMS_GROUP + ":role=member" + SUFFIX, new Grant(Kind.SYSTEM_MEMBER, null));
+        for(var adminRole : IMS_ADMIN_ROLES)
+            this.grants.put(voPrefix + IMS_GROUP + ":role=" + adminRole + SUFFIX, new Grant(Kind.SYSTEM_ROLE, Role.IMS_ADMIN));
+
+        // The configured roles, by the role they grant
+        final var ownerRoles = new HashSet<>(config.ownerRoles());
+        for(var entry : config.roles().entrySet()) {
+            final var roleName = entry.getValue().toLowerCase();
+            this.grants.put(this.rolePrefix + roleName + SUFFIX, new Grant(Kind.PROCESS_ROLE, entry.getKey()));
+
+            if(ownerRoles.contains(entry.getKey())) {
+                // Can also be held for a specific entity
+                var node = this.owners;
+                for(var c : (roleName + "-").toCharArray())
+                    node = node.addChild(c);
+
+                node.role = entry.getKey();
+            }
+        }
+    }
+
+    /***
+     * Find the roles granted by a set of entitlements
+     * @param entitlements The entitlements of a user
+     * @param addRole Called with each granted role, may be called more than once for the same role
+     */
+    public void classify(Collection<String> entitlements, Consumer<String> addRole) {
+        if(null == entitlements)
+            return;
+
+        // Find the memberships that are prerequisites to holding roles
+        boolean voMember = false;
+        boolean processMember = false;
+        boolean systemMember = false;
+        for(var entitlement : entitlements) {
+            var grant = this.grants.get(entitlement);
+            if(null != grant)
+                switch(grant.kind) {
+                    case VO_MEMBER -> voMember = true;
+                    case PROCESS_MEMBER -> processMember = true;
+                    case SYSTEM_MEMBER -> systemMember = true;
+                }
+        }
+
+        // Only continue checking the roles for members of the configured VO
+        if(!voMember)
+            return;
+
+        addRole.accept(Role.IMS_USER);
+        if(processMember)
+            addRole.accept(Role.PROCESS_MEMBER);
+
+        for(var entitlement : entitlements) {
+            var grant = this.grants.get(entitlement);
+            if(null != grant) {
+                if(Kind.PROCESS_ROLE == grant.kind && processMember ||
+                   Kind.SYSTEM_ROLE == grant.kind && systemMember)
+                    addRole.accept(grant.role);
+            }
+            else if(processMember) {
+                var ownerRole = ownerRole(entitlement);
+                if(null != ownerRole)
+                    addRole.accept(ownerRole);
+            }
+        }
+    }
+
+    /***
+     * Match an entitlement granting ownership of a specific entity
+     * @param entitlement The entitlement to match
+     * @return The role, e.g. "sla-owner-42", null if the entitlement does not grant ownership
+     */
+    private String ownerRole(String entitlement) {
+        if(!entitlement.startsWith(this.rolePrefix))
+            return null;
+
+        // The entity ends at the suffix, if there is one
+        int end = entitlement.indexOf('#', this.rolePrefix.length());
+        if(end < 0)
+            end = entitlement.length();
+
+        // Find the longest owner role name followed by "-" and a non-empty entity
+        String role = null;
+        int entity = -1;
+        var node = this.owners;
+        for(int i = this.rolePrefix.length(); i < end && null != node; i++) {
+            node = node.child(entitlement.charAt(i));
+            if(null != node && null != node.role && i + 1 < end) {
+                role = node.role;
+                entity = i;
+            }
+        }
+
+        return null != role ? role + entitlement.substring(entity, end) : null;
+    }
+}
@@ -0,0 +1,228 @@
+package egi.eu;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.scheduler.Scheduled;
+import org.jboss.logging.Logger;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/***
+ * Tracks the error budgets of the endpoints over rolling windows, so that the service can report
+ * its own compliance with the SLOs. A request is good if it was served within the latency of its
+ * endpoint (the largest SLO) without a server error, the objective is the share of good requests,
+ * and the rest is the error budget, see {@link ServiceLevelObjectives}.
+ *
+ * The requests served are sampled periodically from the SLO buckets of http.server.requests,
+ * and reported per endpoint (method and uri) and window as:
+ * - http.server.slo.compliance: share of good requests
+ * - http.server.slo.burn.rate: rate the error budget is consumed at, 1 consumes exactly the budget
+ * - http.server.slo.error.budget.remaining: share of the error budget left, negative if overspent
+ */
+@ApplicationScoped
+public class ErrorBudgets {
+
+    private static final Logger log = Logger.getLogger(ErrorBudgets.class);
+
+    @Inject
+    MetricsConfig qos;
+
+    @Inject
+    MeterRegistry registry;
+
+    private ServiceLevelObjectives objectives;                          // Created on first sample
+    private final Map<Meter.Id, long[]> sampled = new HashMap<>();      // Requests and good requests, by timer
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>(); // By method and uri
+
+
+    /***
+     * Requests served by an endpoint, counted in slots as long as the sampling interval
+     */
+    static class Budget {
+
+        final double objective;
+        final long slot;            // Milliseconds
+        final long[] slots;         // Number of the slot counted at each index, since epoch
+        final long[] requests;
+        final long[] bad;
+
+        /***
+         * Construct
+         * @param objective Share of the requests that must be good
+         * @param slot Length of a slot, in milliseconds
+         * @param longestWindow Longest window to report, in milliseconds
+         */
+        Budget(double objective, long slot, long longestWindow) {
+            this.objective = objective;
+            this.slot = slot;
+
+            final var count = (int)((longestWindow + slot - 1) / slot) + 1;
+            this.slots = new long[count];
+            this.requests = new long[count];
+            this.bad = new long[count];
+        }
+
+        /***
+         * Count requests
+         * @param now Milliseconds since epoch
+         * @param requests Requests served since the last sample
+         * @param bad Requests among them that were not good
+         */
+        synchronized void add(long now, long requests, long bad) {
+            final var slot = now / this.slot;
+            final var index = (int)(slot % this.slots.length);
+            if(this.slots[index] != slot) {
+                // Reuse the slot, its counts are older than the longest window
+                this.slots[index] = slot;
+                this.requests[index] = 0;
+                this.bad[index] = 0;
+            }
+
+            this.requests[index] += requests;
+            this.bad[index] += bad;
+        }
+
+        /***
+         * Count the requests served in a window
+         * @param now Milliseconds since epoch
+         * @param window Length of the window, in milliseconds
+         * @return Requests and bad requests
+         */
+        synchronized long[] sum(long now, long window) {
+            final var last = now / this.slot;
+            final var first = last - Math.min(window / this.slot, this.slots.length - 1) + 1;
+            var sum = new long[2];
+            for(int i = 0; i < this.slots.length; i++)
+                if(this.slots[i] >= first && this.slots[i] <= last) {
+                    sum[0] += this.requests[i];
+                    sum[1] += this.bad[i];
+                }
+
+            return sum;
+        }
+
+        /***
+         * Get the share of good requests in a window
+         * @return Compliance, NaN if no requests were served
+         */
+        double compliance(long now, long window) {
+            var sum = sum(now, window);
+            return sum[0] > 0 ? 1 - (double)sum[1] / sum[0] : Double.NaN;
+        }
+
+        /***
+         * Get the rate the error budget was consumed at in a window
+         * @return Burn rate, 0 if no requests were served
+         */
+        double burnRate(long now, long window) {
+            var sum = sum(now, window);
+            return sum[0] > 0 ? (double)sum[1] / sum[0] / (1 - this.objective) : 0;
+        }
+    }
+
+    /***
+     * Sample the requests served since the last run
+     */
+    @Scheduled(every = "${egi.qos.budget-sample-every}",
+               concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    synchronized void sample() {
+        if(null == this.objectives)
+            this.objectives = new ServiceLevelObjectives(this.qos);
+
+        // Sum the requests served by each endpoint, across statuses
+        final var now = System.currentTimeMillis();
+        var served = new HashMap<String, long[]>();
+        var objectiveOf = new HashMap<String, ServiceLevelObjectives.Objective>();
+        for(var timer : this.registry.find("http.server.requests").timers()) {
+            final var id = timer.getId();
+            final var method = id.getTag("method");
+            final var uri = id.getTag("uri");
+            final var objective = this.objectives.of(method, uri);
+            if(!objective.hasBudget())
+                continue;
+
+            final var requests = timer.count();
+            final var status = id.getTag("status");
+            final var good = null != status && status.startsWith("5") ? 0 : countWithin(timer, objective.latency());
+            if(good < 0)
+                // No bucket for the latency, cannot tell good requests
+                continue;
+
+            var previous = this.sampled.put(id, new long[] { requests, good });
+            var newRequests = requests - (null != previous ? previous[0] : 0);
+            var newGood = good - (null != previous ? previous[1] : 0);
+            if(newRequests <= 0)
+                continue;
+
+            final var key = method + " " + uri;
+            objectiveOf.putIfAbsent(key, objective);
+            var sum = served.computeIfAbsent(key, k -> new long[2]);
+            sum[0] += newRequests;
+            sum[1] += Math.max(0, newRequests - newGood);
+        }
+
+        for(var entry : served.entrySet()) {
+            var budget = this.budgets.computeIfAbsent(entry.getKey(),
+                                                      key -> register(key, objectiveOf.get(key).objective()));
+            budget.add(now, entry.getValue()[0], entry.getValue()[1]);
+        }
+    }
+
+    /***
+     * Count the requests served within a latency
+     * @param timer The timer of an endpoint
+     * @param latency The latency, must be one of the SLOs of the timer [milliseconds]
+     * @return Number of requests, -1 if the latency is not an SLO of the timer
+     */
+    private static long countWithin(Timer timer, long latency) {
+        for(var bucket : timer.takeSnapshot().histogramCounts())
+            if(Math.abs(bucket.bucket(TimeUnit.MILLISECONDS) - latency) < 0.001)
+                return (long)bucket.count();
+
+        return -1;
+    }
+
+    /***
+     * Start tracking the error budget of an endpoint
+     * @param key Method and uri of the endpoint
+     * @param objective Share of the requests that must be good
+     * @return Budget to count the requests served by the endpoint in
+     */
+    private Budget register(String key, double objective) {
+        final var slot = this.qos.budgetSampleEvery().toMillis();
+        final var longest = this.qos.budgetWindows().stream().mapToLong(Duration::toMillis).max().orElse(slot);
+        final var budget = new Budget(objective, slot, longest);
+        final var endpoint = key.split(" ", 2);
+
+        log.debugf("Tracking error budget of %s", key);
+
+        for(var window : this.qos.budgetWindows()) {
+            final var length = window.toMillis();
+            final var name = window.toString().substring(2).toLowerCase();
+
+            Gauge.builder("http.server.slo.compliance", budget, b -> b.compliance(System.currentTimeMillis(), length))
+                    .description("Share of the requests served within the latency objective, without server errors")
+                    .tags("method", endpoint[0], "uri", endpoint[1], "window", name)
+                    .register(this.registry);
+            Gauge.builder("http.server.slo.burn.rate", budget, b -> b.burnRate(System.currentTimeMillis(), length))
+                    .description("Rate the error budget is consumed at, 1 consumes exactly the budget")
+                    .tags("method", endpoint[0], "uri", endpoint[1], "window", name)
+                    .register(this.registry);
+            Gauge.builder("http.server.slo.error.budget.remaining", budget, b -> 1 - b.burnRate(System.currentTimeMillis(), length))
+                    .description("Share of the error budget left, negative if overspent")
+                    .tags("method", endpoint[0], "uri", endpoint[1], "window", name)
+                    .register(this.registry);
+        }
+
+        return budget;
+    }
+}
@@ -4,6 +4,7 @@ import io.smallrye.config.ConfigMapping;
 import io.smallrye.config.WithName;
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.util.List;
 import java.util.Map;
 
 
@@ -23,4 +24,9 @@ public interface IntegratedManagementSystemConfig {
     // Role names (in entitlements)
     // e.g. urn:mace:egi.eu:group:vo.tools.egi.eu:slm:role=process-manager#aai.egi.eu"
     Map<String, String> roles();
+
+    // Roles that can also be held for a specific entity, by appending "-<entity>" to the role name
+    // e.g. urn:mace:egi.eu:group:vo.tools.egi.eu:slm:role=sla-owner-42#aai.egi.eu"
+    @WithName("owner-roles")
+    List<String> ownerRoles();
 }
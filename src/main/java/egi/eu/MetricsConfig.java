@@ -1,7 +1,9 @@
 package egi.eu;
 
 import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithName;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,8 +21,60 @@ public interface MetricsConfig {
     Optional<List<Double>> quantiles();
 
     /***
-     * List of service level objectives (SLOs) to create histogram bucket(s) for
+     * List of service level objectives (SLOs) to create histogram bucket(s) for,
+     * the largest one is the latency requests must be served within
      * @return SLOs [milliseconds]
      */
     Optional<List<Long>> slos();
+
+    /***
+     * Share of the requests that must be served within the largest SLO and without a server error,
+     * the rest of the requests are the error budget
+     * @return Objective, e.g. 0.99
+     */
+    Optional<Double> objective();
+
+    /***
+     * Rolling windows to report the consumption of the error budgets over
+     * @return Windows, e.g. 5m and 1h
+     */
+    @WithName("budget-windows")
+    List<Duration> budgetWindows();
+
+    /***
+     * How often to sample the requests served, the resolution of the rolling windows
+     * @return Interval, e.g. 10s
+     */
+    @WithName("budget-sample-every")
+    Duration budgetSampleEvery();
+
+    /***
+     * Quantiles, SLOs and objectives of specific endpoints, override the ones above
+     * @return Endpoints
+     */
+    List<Endpoint> endpoints();
+
+    /***
+     * The QoS of an endpoint
+     */
+    interface Endpoint {
+
+        /***
+         * Route template, as in the uri tag of the request metrics
+         * @return Route, e.g. /role/{userId}
+         */
+        String route();
+
+        /***
+         * HTTP method, all methods of the route if missing
+         * @return Method, e.g. GET
+         */
+        Optional<String> method();
+
+        Optional<List<Double>> quantiles();
+
+        Optional<List<Long>> slos();
+
+        Optional<Double> objective();
+    }
 }
@@ -11,6 +11,7 @@ import org.jboss.logging.Logger;
 
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.List;
 
 
 /***
@@ -26,45 +27,54 @@ public class MetricsCustomization {
     MetricsConfig qos;
 
     /***
-     * Enable histogram buckets for specific timer(s)
+     * Enable histogram buckets for specific timer(s).
+     * The requests we serve get the quantiles and SLOs of their endpoint, see {@link ServiceLevelObjectives}.
      * @return MeterFilter to be injected
      */
     @Produces
     @Singleton
     public MeterFilter enableHistogram() {
+        final var objectives = new ServiceLevelObjectives(qos);
         return new MeterFilter() {
             @Override
             public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
 
                 log.debugf("Metric: %s", id.getName());
 
-                if(id.getName().startsWith("http.server.requests")) {
+                // Requests we serve, the calls we make to Check-in to serve them, and the database
+                ServiceLevelObjectives.Objective objective = null;
+                if(id.getName().startsWith("http.server.requests"))
+                    objective = objectives.of(id.getTag("method"), id.getTag("uri"));
+                else if(id.getName().startsWith("checkin.requests"))
+                    objective = objectives.global();
+                else if(id.getName().startsWith("db.")) {
+                    // Database timers get the quantiles, the SLOs are for the requests we serve
+                    var global = objectives.global();
+                    objective = new ServiceLevelObjectives.Objective(global.quantiles(), List.of(), null);
+                }
+
+                if(null != objective) {
 
                     var builder = DistributionStatisticConfig.builder();
 
                     // If quantiles were specified, use them
-                    if(qos.quantiles().isPresent()) {
-                        var quantiles = qos.quantiles().get();
-                        if(!quantiles.isEmpty())
-                            builder = builder.percentiles(quantiles
-                                                            .stream()
-                                                            .mapToDouble(Double::doubleValue)
-                                                            .toArray());
-                    }
+                    var quantiles = objective.quantiles();
+                    if(!quantiles.isEmpty())
+                        builder = builder.percentiles(quantiles
+                                                        .stream()
+                                                        .mapToDouble(Double::doubleValue)
+                                                        .toArray());
 
                     // If SLOs were specified, use them
-                    if(qos.slos().isPresent()) {
-                        var slos = qos.slos().get();
-                        var slosNano = new ArrayList<Double>();
-                        for(var slo : slos)
-                            slosNano.add((double)Duration.ofMillis(slo).toNanos()); // SLO in milliseconds
-
-                        if(!slosNano.isEmpty())
-                            builder = builder.serviceLevelObjectives(slosNano
-                                                                        .stream()
-                                                                        .mapToDouble(Double::doubleValue)
-                                                                        .toArray());
-                    }
+                    var slosNano = new ArrayList<Double>();
+                    for(var slo : objective.slos())
+                        slosNano.add((double)Duration.ofMillis(slo).toNanos()); // SLO in milliseconds
+
+                    if(!slosNano.isEmpty())
+                        builder = builder.serviceLevelObjectives(slosNano
+                                                                    .stream()
+                                                                    .mapToDouble(Double::doubleValue)
+                                                                    .toArray());
 
                     return builder
                             .build()
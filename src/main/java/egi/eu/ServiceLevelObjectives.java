@@ -0,0 +1,79 @@
+package egi.eu;
+
+import java.util.List;
+
+
+/***
+ * Resolves the quantiles, SLOs and objective of the endpoints, from the configuration
+ * of the specific endpoint if there is one, otherwise from the global configuration.
+ */
+public class ServiceLevelObjectives {
+
+    /***
+     * The QoS of an endpoint
+     * @param quantiles Quantiles (percentiles) to create histogram buckets for
+     * @param slos SLOs to create histogram buckets for [milliseconds]
+     * @param objective Share of the requests that must be served within the largest SLO, null if none
+     */
+    public record Objective(List<Double> quantiles, List<Long> slos, Double objective) {
+
+        /***
+         * Get the latency requests must be served within
+         * @return Largest SLO [milliseconds], 0 if there are no SLOs
+         */
+        public long latency() {
+            return this.slos.stream().mapToLong(Long::longValue).max().orElse(0);
+        }
+
+        /***
+         * Check if there is an error budget to track
+         * @return True if both a latency and an objective are set
+         */
+        public boolean hasBudget() {
+            return null != this.objective && this.objective < 1 && latency() > 0;
+        }
+    }
+
+    private final MetricsConfig qos;
+    private final Objective global;
+
+
+    /***
+     * Construct
+     * @param qos The configuration of the QoS
+     */
+    public ServiceLevelObjectives(MetricsConfig qos) {
+        this.qos = qos;
+        this.global = new Objective(qos.quantiles().orElse(List.of()),
+                                    qos.slos().orElse(List.of()),
+                                    qos.objective().orElse(null));
+    }
+
+    /***
+     * Get the QoS of an endpoint
+     * @param method HTTP method, e.g. GET
+     * @param route Route template, as in the uri tag of the request metrics
+     * @return Objective of the endpoint, the global one if the endpoint has no own configuration
+     */
+    public Objective of(String method, String route) {
+        if(null != route)
+            for(var endpoint : this.qos.endpoints()) {
+                if(!endpoint.route().equals(route))
+                    continue;
+                if(endpoint.method().isPresent() && !endpoint.method().get().equalsIgnoreCase(method))
+                    continue;
+
+                return new Objective(endpoint.quantiles().orElse(this.global.quantiles),
+                                     endpoint.slos().orElse(this.global.slos),
+                                     endpoint.objective().orElse(this.global.objective));
+            }
+
+        return this.global;
+    }
+
+    /***
+     * Get the global QoS
+     * @return Objective of the endpoints without own configuration
+     */
+    public Objective global() { return this.global; }
+}
@@ -3,20 +3,33 @@ package egi.eu;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import egi.eu.model.Role;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.quarkus.security.identity.AuthenticationRequestContext;
 import io.quarkus.security.identity.SecurityIdentity;
 import io.quarkus.security.identity.SecurityIdentityAugmentor;
 import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+import io.quarkus.oidc.AccessTokenCredential;
 import io.quarkus.oidc.runtime.AbstractJsonObjectResponse;
 import io.smallrye.mutiny.Uni;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import java.time.Instant;
+import java.util.*;
 import java.util.function.Supplier;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import egi.checkin.Checkin;
+import egi.checkin.CheckinConfig;
+import egi.checkin.CheckinMetrics;
+import egi.checkin.CheckinRecordCache;
 import egi.checkin.model.CheckinUser;
 import org.jboss.logging.Logger;
 import org.jboss.logging.MDC;
@@ -30,12 +43,62 @@ import org.jboss.logging.MDC;
 public class SlmRoleCustomization implements SecurityIdentityAugmentor {
 
     private static final Logger log = Logger.getLogger(SlmRoleCustomization.class);
+    private static final ObjectReader USERINFO_READER = new ObjectMapper().readerFor(CheckinUser.class);
+    private static final Pattern ASSURANCE_REX = Pattern.compile("^https?\\://(aai[^\\.]*.egi.eu)/LoA#([^\\:#/]+)");
 
     @Inject
     protected IntegratedManagementSystemConfig config;
 
+    @Inject
+    protected CheckinConfig checkinConfig;
+
+    private volatile EntitlementClassifier classifier;  // Compiled from the config on first use
+
+    // Roles and attributes by access token hash, created on first use
+    private volatile Cache<String, CheckinRecordCache.Entry<Augmentation>> identityCache;
+
+    /***
+     * The roles and attributes added to the identity of a user
+     */
+    private static class Augmentation {
+
+        final String checkinUserId;
+        final Set<String> roles = new HashSet<>();
+        final Map<String, Object> attributes = new HashMap<>();
+
+        Augmentation(String checkinUserId) { this.checkinUserId = checkinUserId; }
+
+        /***
+         * Copy the roles and attributes, with a copy of the user information,
+         * so that identities built from the cache do not share it
+         */
+        Augmentation copy() {
+            var copy = new Augmentation(this.checkinUserId);
+            copy.roles.addAll(this.roles);
+            copy.attributes.putAll(this.attributes);
+            if(this.attributes.get(CheckinUser.ATTR_USERINFO) instanceof CheckinUser userInfo)
+                copy.attributes.put(CheckinUser.ATTR_USERINFO, new CheckinUser(userInfo));
+
+            return copy;
+        }
+    }
+
     public void setConfig(IntegratedManagementSystemConfig config) {
         this.config = config;
+        this.classifier = null;
+    }
+
+    /***
+     * Get the classifier of entitlements, compiling it from the configuration if needed
+     */
+    private EntitlementClassifier classifier() {
+        var compiled = this.classifier;
+        if(null == compiled) {
+            compiled = new EntitlementClassifier(this.config);
+            this.classifier = compiled;
+        }
+
+        return compiled;
     }
 
     @Override
@@ -52,170 +115,193 @@ public class SlmRoleCustomization implements SecurityIdentityAugmentor {
             // Create a new builder and copy principal, attributes, credentials and roles from the original identity
             QuarkusSecurityIdentity.Builder builder = QuarkusSecurityIdentity.builder(identity);
 
+            // Reuse the roles and attributes built for this access token, if still cached
+            final var cache = identityCache();
+            final var credential = identity.getCredential(AccessTokenCredential.class);
+            final var key = null != cache && null != credential ? Checkin.tokenHash(credential.getToken()) : null;
+            var cached = null != key ? cache.getIfPresent(key) : null;
+            if(null != cached) {
+                log.debug("Using cached security identity");
+                CheckinMetrics.cacheLookup(CheckinMetrics.IDENTITY, CheckinMetrics.HIT);
+                builder.addRoles(cached.value.roles);
+                builder.addAttributes(cached.value.copy().attributes);
+                return builder::build;
+            }
+
             log.debug("Building security identity");
+            if(null != cache)
+                // Also counts identities that cannot be cached (no token or no user Id)
+                CheckinMetrics.cacheLookup(CheckinMetrics.IDENTITY, CheckinMetrics.MISS);
+
+            var augmented = augmentation(identity);
+            builder.addRoles(augmented.roles);
+            builder.addAttributes(augmented.attributes);
+
+            if(null != key && null != augmented.checkinUserId) {
+                // Cache until the token expires, at most for the configured time
+                long timeToLive = this.checkinConfig.cacheIdentity();
+                if(identity.getPrincipal() instanceof JsonWebToken jwt && jwt.getExpirationTime() > 0)
+                    timeToLive = Math.min(timeToLive, jwt.getExpirationTime() * 1000 - Instant.now().toEpochMilli());
+
+                if(timeToLive > 0)
+                    cache.put(key, new CheckinRecordCache.Entry<>(augmented.copy(), timeToLive));
+            }
 
-            // Extract the OIDC user information, loaded due to the setting quarkus.roles.source=userinfo
-            var ui = identity.getAttribute("userinfo");
-            var isAJO = ui instanceof AbstractJsonObjectResponse;
-            if(null != ui && (isAJO || ui instanceof String)) {
-                // Construct Check-in UserInfo from the user info fetched by OIDC
-                CheckinUser userInfo = null;
-                String json = null;
-                try {
-                    var mapper = new ObjectMapper();
-                    json = isAJO ? ((AbstractJsonObjectResponse)ui).getJsonObject().toString() : ui.toString();
-                    userInfo = mapper.readValue(json, CheckinUser.class);
-
-                    if(null != userInfo.checkinUserId)
-                        builder.addAttribute(CheckinUser.ATTR_USERID, userInfo.checkinUserId);
-
-                    if(null != userInfo.userName)
-                        builder.addAttribute(CheckinUser.ATTR_USERNAME, userInfo.userName);
-
-                    if(null != userInfo.firstName)
-                        builder.addAttribute(CheckinUser.ATTR_FIRSTNAME, userInfo.firstName);
-
-                    if(null != userInfo.lastName)
-                        builder.addAttribute(CheckinUser.ATTR_LASTNAME, userInfo.lastName);
-
-                    if(null != userInfo.fullName || null != userInfo.firstName || null != userInfo.lastName)
-                        builder.addAttribute(CheckinUser.ATTR_FULLNAME, userInfo.getFullName());
-
-                    if(null != userInfo.email)
-                        builder.addAttribute(CheckinUser.ATTR_EMAIL, userInfo.email);
-
-                    builder.addAttribute(CheckinUser.ATTR_EMAILCHECKED, userInfo.emailIsVerified);
-
-                    if(null != userInfo.assurances) {
-                        Pattern assuranceRex = Pattern.compile("^https?\\://(aai[^\\.]*.egi.eu)/LoA#([^\\:#/]+)");
-                        for(var a : userInfo.assurances) {
-                            var matcher = assuranceRex.matcher(a);
-                            if(matcher.matches()) {
-                                // Got an EGI Check-in backed assurance level
-                                var assurance = matcher.group(2);
-                                builder.addAttribute(CheckinUser.ATTR_ASSURANCE, assurance.toLowerCase());
-                                break;
-                            }
-                        }
-                    }
-                }
-                catch (JsonProcessingException e) {
-                    // Error deserializing JSON info UserInfo instance
-                    MDC.put("OIDC.userinfo", null != json ? json : "null");
-                    log.warn("Cannot deserialize OIDC userinfo");
-                }
+            return builder::build;
+        }
+    }
 
-                if(null != userInfo) {
-                    // Got the Check-in user information, map roles
-                    var roleNames = config.roles();
-
-                    final String voPrefix = "urn:mace:egi.eu:group:" + config.vo().toLowerCase() + ":";
-                    final String suffix = "#aai.egi.eu";
-
-                    // Only continue checking the roles for members of the configured VO
-                    if(userInfo.entitlements.contains(voPrefix + "role=member" + suffix)) {
-                        // This user is member of the VO, access to ISM tools is allowed
-                        builder.addRole(Role.IMS_USER);
-
-                        final String imsPrefix = voPrefix + "ims:role=";
-                        final String imsOwner = imsPrefix + "ims-owner" + suffix;
-                        final String imsManager = imsPrefix + "ims-manager" + suffix;
-                        final String rolePrefix = voPrefix + config.group() + ":role=";
-
-                        boolean systemMember = false;
-                        boolean processMember = false;
-                        if(userInfo.entitlements.contains(rolePrefix + "member" + suffix)) {
-                            // This user is member of the SLM group, which is a prerequisite to holding SLM roles
-                            processMember = true;
-                            builder.addRole(Role.PROCESS_MEMBER);
-                        }
-                        if(userInfo.entitlements.contains(imsPrefix + "member" + suffix)) {
-                            // This user is member of the IMS group, which is a prerequisite to holding admin roles
-                            systemMember = true;
-                        }
-
-                        final String rexPrefix = "^urn\\:mace\\:egi.eu\\:group\\:" +
-                                config.vo().toLowerCase() + "\\:" +
-                                config.group() + "\\:role=";
-
-                        final String po = rolePrefix + roleNames.get("process-owner").toLowerCase() + suffix;
-                        final String pm = rolePrefix + roleNames.get("process-manager").toLowerCase() + suffix;
-                        final String pd = rolePrefix + roleNames.get("process-developer").toLowerCase() + suffix;
-                        final String co = rolePrefix + roleNames.get("catalog-owner").toLowerCase() + suffix;
-                        final String ro = rolePrefix + roleNames.get("report-owner").toLowerCase() + suffix;
-                        final String uao = rolePrefix + roleNames.get("ua-owner").toLowerCase() + suffix;
-                        final String olao = rolePrefix + roleNames.get("ola-owner").toLowerCase() + suffix;
-                        final String slao = rolePrefix + roleNames.get("sla-owner").toLowerCase() + suffix;
-
-                        final String roRex = rexPrefix + ro.replace("-", "\\-") + "(\\-[^\\#]+)";
-                        final String uaoRex = rexPrefix + uao.replace("-", "\\-") + "(\\-[^\\#]+)";
-                        final String olaoRex = rexPrefix + olao.replace("-", "\\-") + "(\\-[^\\#]+)";
-                        final String slaoRex = rexPrefix + slao.replace("-", "\\-") + "(\\-[^\\#]+)";
-
-                        Pattern pro = Pattern.compile(roRex);
-                        Pattern puao = Pattern.compile(uaoRex);
-                        Pattern polao = Pattern.compile(olaoRex);
-                        Pattern pslao = Pattern.compile(slaoRex);
-
-                        for (var e : userInfo.entitlements) {
-
-                            if (systemMember && (e.equals(imsOwner) || e.equals(imsManager)))
-                                builder.addRole(Role.IMS_ADMIN);
-                            else if (processMember && e.equals(po))
-                                builder.addRole(Role.PROCESS_OWNER);
-                            else if (processMember && e.equals(pm))
-                                builder.addRole(Role.PROCESS_MANAGER);
-                            else if (processMember && e.equals(pd))
-                                builder.addRole(Role.PROCESS_DEVELOPER);
-                            else if (processMember && e.equals(co))
-                                builder.addRole(Role.CATALOG_OWNER);
-                            else if (processMember && e.equals(ro))
-                                builder.addRole(Role.REPORT_OWNER);
-                            else if (processMember && e.equals(uao))
-                                builder.addRole(Role.UA_OWNER);
-                            else if (processMember && e.equals(olao))
-                                builder.addRole(Role.OLA_OWNER);
-                            else if (processMember && e.equals(slao))
-                                builder.addRole(Role.SLA_OWNER);
-                            else if (processMember) {
-
-                                Matcher m = pro.matcher(e);
-                                if (m.find()) {
-                                    // The user is the owner of a specific report
-                                    var roRole = Role.REPORT_OWNER + m.group(1);
-                                    builder.addRole(roRole);
-                                    continue;
-                                }
-
-                                m = puao.matcher(e);
-                                if (m.find()) {
-                                    // The user is the owner of a specific UA
-                                    var uaoRole = Role.UA_OWNER + m.group(1);
-                                    builder.addRole(uaoRole);
-                                    continue;
-                                }
-
-                                m = polao.matcher(e);
-                                if (m.find()) {
-                                    // The user is the owner of a specific OLA
-                                    var olaoRole = Role.OLA_OWNER + m.group(1);
-                                    builder.addRole(olaoRole);
-                                    continue;
-                                }
-
-                                m = pslao.matcher(e);
-                                if (m.find()) {
-                                    // The user is the owner of a specific SLA
-                                    var slaoRole = Role.SLA_OWNER + m.group(1);
-                                    builder.addRole(slaoRole);
-                                }
-                            }
-                        }
-                    } // IMS_USER
+    /***
+     * Build the roles and attributes to add to an identity, from the user information
+     * @param identity The identity to augment
+     * @return Roles and attributes, empty if no user information is available
+     */
+    private Augmentation augmentation(SecurityIdentity identity) {
+        // Extract the OIDC user information, loaded due to the setting quarkus.roles.source=userinfo
+        var ui = identity.getAttribute("userinfo");
+        CheckinUser userInfo = null;
+        if(ui instanceof AbstractJsonObjectResponse ajo) {
+            // Map the parsed user info directly, without serializing it back to JSON
+            userInfo = userInfoOf(ajo.getJsonObject());
+        }
+        else if(ui instanceof String json) {
+            // Construct Check-in UserInfo from the user info fetched by OIDC
+            try {
+                userInfo = USERINFO_READER.readValue(json);
+            }
+            catch (JsonProcessingException e) {
+                // Error deserializing JSON info UserInfo instance
+                MDC.put("OIDC.userinfo", json);
+                log.warn("Cannot deserialize OIDC userinfo");
+            }
+        }
+
+        if(null == userInfo)
+            return new Augmentation(null);
+
+        final var augmented = new Augmentation(userInfo.checkinUserId);
+        final var attributes = augmented.attributes;
+
+        // Keep the whole user information, so that GET /user/info does not have to fetch it again
+        attributes.put(CheckinUser.ATTR_USERINFO, userInfo);
+
+        if(null != userInfo.checkinUserId)
+            attributes.put(CheckinUser.ATTR_USERID, userInfo.checkinUserId);
+
+        if(null != userInfo.userName)
+            attributes.put(CheckinUser.ATTR_USERNAME, userInfo.userName);
+
+        if(null != userInfo.firstName)
+            attributes.put(CheckinUser.ATTR_FIRSTNAME, userInfo.firstName);
+
+        if(null != userInfo.lastName)
+            attributes.put(CheckinUser.ATTR_LASTNAME, userInfo.lastName);
+
+        if(null != userInfo.fullName || null != userInfo.firstName || null != userInfo.lastName)
+            attributes.put(CheckinUser.ATTR_FULLNAME, userInfo.getFullName());
+
+        if(null != userInfo.email)
+            attributes.put(CheckinUser.ATTR_EMAIL, userInfo.email);
+
+        attributes.put(CheckinUser.ATTR_EMAILCHECKED, userInfo.emailIsVerified);
+
+        if(null != userInfo.assurances) {
+            for(var a : userInfo.assurances) {
+                var matcher = ASSURANCE_REX.matcher(a);
+                if(matcher.matches()) {
+                    // Got an EGI Check-in backed assurance level
+                    var assurance = matcher.group(2);
+                    attributes.put(CheckinUser.ATTR_ASSURANCE, assurance.toLowerCase());
+                    break;
                 }
             }
+        }
 
-            return builder::build;
+        // Got the Check-in user information, map roles
+        classifier().classify(userInfo.entitlements, augmented.roles::add);
+        return augmented;
+    }
+
+    /***
+     * Get the cache of roles and attributes by access token, creating it if needed
+     * @return Cache, null if caching is disabled or not configured
+     */
+    private Cache<String, CheckinRecordCache.Entry<Augmentation>> identityCache() {
+        if(null == this.checkinConfig || this.checkinConfig.cacheIdentity() <= 0)
+            return null;
+
+        var cache = this.identityCache;
+        if(null == cache) {
+            synchronized(this) {
+                cache = this.identityCache;
+                if(null == cache) {
+                    cache = Caffeine.newBuilder()
+                            .maximumSize(this.checkinConfig.cacheIdentityMaxEntries())
+                            .expireAfter(new CheckinRecordCache.EntryExpiry<CheckinRecordCache.Entry<Augmentation>>())
+                            .build();
+
+                    // Roles of users come from their entitlements, drop them when their role records change
+                    final var cached = cache;
+                    Checkin.addChangeListener(changes -> {
+                        var users = new HashSet<String>();
+                        for(var change : changes.changes)
+                            if(null != change.checkinUserId)
+                                users.add(change.checkinUserId);
+
+                        cached.asMap().values().removeIf(entry -> users.contains(entry.value.checkinUserId));
+                    });
+
+                    this.identityCache = cache;
+                }
+            }
         }
+
+        return cache;
+    }
+
+    /***
+     * Construct Check-in UserInfo from the user info fetched by OIDC, reading the fields
+     * that are mapped by the JSON annotations of {@link CheckinUser}.
+     * @param json The parsed user info
+     * @return Check-in user information
+     */
+    private static CheckinUser userInfoOf(JsonObject json) {
+        var userInfo = new CheckinUser(stringOf(json, "voperson_id"));
+        userInfo.fullName = stringOf(json, "fullName");
+        userInfo.firstName = stringOf(json, "given_name");
+        userInfo.lastName = stringOf(json, "family_name");
+        userInfo.email = stringOf(json, "email");
+        userInfo.userName = stringOf(json, "preferred_user_name");
+        userInfo.assurances = stringsOf(json, "eduperson_assurance");
+        userInfo.entitlements = stringsOf(json, "eduperson_entitlement");
+
+        var verified = json.get("email_verified");
+        userInfo.emailIsVerified = JsonValue.TRUE.equals(verified) ||
+                                   (verified instanceof JsonString s && Boolean.parseBoolean(s.getString()));
+
+        return userInfo;
+    }
+
+    /***
+     * Get a string field, null if missing or not a string
+     */
+    private static String stringOf(JsonObject json, String name) {
+        return json.get(name) instanceof JsonString value ? value.getString() : null;
+    }
+
+    /***
+     * Get an array of strings, skipping the elements that are not strings
+     * @return Strings, null if missing or not an array
+     */
+    private static List<String> stringsOf(JsonObject json, String name) {
+        if(!(json.get(name) instanceof JsonArray array))
+            return null;
+
+        List<String> strings = new ArrayList<>(array.size());
+        for(var element : array)
+            if(element instanceof JsonString value)
+                strings.add(value.getString());
+
+        return strings;
     }
 }
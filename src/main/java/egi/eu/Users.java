@@ -1,6 +1,7 @@
 package egi.eu;
 
 import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
 import org.eclipse.microprofile.openapi.annotations.parameters.Parameter;
@@ -16,6 +17,7 @@ import io.smallrye.mutiny.Uni;
 import io.smallrye.mutiny.tuples.Tuple2;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.quarkus.security.identity.SecurityIdentity;
+import org.eclipse.microprofile.jwt.JsonWebToken;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
@@ -29,6 +31,8 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.*;
 
 import egi.checkin.CheckinConfig;
+import egi.checkin.MembershipSnapshot;
+import egi.checkin.RoleChange;
 import egi.checkin.model.CheckinUser;
 import egi.eu.entity.*;
 import egi.eu.model.*;
@@ -126,6 +130,8 @@ public class Users extends BaseResource {
 
     /**
      * Retrieve information about current user.
+     * Answered from the user information OIDC already fetched when authenticating the caller,
+     * Check-in is only called when that is not available.
      * @param auth The access token needed to call the service.
      * @return API Response, wraps a {@link UserInfo} or an ActionError entity
      */
@@ -156,16 +162,19 @@ public class Users extends BaseResource {
         Uni<Response> result = Uni.createFrom().nullItem()
 
             .chain(unused -> {
-                // Get REST client for Check-in
+                // Use the user info fetched by OIDC, see SlmRoleCustomization
+                var userInfo = identity.getAttribute(CheckinUser.ATTR_USERINFO);
+                if(userInfo instanceof CheckinUser checkinUser)
+                    return Uni.createFrom().item(checkinUser);
+
+                // Not available, get REST client for Check-in
                 if (!checkin.init(this.checkinConfig, this.imsConfig, stub))
                     // Could not get REST client
                     return Uni.createFrom().failure(new ActionException("invalidConfig"));
 
-                return Uni.createFrom().item(unused);
-            })
-            .chain(unused -> {
-                // Get user info
-                return this.checkin.getUserInfoAsync(auth);
+                // Get user info, reusing it until the token expires
+                final long expiresAt = identity.getPrincipal() instanceof JsonWebToken jwt ? jwt.getExpirationTime() : 0;
+                return this.checkin.getUserInfoAsync(auth, expiresAt);
             })
             .chain(checkinUser -> {
                 // Got user info, success
@@ -563,33 +572,80 @@ public class Users extends BaseResource {
      * @return True on success
      */
     private Uni<Void> logRoleAssignment(RoleGrant grant) {
+        return logRoleAssignments(List.of(grant));
+    }
+
+    /***
+     * Log the assignment/revocation of roles, in a single transaction.
+     * @param grants The roles that were assigned/revoked and the users involved
+     * @return True on success
+     */
+    private Uni<Void> logRoleAssignments(List<RoleGrant> grants) {
+
+        var checkinUserIds = new HashSet<String>();
+        for(var grant : grants) {
+            checkinUserIds.add(grant.roleHolder.checkinUserId);
+            checkinUserIds.add(grant.changeBy.checkinUserId);
+        }
 
         Uni<Void> result = sf.withTransaction((session, tx) -> { return
-            // Find the users involved in this log entry
-            UserEntity.findByCheckinUserIds(Arrays.asList(
-                            grant.roleHolder.checkinUserId,
-                            grant.changeBy.checkinUserId))
+            // Find the users involved in these log entries
+            UserEntity.findByCheckinUserIds(new ArrayList<>(checkinUserIds))
                 .chain(users -> {
-                    // Got users with the specified Ids
-                    var roleHolderL = filterList(users, user -> user.checkinUserId.equals(grant.roleHolder.checkinUserId));
-                    var changeByL = filterList(users, user -> user.checkinUserId.equals(grant.changeBy.checkinUserId));
-
-                    var roleHolder = roleHolderL.isEmpty() ? new UserEntity(grant.roleHolder) : roleHolderL.get(0);
-                    var changeBy = changeByL.isEmpty() ? new UserEntity(grant.changeBy) : changeByL.get(0);
+                    // Got users with the specified Ids, the missing ones are created (once)
+                    var usersById = new HashMap<String, UserEntity>();
+                    for(var user : users)
+                        usersById.put(user.checkinUserId, user);
+
+                    // Create new role assignment log entries
+                    var newRoleLogs = new ArrayList<RoleLogEntity>(grants.size());
+                    for(var grant : grants) {
+                        var roleHolder = usersById.computeIfAbsent(grant.roleHolder.checkinUserId, id -> new UserEntity(grant.roleHolder));
+                        var changeBy = usersById.computeIfAbsent(grant.changeBy.checkinUserId, id -> new UserEntity(grant.changeBy));
+                        newRoleLogs.add(new RoleLogEntity(grant.role, grant.assign, roleHolder, changeBy));
+                    }
 
-                    // Create new role assignment log entry
-                    var newRoleLog = new RoleLogEntity(grant.role, grant.assign, roleHolder, changeBy);
-                    return session.persist(newRoleLog);
+                    return session.persistAll(newRoleLogs.toArray());
                 });
             })
             .chain(unused -> {
-                // Role grant logged, success
+                // Role grants logged, success
                 return Uni.createFrom().voidItem();
             });
 
         return result;
     }
 
+    /***
+     * Check if a role can be assigned/revoked.
+     * @param grant The role to assign/revoke and the user to assign it to/revoke it from
+     * @return Null if valid, otherwise the error to return to the caller
+     */
+    private ActionError validateRoleGrant(RoleGrant grant) {
+        if(null == grant)
+            return new ActionError("badRequest", "Missing role grant");
+
+        if(null == grant.roleHolder || null == grant.roleHolder.checkinUserId || grant.roleHolder.checkinUserId.isBlank())
+            // Assignee must be specified
+            return new ActionError("badRequest", "Role holder is required");
+
+        if(null == grant.role || grant.role.isEmpty())
+            // Role must be specified
+            return new ActionError("badRequest", "Role constant is required");
+
+        if(!grant.role.equalsIgnoreCase(Role.PROCESS_OWNER) &&
+           !grant.role.equalsIgnoreCase(Role.PROCESS_MANAGER) &&
+           !grant.role.equalsIgnoreCase(Role.PROCESS_DEVELOPER) &&
+           !grant.role.equalsIgnoreCase(Role.CATALOG_OWNER) &&
+           !grant.role.equalsIgnoreCase(Role.REPORT_OWNER) &&
+           !grant.role.equalsIgnoreCase(Role.UA_OWNER) &&
+           !grant.role.equalsIgnoreCase(Role.OLA_OWNER) &&
+           !grant.role.equalsIgnoreCase(Role.SLA_OWNER) )
+            return new ActionError("badRequest", "Unknown role", Tuple2.of("role", grant.role));
+
+        return null;
+    }
+
     /**
      * Assign a role to a user.
      * @param auth The access token needed to call the service.
@@ -638,31 +694,9 @@ public class Users extends BaseResource {
 
         log.info("Assigning role to user");
 
-        if(null == grant) {
-            var ae = new ActionError("badRequest", "Missing role grant");
+        var ae = validateRoleGrant(grant);
+        if(null != ae)
             return Uni.createFrom().item(ae.toResponse());
-        }
-        if(null == grant.roleHolder || null == grant.roleHolder.checkinUserId || grant.roleHolder.checkinUserId.isBlank()) {
-            // Assignee must be specified
-            var ae = new ActionError("badRequest", "Role holder is required");
-            return Uni.createFrom().item(ae.toResponse());
-        }
-        if(null == grant.role || grant.role.isEmpty()) {
-            // Role must be specified
-            var ae = new ActionError("badRequest", "Role constant is required");
-            return Uni.createFrom().item(ae.toResponse());
-        }
-        if(!grant.role.equalsIgnoreCase(Role.PROCESS_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.PROCESS_MANAGER) &&
-           !grant.role.equalsIgnoreCase(Role.PROCESS_DEVELOPER) &&
-           !grant.role.equalsIgnoreCase(Role.CATALOG_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.REPORT_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.UA_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.OLA_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.SLA_OWNER) ) {
-            var ae = new ActionError("badRequest", "Unknown role", Tuple2.of("role", grant.role));
-            return Uni.createFrom().item(ae.toResponse());
-        }
 
         grant.assign = true;
 
@@ -753,31 +787,9 @@ public class Users extends BaseResource {
 
         log.info("Revoking role from user");
 
-        if(null == grant) {
-            var ae = new ActionError("badRequest", "Missing role grant");
-            return Uni.createFrom().item(ae.toResponse());
-        }
-        if(null == grant.roleHolder || null == grant.roleHolder.checkinUserId || grant.roleHolder.checkinUserId.isEmpty()) {
-            // Assignee must be specified
-            var ae = new ActionError("badRequest", "Role holder is required");
-            return Uni.createFrom().item(ae.toResponse());
-        }
-        if(null == grant.role || grant.role.isEmpty()) {
-            // Role must be specified
-            var ae = new ActionError("badRequest", "Role constant is required");
-            return Uni.createFrom().item(ae.toResponse());
-        }
-        if(!grant.role.equalsIgnoreCase(Role.PROCESS_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.PROCESS_MANAGER) &&
-           !grant.role.equalsIgnoreCase(Role.PROCESS_DEVELOPER) &&
-           !grant.role.equalsIgnoreCase(Role.CATALOG_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.REPORT_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.UA_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.OLA_OWNER) &&
-           !grant.role.equalsIgnoreCase(Role.SLA_OWNER) ) {
-            var ae = new ActionError("badRequest", "Unknown role", Tuple2.of("role", grant.role));
+        var ae = validateRoleGrant(grant);
+        if(null != ae)
             return Uni.createFrom().item(ae.toResponse());
-        }
 
         grant.assign = false;
 
@@ -822,6 +834,244 @@ public class Users extends BaseResource {
         return result;
     }
 
+    /**
+     * Assign and revoke roles in one go.
+     * All changes are checked against the same membership of the group, the changes are made in
+     * Check-in a few at a time, and are logged together. Each change succeeds or fails on its own.
+     * @param auth The access token needed to call the service.
+     * @param batch The roles to assign and revoke, and the users to assign them to/revoke them from.
+     * @return API Response, wraps a list of {@link RoleGrantResult} (in the order of the assignments
+     *         followed by the revocations) or an ActionError entity
+     */
+    @POST
+    @Path("/roles/batch")
+    @SecurityRequirement(name = "OIDC")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @RolesAllowed({ Role.IMS_ADMIN, Role.PROCESS_OWNER, Role.PROCESS_MANAGER })
+    @Operation(operationId = "changeRoles", summary = "Assign and revoke roles of multiple users",
+               description ="To assign roles to a user, the user must be included in the SLM process.")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "Processed, check the result of each change",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(type = SchemaType.ARRAY, implementation = RoleGrantResult.class))),
+            @APIResponse(responseCode = "400", description="Invalid parameters or configuration",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(implementation = ActionError.class))),
+            @APIResponse(responseCode = "401", description="Authorization required"),
+            @APIResponse(responseCode = "403", description="Permission denied"),
+            @APIResponse(responseCode = "503", description="Try again later")
+    })
+    public Uni<Response> changeRoles(@RestHeader(HttpHeaders.AUTHORIZATION) String auth, RoleGrantBatch batch)
+    {
+        final var changeBy = new User(
+                (String)identity.getAttribute(CheckinUser.ATTR_USERID),
+                (String)identity.getAttribute(CheckinUser.ATTR_FULLNAME),
+                (String)identity.getAttribute(CheckinUser.ATTR_EMAIL) );
+
+        addToDC("userIdCaller", changeBy.checkinUserId);
+        addToDC("userNameCaller", changeBy.fullName);
+        addToDC("processName", imsConfig.group());
+
+        log.info("Changing roles of users");
+
+        if(null == batch || ((null == batch.assign || batch.assign.isEmpty()) &&
+                             (null == batch.revoke || batch.revoke.isEmpty()))) {
+            var ae = new ActionError("badRequest", "Missing role grants");
+            return Uni.createFrom().item(ae.toResponse());
+        }
+
+        // Validate the grants, only the valid ones are passed to Check-in
+        final var results = new ArrayList<RoleGrantResult>();
+        final var grants = new ArrayList<RoleGrant>();
+        final var pending = new ArrayList<RoleGrantResult>();
+        for(var assign : List.of(true, false)) {
+            var batchGrants = assign ? batch.assign : batch.revoke;
+            if(null == batchGrants)
+                continue;
+
+            for(var grant : batchGrants) {
+                var grantResult = new RoleGrantResult(grant, assign);
+                results.add(grantResult);
+
+                var ae = validateRoleGrant(grant);
+                if(null != ae) {
+                    grantResult.failed(ae);
+                    continue;
+                }
+
+                grant.assign = assign;
+                grant.changeBy = changeBy;
+                grants.add(grant);
+                pending.add(grantResult);
+            }
+        }
+
+        return changeRolesAsync(grants, pending, results);
+    }
+
+    /**
+     * Include users in and exclude users from the configured group in one go.
+     * All changes are checked against the same membership of the group, the changes are made in
+     * Check-in a few at a time, and are logged together. Each change succeeds or fails on its own.
+     * @param auth The access token needed to call the service.
+     * @param batch The users to include and exclude.
+     * @return API Response, wraps a list of {@link RoleGrantResult} (in the order of the inclusions
+     *         followed by the exclusions) or an ActionError entity
+     */
+    @POST
+    @Path("/process/batch")
+    @SecurityRequirement(name = "OIDC")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @RolesAllowed({ Role.IMS_ADMIN, Role.PROCESS_OWNER, Role.PROCESS_MANAGER })
+    @Operation(operationId = "changeGroupMembers", summary = "Include users in and exclude users from the SLM process")
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "Processed, check the result of each change",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(type = SchemaType.ARRAY, implementation = RoleGrantResult.class))),
+            @APIResponse(responseCode = "400", description="Invalid parameters or configuration",
+                    content = @Content(mediaType = MediaType.APPLICATION_JSON,
+                    schema = @Schema(implementation = ActionError.class))),
+            @APIResponse(responseCode = "401", description="Authorization required"),
+            @APIResponse(responseCode = "403", description="Permission denied"),
+            @APIResponse(responseCode = "503", description="Try again later")
+    })
+    public Uni<Response> changeGroupMembers(@RestHeader(HttpHeaders.AUTHORIZATION) String auth, MembershipBatch batch)
+    {
+        final var changeBy = new User(
+                (String)identity.getAttribute(CheckinUser.ATTR_USERID),
+                (String)identity.getAttribute(CheckinUser.ATTR_FULLNAME),
+                (String)identity.getAttribute(CheckinUser.ATTR_EMAIL) );
+
+        addToDC("userIdCaller", changeBy.checkinUserId);
+        addToDC("userNameCaller", changeBy.fullName);
+        addToDC("processName", imsConfig.group());
+
+        log.info("Changing members of group");
+
+        if(null == batch || ((null == batch.include || batch.include.isEmpty()) &&
+                             (null == batch.exclude || batch.exclude.isEmpty()))) {
+            var ae = new ActionError("badRequest", "Missing users");
+            return Uni.createFrom().item(ae.toResponse());
+        }
+
+        // Validate the users, only the valid ones are passed to Check-in
+        final var results = new ArrayList<RoleGrantResult>();
+        final var grants = new ArrayList<RoleGrant>();
+        final var pending = new ArrayList<RoleGrantResult>();
+        for(var include : List.of(true, false)) {
+            var users = include ? batch.include : batch.exclude;
+            if(null == users)
+                continue;
+
+            for(var user : users) {
+                var grant = new RoleGrant(changeBy);
+                grant.assign = include;
+                grant.role = Role.PROCESS_MEMBER;
+                grant.roleHolder = user;
+
+                var grantResult = new RoleGrantResult(grant, include);
+                results.add(grantResult);
+
+                if(null == user || null == user.checkinUserId || user.checkinUserId.isBlank()) {
+                    // User must be specified
+                    grantResult.failed(new ActionError("badRequest", "User is required"));
+                    continue;
+                }
+
+                grants.add(grant);
+                pending.add(grantResult);
+            }
+        }
+
+        return changeRolesAsync(grants, pending, results);
+    }
+
+    /***
+     * Make role changes (including group membership changes) in Check-in, then log the ones that were made.
+     * @param grants The valid role changes
+     * @param pending The results of the valid role changes, in the same order as the grants
+     * @param results The results of all requested role changes, returned to the caller
+     * @return API Response, wraps the results or an ActionError entity
+     */
+    private Uni<Response> changeRolesAsync(List<RoleGrant> grants, List<RoleGrantResult> pending, List<RoleGrantResult> results) {
+
+        final var changes = new ArrayList<RoleChange>(grants.size());
+        for(var grant : grants) {
+            // Membership in the group is held in Check-in as a role record too
+            var roleName = grant.role.equals(Role.PROCESS_MEMBER) ? MembershipSnapshot.MEMBER : grant.role;
+            changes.add(new RoleChange(grant.roleHolder.checkinUserId, roleName, grant.assign));
+        }
+
+        addToDC("roleChanges", changes.size());
+
+        Uni<Response> result = Uni.createFrom().nullItem()
+
+            .chain(unused -> {
+                // Get REST client for Check-in
+                if (!checkin.init(this.checkinConfig, this.imsConfig, stub))
+                    // Could not get REST client
+                    return Uni.createFrom().failure(new ActionException("invalidConfig"));
+
+                return Uni.createFrom().item(unused);
+            })
+            .chain(unused -> {
+                // Assign and revoke roles
+                if(changes.isEmpty())
+                    return Uni.createFrom().item(changes);
+
+                return checkin.changeUserRolesAsync(this.imsConfig.group(), changes);
+            })
+            .chain(unused -> {
+                // Role changes complete, log the ones that changed Check-in
+                var changed = new ArrayList<RoleGrant>();
+                for(int i = 0; i < changes.size(); i++)
+                    if(changes.get(i).changed())
+                        changed.add(grants.get(i));
+
+                if(changed.isEmpty())
+                    return Uni.createFrom().item(true);
+
+                return logRoleAssignments(changed)
+                        .map(logged -> true)
+                        .onFailure().recoverWithItem(e -> {
+                            log.error("Changed roles, but failed to log them");
+                            return false;
+                        });
+            })
+            .chain(logged -> {
+                // Report the outcome of each change
+                int failed = 0;
+                for(int i = 0; i < changes.size(); i++) {
+                    var change = changes.get(i);
+                    var grantResult = pending.get(i);
+                    var membership = MembershipSnapshot.MEMBER.equals(change.roleName);
+                    if(!change.succeeded()) {
+                        failed++;
+                        grantResult.failed(new ActionError(change.failure(), Tuple2.of("oidcInstance", this.checkinConfig.server())));
+                    }
+                    else if(!change.changed())
+                        grantResult.succeeded(membership ?
+                                (change.assign ? "Already included" : "Not included") :
+                                (change.assign ? "Already assigned" : "Not assigned"));
+                    else {
+                        var message = membership ?
+                                (change.assign ? "Included" : "Excluded") :
+                                (change.assign ? "Assigned" : "Revoked");
+                        grantResult.succeeded(logged ? message : message + ", but not logged");
+                    }
+                }
+
+                log.infof("Changed roles, %d of %d changes failed", failed + results.size() - changes.size(), results.size());
+                return Uni.createFrom().item(Response.ok(results).build());
+            })
+            .onFailure().recoverWithItem(e -> {
+                log.error("Failed to change roles");
+                return new ActionError(e, Tuple2.of("oidcInstance", this.checkinConfig.server())).toResponse();
+            });
+
+        return result;
+    }
+
     /**
      * List assigned roles in the configured group.
      * Note: Membership in the group is not considered a role, but a prerequisite to holding a role.
@@ -0,0 +1,56 @@
+package egi.eu.entity;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+
+import java.util.concurrent.TimeUnit;
+
+
+/***
+ * Metrics about the database, to tell a starved connection pool from slow SQL.
+ * The named queries are timed from the static finders of the entities, so they are registered
+ * with the global registry (see {@link egi.checkin.CheckinMetrics}). The pool is reported by
+ * {@link MeteredPgPool}, with the registry of the application.
+ *
+ * - db.pool.connections: connections of the pool, tagged with state "active" (leased) or "idle"
+ * - db.pool.waiting: requests waiting for a connection
+ * - db.pool.max: maximum number of connections
+ * - db.pool.acquire: time to get a connection from the pool, tagged with outcome
+ * - db.queries: time to run the named queries of the entities, tagged with query and outcome,
+ *               includes getting a connection if this is the first query of the session
+ * - db.transactions: time from begin to commit or rollback, tagged with outcome "commit" or "rollback"
+ */
+public class DatabaseMetrics {
+
+    // Outcomes
+    public static final String SUCCESS = "success";
+    public static final String FAILURE = "failure";
+    public static final String CANCELLED = "cancelled";
+    public static final String COMMIT = "commit";
+    public static final String ROLLBACK = "rollback";
+
+    private static final MeterRegistry registry = Metrics.globalRegistry;
+
+
+    /***
+     * Time a named query of an entity
+     * @param query The name of the query, e.g. UserEntity.findByCheckinUserIds
+     * @param uni The query, run when subscribed to
+     * @return Uni that times the query when subscribed to
+     */
+    public static <T> Uni<T> timed(String query, Uni<T> uni) {
+        return Uni.createFrom().deferred(() -> {
+            final var start = System.nanoTime();
+            return uni.onTermination().invoke((item, failure, cancelled) -> {
+                Timer.builder("db.queries")
+                        .description("Named queries of the entities")
+                        .tag("query", query)
+                        .tag("outcome", null != failure ? FAILURE : (cancelled ? CANCELLED : SUCCESS))
+                        .register(registry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            });
+        });
+    }
+}
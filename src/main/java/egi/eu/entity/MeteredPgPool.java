@@ -0,0 +1,255 @@
+package egi.eu.entity;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.reactive.pg.client.PgPoolCreator;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.*;
+import io.vertx.sqlclient.spi.DatabaseMetadata;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+
+/***
+ * Postgres pool that reports its connections, the time to get one, and the duration of
+ * the transactions, see {@link DatabaseMetrics}. The Vert.x pool does not publish these itself.
+ *
+ * Hibernate Reactive gets a connection for each session with {@link #getConnection()}, these
+ * are the connections counted as active until closed. Queries sent straight to the pool
+ * (e.g. by the health check) borrow a connection internally, they are not counted.
+ */
+public class MeteredPgPool implements PgPool {
+
+    private final PgPool pool;
+    private final int maxSize;
+    private final MeterRegistry registry;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+
+    /***
+     * Creates the pool used by the default datasource, Quarkus picks it up as a bean
+     * See https://quarkus.io/guides/reactive-sql-clients#customizing-pool-creation
+     */
+    @Singleton
+    public static class Creator implements PgPoolCreator {
+
+        @Inject
+        MeterRegistry registry;
+
+        @Override
+        public PgPool create(Input input) {
+            return new MeteredPgPool(PgPool.pool(input.vertx(), input.pgConnectOptionsList(), input.poolOptions()),
+                                     input.poolOptions().getMaxSize(), this.registry);
+        }
+    }
+
+    /***
+     * Constructor
+     * @param pool The pool to report on
+     * @param maxSize The maximum number of connections of the pool
+     * @param registry The registry to report to
+     */
+    public MeteredPgPool(PgPool pool, int maxSize, MeterRegistry registry) {
+        this.pool = pool;
+        this.maxSize = maxSize;
+        this.registry = registry;
+
+        Gauge.builder("db.pool.connections", this, MeteredPgPool::activeConnections)
+                .description("Connections of the database pool")
+                .tag("state", "active")
+                .register(registry);
+        Gauge.builder("db.pool.connections", this, MeteredPgPool::idleConnections)
+                .description("Connections of the database pool")
+                .tag("state", "idle")
+                .register(registry);
+        Gauge.builder("db.pool.waiting", this, MeteredPgPool::waitingRequests)
+                .description("Requests waiting for a connection from the database pool")
+                .register(registry);
+        Gauge.builder("db.pool.max", this, MeteredPgPool::maxConnections)
+                .description("Maximum number of connections of the database pool")
+                .register(registry);
+    }
+
+    /***
+     * Get the number of connections in use
+     */
+    public int activeConnections() { return this.active.get(); }
+
+    /***
+     * Get the number of open connections not in use
+     */
+    public int idleConnections() { return Math.max(0, this.pool.size() - this.active.get()); }
+
+    /***
+     * Get the number of requests waiting for a connection
+     */
+    public int waitingRequests() { return this.waiting.get(); }
+
+    /***
+     * Get the maximum number of connections
+     */
+    public int maxConnections() { return this.maxSize; }
+
+    @Override
+    public Future<SqlConnection> getConnection() {
+        final var start = System.nanoTime();
+        this.waiting.incrementAndGet();
+        return this.pool.getConnection()
+                .map(connection -> (SqlConnection)new MeteredConnection(connection))
+                .onComplete(result -> {
+                    this.waiting.decrementAndGet();
+                    Timer.builder("db.pool.acquire")
+                            .description("Time to get a connection from the database pool")
+                            .tag("outcome", result.succeeded() ? DatabaseMetrics.SUCCESS : DatabaseMetrics.FAILURE)
+                            .register(this.registry)
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                });
+    }
+
+    @Override
+    public void getConnection(Handler<AsyncResult<SqlConnection>> handler) {
+        getConnection().onComplete(handler);
+    }
+
+    @Override
+    public Query<RowSet<Row>> query(String sql) { return this.pool.query(sql); }
+
+    @Override
+    public PreparedQuery<RowSet<Row>> preparedQuery(String sql) { return this.pool.preparedQuery(sql); }
+
+    @Override
+    public PreparedQuery<RowSet<Row>> preparedQuery(String sql, PrepareOptions options) {
+        return this.pool.preparedQuery(sql, options);
+    }
+
+    @Override
+    public PgPool connectHandler(Handler<SqlConnection> handler) {
+        this.pool.connectHandler(handler);
+        return this;
+    }
+
+    @Override
+    public PgPool connectionProvider(Function<Context, Future<SqlConnection>> provider) {
+        this.pool.connectionProvider(provider);
+        return this;
+    }
+
+    @Override
+    public int size() { return this.pool.size(); }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> handler) { this.pool.close(handler); }
+
+    @Override
+    public Future<Void> close() { return this.pool.close(); }
+
+
+    /***
+     * Connection leased from the pool, counted as active until closed (returned to the pool)
+     */
+    private class MeteredConnection implements SqlConnection {
+
+        private final SqlConnection connection;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        MeteredConnection(SqlConnection connection) {
+            this.connection = connection;
+            active.incrementAndGet();
+        }
+
+        private void release() {
+            if(this.closed.compareAndSet(false, true))
+                active.decrementAndGet();
+        }
+
+        @Override
+        public Future<Transaction> begin() {
+            return this.connection.begin()
+                    .onSuccess(tx -> {
+                        // Completes when committed, fails when rolled back
+                        final var start = System.nanoTime();
+                        tx.completion().onComplete(result ->
+                            Timer.builder("db.transactions")
+                                    .description("Database transactions, from begin to commit or rollback")
+                                    .tag("outcome", result.succeeded() ? DatabaseMetrics.COMMIT : DatabaseMetrics.ROLLBACK)
+                                    .register(registry)
+                                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+                    });
+        }
+
+        @Override
+        public void begin(Handler<AsyncResult<Transaction>> handler) { begin().onComplete(handler); }
+
+        @Override
+        public Transaction transaction() { return this.connection.transaction(); }
+
+        @Override
+        public Future<Void> close() {
+            release();
+            return this.connection.close();
+        }
+
+        @Override
+        public void close(Handler<AsyncResult<Void>> handler) { close().onComplete(handler); }
+
+        @Override
+        public SqlConnection prepare(String sql, Handler<AsyncResult<PreparedStatement>> handler) {
+            this.connection.prepare(sql, handler);
+            return this;
+        }
+
+        @Override
+        public Future<PreparedStatement> prepare(String sql) { return this.connection.prepare(sql); }
+
+        @Override
+        public SqlConnection prepare(String sql, PrepareOptions options, Handler<AsyncResult<PreparedStatement>> handler) {
+            this.connection.prepare(sql, options, handler);
+            return this;
+        }
+
+        @Override
+        public Future<PreparedStatement> prepare(String sql, PrepareOptions options) {
+            return this.connection.prepare(sql, options);
+        }
+
+        @Override
+        public SqlConnection exceptionHandler(Handler<Throwable> handler) {
+            this.connection.exceptionHandler(handler);
+            return this;
+        }
+
+        @Override
+        public SqlConnection closeHandler(Handler<Void> handler) {
+            this.connection.closeHandler(handler);
+            return this;
+        }
+
+        @Override
+        public boolean isSSL() { return this.connection.isSSL(); }
+
+        @Override
+        public DatabaseMetadata databaseMetadata() { return this.connection.databaseMetadata(); }
+
+        @Override
+        public Query<RowSet<Row>> query(String sql) { return this.connection.query(sql); }
+
+        @Override
+        public PreparedQuery<RowSet<Row>> preparedQuery(String sql) { return this.connection.preparedQuery(sql); }
+
+        @Override
+        public PreparedQuery<RowSet<Row>> preparedQuery(String sql, PrepareOptions options) {
+            return this.connection.preparedQuery(sql, options);
+        }
+    }
+}
@@ -228,7 +228,7 @@ public class ProcessEntity extends PanacheEntityBase {
      * @return List with latest version of the entity
      */
     public static Uni<List<ProcessEntity>> getLastVersionAsList() {
-        return find("ORDER BY version DESC").range(0,0).list();
+        return DatabaseMetrics.timed("ProcessEntity.getLastVersionAsList", find("ORDER BY version DESC").range(0,0).list());
     }
 
     /***
@@ -236,7 +236,7 @@ public class ProcessEntity extends PanacheEntityBase {
      * @return Latest version of the entity
      */
     public static Uni<ProcessEntity> getLastVersion() {
-        return find("ORDER BY version DESC").firstResult();
+        return DatabaseMetrics.timed("ProcessEntity.getLastVersion", find("ORDER BY version DESC").firstResult());
     }
 
     /***
@@ -244,7 +244,7 @@ public class ProcessEntity extends PanacheEntityBase {
      * @return All versions of the entity, sorted in reverse chronological order (head of the list is the latest).
      */
     public static Uni<List<ProcessEntity>> getAllVersions() {
-        return find("ORDER BY version DESC").list();
+        return DatabaseMetrics.timed("ProcessEntity.getAllVersions", find("ORDER BY version DESC").list());
     }
 
     /***
@@ -252,7 +252,7 @@ public class ProcessEntity extends PanacheEntityBase {
      * @return All versions of the entity, sorted in reverse chronological order (head of the list is the latest).
      */
     public static Uni<List<ProcessEntity>> getAllVersions(int index, int size) {
-        return find("ORDER BY version DESC").page(index, size).list();
+        return DatabaseMetrics.timed("ProcessEntity.getAllVersions(index,size)", find("ORDER BY version DESC").page(index, size).list());
     }
 
     /***
@@ -114,7 +114,7 @@ public class ResponsibilityEntity extends PanacheEntityBase {
      * @return List with latest version of the entity
      */
     public static Uni<List<ResponsibilityEntity>> getLastVersionAsList() {
-        return find("ORDER BY version DESC").range(0,0).list();
+        return DatabaseMetrics.timed("ResponsibilityEntity.getLastVersionAsList", find("ORDER BY version DESC").range(0,0).list());
     }
 
     /***
@@ -122,7 +122,7 @@ public class ResponsibilityEntity extends PanacheEntityBase {
      * @return Latest version of the entity
      */
     public static Uni<ResponsibilityEntity> getLastVersion() {
-        return find("ORDER BY version DESC").firstResult();
+        return DatabaseMetrics.timed("ResponsibilityEntity.getLastVersion", find("ORDER BY version DESC").firstResult());
     }
 
     /***
@@ -130,7 +130,7 @@ public class ResponsibilityEntity extends PanacheEntityBase {
      * @return All versions of the entity, sorted in reverse chronological order (head of the list is the latest).
      */
     public static Uni<List<ResponsibilityEntity>> getAllVersions() {
-        return find("ORDER BY version DESC").list();
+        return DatabaseMetrics.timed("ResponsibilityEntity.getAllVersions", find("ORDER BY version DESC").list());
     }
 
     /***
@@ -138,6 +138,6 @@ public class ResponsibilityEntity extends PanacheEntityBase {
      * @return All versions of the entity, sorted in reverse chronological order (head of the list is the latest).
      */
     public static Uni<List<ResponsibilityEntity>> getAllVersions(int index, int size) {
-        return find("ORDER BY version DESC").page(index, size).list();
+        return DatabaseMetrics.timed("ResponsibilityEntity.getAllVersions(index,size)", find("ORDER BY version DESC").page(index, size).list());
     }
 }
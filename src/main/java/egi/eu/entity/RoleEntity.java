@@ -156,7 +156,7 @@ public class RoleEntity extends PanacheEntityBase {
             """;
 
         var query = session.createNativeQuery(sql, RoleEntity.class);
-        return query.getResultList();
+        return DatabaseMetrics.timed("RoleEntity.getAllRoles(session)", query.getResultList());
     }
 
     /***
@@ -164,7 +164,7 @@ public class RoleEntity extends PanacheEntityBase {
      * @return All role entities, sorted in reverse chronological order (head of the list is the latest).
      */
     public static Uni<List<RoleEntity>> getAllRoles() {
-        return findAll().list();
+        return DatabaseMetrics.timed("RoleEntity.getAllRoles", findAll().list());
     }
 
     /***
@@ -172,7 +172,7 @@ public class RoleEntity extends PanacheEntityBase {
      * @return Role entity
      */
     public static Uni<RoleEntity> getRoleLastVersion(String role) {
-        return find("role = ?1 ORDER BY version DESC", role).firstResult();
+        return DatabaseMetrics.timed("RoleEntity.getRoleLastVersion", find("role = ?1 ORDER BY version DESC", role).firstResult());
     }
 
     /***
@@ -180,7 +180,7 @@ public class RoleEntity extends PanacheEntityBase {
      * @return Role entities
      */
     public static Uni<List<RoleEntity>> getRoleAllVersions(String role) {
-        return list("role = ?1 ORDER BY version DESC", role);
+        return DatabaseMetrics.timed("RoleEntity.getRoleAllVersions", list("role = ?1 ORDER BY version DESC", role));
     }
 
     /***
@@ -82,9 +82,10 @@ public class RoleLogEntity extends PanacheEntityBase {
         Map<String, Object> params = new HashMap<>();
         params.put("role", role);
         params.put("from", from);
-        return find("role = :role AND changedOn < :from ORDER BY changedOn DESC", params)
-                .page(Page.ofSize(limit))
-                .list();
+        return DatabaseMetrics.timed("RoleLogEntity.getRoleAssignments",
+                find("role = :role AND changedOn < :from ORDER BY changedOn DESC", params)
+                    .page(Page.ofSize(limit))
+                    .list());
     }
 
 }
@@ -52,7 +52,7 @@ public class UserEntity extends PanacheEntityBase {
      * @return User entity
      */
     public static Uni<UserEntity> findByCheckinUserId(String checkinUserId) {
-        return find("checkinUserId", checkinUserId).firstResult();
+        return DatabaseMetrics.timed("UserEntity.findByCheckinUserId", find("checkinUserId", checkinUserId).firstResult());
     }
 
     /***
@@ -60,6 +60,6 @@ public class UserEntity extends PanacheEntityBase {
      * @return List with existing users
      */
     public static Uni<List<UserEntity>> findByCheckinUserIds(List<String> checkinUserIds) {
-        return list("checkinUserId in ?1", checkinUserIds);
+        return DatabaseMetrics.timed("UserEntity.findByCheckinUserIds", list("checkinUserId in ?1", checkinUserIds));
     }
 }
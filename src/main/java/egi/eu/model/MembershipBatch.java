@@ -0,0 +1,29 @@
+package egi.eu.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import java.util.List;
+
+
+/**
+ * Users to include in and exclude from the process in one go
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MembershipBatch {
+
+    @Schema(description="Users to include in the process")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<User> include;
+
+    @Schema(description="Users to exclude from the process")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<User> exclude;
+
+
+    /***
+     * Constructor
+     */
+    public MembershipBatch() {}
+}
@@ -0,0 +1,29 @@
+package egi.eu.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import java.util.List;
+
+
+/**
+ * Role assignments and revocations to make in one go
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class RoleGrantBatch {
+
+    @Schema(description="Roles to assign")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<RoleGrant> assign;
+
+    @Schema(description="Roles to revoke")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<RoleGrant> revoke;
+
+
+    /***
+     * Constructor
+     */
+    public RoleGrantBatch() {}
+}
@@ -0,0 +1,78 @@
+package egi.eu.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import egi.eu.ActionError;
+
+
+/***
+ * Outcome of a role assignment or revocation made in a batch
+ */
+public class RoleGrantResult {
+
+    @Schema(enumeration={ "RoleGrantResult" })
+    public String kind = "RoleGrantResult";
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public String role; // One of the Role constants
+
+    @Schema(description="User the role was assigned to or revoked from")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public User roleHolder;
+
+    @Schema(description="Assignment or revocation")
+    public boolean assign;
+
+    @Schema(description="The role was assigned/revoked, or the user already had/did not have it")
+    public boolean success;
+
+    @Schema(description="Confirmation message")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public String message;
+
+    @Schema(description="Why the assignment/revocation failed")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public ActionError error;
+
+
+    /***
+     * Constructor
+     */
+    public RoleGrantResult() {}
+
+    /***
+     * Construct from role grant
+     * @param grant The role assignment or revocation
+     * @param assign Shows if the role is assigned or revoked
+     */
+    public RoleGrantResult(RoleGrant grant, boolean assign) {
+        this.assign = assign;
+        if(null != grant) {
+            this.role = grant.role;
+            this.roleHolder = grant.roleHolder;
+        }
+    }
+
+    /***
+     * Mark as successful
+     * @param message Confirmation message
+     * @return Ourselves, to allow chaining calls with .
+     */
+    public RoleGrantResult succeeded(String message) {
+        this.success = true;
+        this.message = message;
+        return this;
+    }
+
+    /***
+     * Mark as failed
+     * @param error The reason
+     * @return Ourselves, to allow chaining calls with .
+     */
+    public RoleGrantResult failed(ActionError error) {
+        this.success = false;
+        this.error = error;
+        return this;
+    }
+}
@@ -0,0 +1,217 @@
+package egi.checkin;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+import egi.checkin.model.CheckinUser;
+import egi.eu.model.RoleInfo;
+
+
+/***
+ * Membership computed straight from the role records, the way it was done before
+ * {@link MembershipSnapshot} indexed the records. Used to check the results of the snapshots.
+ */
+public class MembershipReference {
+
+    public static final String VO = "vo.tools.egi.eu";
+    public static final String GROUP = "SLM";
+
+    private final Map<String, String> voMembers = new HashMap<>();      // Email by Check-in user Id
+    private final Set<String> groupMembers = new HashSet<>();
+    private final Map<String, Set<String>> roles = new HashMap<>();     // Role names by Check-in user Id
+
+
+    /***
+     * Compute the membership at a point in time
+     * @param voRecords The role records of the VO
+     * @param groupRecords The role records of the group
+     * @param now Milliseconds since epoch
+     */
+    public MembershipReference(CheckinRoleList voRecords, CheckinRoleList groupRecords, long now) {
+        for(var record : voRecords.records)
+            if(isActive(record, now) && MembershipSnapshot.MEMBER.equals(record.role))
+                this.voMembers.putIfAbsent(record.person.checkinUserId(), new CheckinUser(record).email);
+
+        for(var record : groupRecords.records) {
+            final var checkinUserId = record.person.checkinUserId();
+            if(isActive(record, now) && MembershipSnapshot.MEMBER.equals(record.role) &&
+               this.voMembers.containsKey(checkinUserId))
+                this.groupMembers.add(checkinUserId);
+        }
+
+        for(var record : groupRecords.records) {
+            final var checkinUserId = record.person.checkinUserId();
+            if(isActive(record, now) && record.checkIfRole() && this.groupMembers.contains(checkinUserId))
+                this.roles.computeIfAbsent(checkinUserId, u -> new TreeSet<>()).add(record.role);
+        }
+    }
+
+    /***
+     * Generate the records of a simulated population
+     * @param members Number of active VO members
+     * @return The records of the VO and of the group, with the role field computed
+     */
+    public static CheckinRoleList[] population(int members) {
+        var settings = new SimulatedCheckinPopulation.Settings();
+        settings.members = members;
+        settings.groupShare = 0.3;
+        var population = new SimulatedCheckinPopulation("2", VO, GROUP, settings);
+
+        return new CheckinRoleList[] {
+                recordsOf(population.listRecords("2", VO)),
+                recordsOf(population.listRecords("2", GROUP)) };
+    }
+
+    /***
+     * Read role records and compute their role field
+     */
+    public static CheckinRoleList recordsOf(byte[] json) {
+        try {
+            var list = CheckinRoleListReader.read(new ByteArrayInputStream(json));
+            Checkin.computeRoles(list);
+            return list;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /***
+     * Build a role record
+     * @param roleId The Id of the record
+     * @param checkinUserId The user
+     * @param role The role, or "member" for membership
+     * @param status The status, e.g. Active or Deleted
+     * @param from Start of the validity period, null if none
+     * @param until End of the validity period, null if none
+     * @return Role record, with the role field computed
+     */
+    public static CheckinRole record(long roleId, String checkinUserId, String role, String status, Date from, Date until) {
+        var record = new CheckinRole();
+        record.roleId = roleId;
+        record.affiliation = "member";
+        record.title = MembershipSnapshot.MEMBER.equals(role) ? null : role;
+        record.role = role;
+        record.status = status;
+        record.deleted = "Deleted".equalsIgnoreCase(status);
+        record.from = from;
+        record.until = until;
+        record.revision = 1;
+
+        var id = new CheckinRole.Person.Identifier();
+        id.type = "epuid";
+        id.identifier = checkinUserId;
+
+        var name = new CheckinRole.Person.Name();
+        name.type = "official";
+        name.given = "Given";
+        name.family = checkinUserId;
+
+        var mail = new CheckinRole.Person.Email();
+        mail.type = "official";
+        mail.mail = checkinUserId.replace("@egi.eu", "@example.org");
+        mail.verified = true;
+
+        record.person = new CheckinRole.Person();
+        record.person.ids = new ArrayList<>(List.of(id));
+        record.person.names = new ArrayList<>(List.of(name));
+        record.person.emails = new ArrayList<>(List.of(mail));
+
+        return record;
+    }
+
+    /***
+     * Add records to a copy of a list of records
+     */
+    public static CheckinRoleList with(CheckinRoleList list, CheckinRole... records) {
+        var copy = new CheckinRoleList(list);
+        copy.records.addAll(List.of(records));
+        return copy;
+    }
+
+    /***
+     * Check if a user holds a role
+     */
+    public boolean hasRole(String checkinUserId, String role) {
+        var roles = this.roles.get(checkinUserId);
+        return null != roles && roles.contains(role);
+    }
+
+    /***
+     * Check that a snapshot has the same members and roles as this reference
+     * @param snapshot The snapshot to check
+     * @param roleNames Role name fragments or expressions to check the roles with
+     */
+    public void assertSame(MembershipSnapshot snapshot, String... roleNames) {
+        Map<String, String> voMembers = new HashMap<>();
+        for(var user : snapshot.voMembers())
+            assertNull(voMembers.put(user.checkinUserId, user.email), "Duplicate VO member");
+        assertEquals(this.voMembers, voMembers, "VO members");
+        assertEquals(this.voMembers.size(), snapshot.voMemberCount());
+
+        Set<String> groupMembers = new HashSet<>();
+        for(var user : snapshot.groupMembers())
+            assertTrue(groupMembers.add(user.checkinUserId), "Duplicate group member");
+        assertEquals(this.groupMembers, groupMembers, "Group members");
+        assertEquals(this.groupMembers.size(), snapshot.groupMemberCount());
+
+        List<String> filters = new ArrayList<>();
+        filters.add(null);
+        filters.addAll(List.of(roleNames));
+        for(var roleName : filters) {
+            final var expected = rolesByUser(roleName);
+
+            Map<String, Set<String>> usersWithRoles = new HashMap<>();
+            for(var user : snapshot.usersWithRoles(roleName)) {
+                assertEquals(this.voMembers.get(user.checkinUserId), user.email);
+                usersWithRoles.put(user.checkinUserId, new TreeSet<>(user.roles));
+            }
+            assertEquals(expected, usersWithRoles, "Users with roles " + roleName);
+
+            Map<String, Set<String>> expectedHolders = new TreeMap<>();
+            for(var entry : expected.entrySet())
+                for(var role : entry.getValue())
+                    expectedHolders.computeIfAbsent(role, r -> new TreeSet<>()).add(entry.getKey());
+
+            Map<String, Set<String>> holders = new TreeMap<>();
+            for(RoleInfo role : snapshot.roles(roleName)) {
+                Set<String> users = new TreeSet<>();
+                for(var user : role.users) {
+                    assertEquals(this.voMembers.get(user.checkinUserId), user.email);
+                    users.add(user.checkinUserId);
+                }
+                assertNull(holders.put(role.role, users), "Duplicate role");
+            }
+            assertEquals(expectedHolders, holders, "Roles " + roleName);
+        }
+    }
+
+    /***
+     * Get the roles of the users, the way roles were filtered before the snapshot
+     */
+    private Map<String, Set<String>> rolesByUser(String roleName) {
+        final String rexRole = null != roleName ? roleName.replace("-", "\\-") + ".*" : null;
+        Map<String, Set<String>> rolesByUser = new HashMap<>();
+        for(var entry : this.roles.entrySet())
+            for(var role : entry.getValue())
+                if(null == roleName || roleName.isBlank() || role.matches(rexRole))
+                    rolesByUser.computeIfAbsent(entry.getKey(), u -> new TreeSet<>()).add(role);
+
+        return rolesByUser;
+    }
+
+    /***
+     * Check if a record is active at a point in time
+     */
+    private static boolean isActive(CheckinRole record, long now) {
+        return !Boolean.TRUE.equals(record.deleted) && "Active".equalsIgnoreCase(record.status) &&
+               (null == record.from || record.from.getTime() <= now) &&
+               (null == record.until || record.until.getTime() > now);
+    }
+}
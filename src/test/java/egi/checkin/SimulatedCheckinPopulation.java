@@ -0,0 +1,414 @@
+package egi.checkin;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+import egi.checkin.model.CheckinUser;
+import egi.eu.model.Role;
+
+
+/***
+ * Membership of a VO and of a group in it, as held by the simulated Check-in.
+ * The population is generated from a seed, so the same settings always produce the same records:
+ * - every VO member has an active membership record in the VO
+ * - a share of the VO members also have an active membership record in the group
+ * - group members hold on average the configured number of roles
+ * - deleted records are added for former VO and group members, and for revoked roles,
+ *   in proportion to the active records
+ * Records can be added and updated, like in Check-in. Thread safe.
+ */
+public class SimulatedCheckinPopulation {
+
+    public static final List<String> ROLES = List.of(
+            Role.PROCESS_OWNER, Role.PROCESS_MANAGER, Role.PROCESS_DEVELOPER, Role.CATALOG_OWNER,
+            Role.REPORT_OWNER, Role.UA_OWNER, Role.OLA_OWNER, Role.SLA_OWNER);
+
+    private static final String ENTITLEMENT_PREFIX = "urn:mace:egi.eu:group:";
+    private static final String ENTITLEMENT_SUFFIX = "#aai.egi.eu";
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+    private static final JsonFactory json = new JsonFactory();
+
+    private final String coId;
+    private final String vo;
+    private final String group;
+    private final long voId;
+    private final long groupId;
+    private final int activeMembers;    // Persons [0, activeMembers) are VO members
+
+    private final List<String> userIds = new ArrayList<>();                 // By person
+    private final Map<String, Integer> persons = new HashMap<>();           // By Check-in user Id
+    private final Map<String, List<Record>> recordsByGroup = new HashMap<>();
+    private final Map<Long, Record> records = new HashMap<>();              // By record Id
+    private final Map<Integer, List<Record>> recordsByPerson = new HashMap<>();
+    private final Map<String, byte[]> rendered = new HashMap<>();           // By group, dropped on change
+    private long nextRecordId = 10000;
+
+
+    /***
+     * Settings of the generated population
+     */
+    public static class Settings {
+
+        public int members = 1000;          // Active VO members
+        public double groupShare = 0.1;     // Share of the VO members that are also group members
+        public double roleDensity = 1.5;    // Average number of roles held by a group member
+        public double deletedRatio = 0.1;   // Deleted records per active record
+        public long seed = 42;
+
+        /***
+         * Read settings, missing ones keep their default
+         * @param args Settings by name: members, group-share, role-density, deleted-ratio, seed
+         * @return New settings
+         */
+        public static Settings from(Map<String, String> args) {
+            var settings = new Settings();
+            if(args.containsKey("members"))
+                settings.members = Integer.parseInt(args.get("members"));
+            if(args.containsKey("group-share"))
+                settings.groupShare = Double.parseDouble(args.get("group-share"));
+            if(args.containsKey("role-density"))
+                settings.roleDensity = Double.parseDouble(args.get("role-density"));
+            if(args.containsKey("deleted-ratio"))
+                settings.deletedRatio = Double.parseDouble(args.get("deleted-ratio"));
+            if(args.containsKey("seed"))
+                settings.seed = Long.parseLong(args.get("seed"));
+
+            return settings;
+        }
+    }
+
+    /***
+     * A role record
+     */
+    private static class Record {
+
+        final long id;
+        final int person;
+        final String groupName;
+        final String role;      // Null for membership records
+        final long created;     // Milliseconds since epoch
+        String status;
+        long modified;
+        int revision;
+
+        Record(long id, int person, String groupName, String role, String status, long created) {
+            this.id = id;
+            this.person = person;
+            this.groupName = groupName;
+            this.role = role;
+            this.status = status;
+            this.created = created;
+            this.modified = created;
+        }
+
+        boolean deleted() { return "Deleted".equalsIgnoreCase(this.status); }
+    }
+
+
+    /***
+     * Generate population
+     * @param coId The collaboration the VO belongs to
+     * @param vo The VO
+     * @param group The group
+     * @param settings Size and shape of the population
+     */
+    public SimulatedCheckinPopulation(String coId, String vo, String group, Settings settings) {
+        this.coId = coId;
+        this.vo = vo;
+        this.group = group;
+        this.voId = 100;
+        this.groupId = 101;
+        this.activeMembers = settings.members;
+        this.recordsByGroup.put(vo, new ArrayList<>());
+        this.recordsByGroup.put(group, new ArrayList<>());
+
+        final var random = new Random(settings.seed);
+        final var formerMembers = (int)(settings.members * settings.deletedRatio);
+        final var since = Instant.parse("2023-01-01T00:00:00Z").toEpochMilli();
+        final var year = 365L * 24 * 3600 * 1000;
+
+        for(int person = 0; person < settings.members + formerMembers; person++) {
+            var userId = String.format("%016x%016x%016x%016x@egi.eu",
+                    random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+            this.userIds.add(userId);
+            this.persons.put(userId, person);
+
+            final var created = since + (long)(random.nextDouble() * year);
+            if(person >= settings.members) {
+                // Former VO member
+                addRecord(person, vo, null, "Deleted", created);
+                continue;
+            }
+
+            addRecord(person, vo, null, "Active", created);
+            if(random.nextDouble() >= settings.groupShare)
+                continue;
+
+            // Group member
+            if(random.nextDouble() < settings.deletedRatio) {
+                // Former group member
+                addRecord(person, group, null, "Deleted", created);
+                continue;
+            }
+
+            addRecord(person, group, null, "Active", created);
+
+            // Roles, the fraction of the density is the chance of holding one more role
+            var roles = new ArrayList<>(ROLES);
+            Collections.shuffle(roles, random);
+            int count = (int)settings.roleDensity + (random.nextDouble() < settings.roleDensity % 1 ? 1 : 0);
+            for(int r = 0; r < Math.min(count, roles.size()); r++) {
+                var deleted = random.nextDouble() < settings.deletedRatio;
+                addRecord(person, group, roles.get(r), deleted ? "Deleted" : "Active", created);
+            }
+        }
+    }
+
+    public String coId() { return this.coId; }
+    public String vo() { return this.vo; }
+    public String group() { return this.group; }
+
+    /***
+     * Get the number of active VO members
+     */
+    public int members() { return this.activeMembers; }
+
+    /***
+     * Get the Check-in user Id of a person
+     * @param person Index of the person, the active VO members come first
+     * @return Check-in user Id
+     */
+    public String userId(int person) { return this.userIds.get(person); }
+
+    /***
+     * Get the number of records
+     * @param groupName The group or VO
+     * @return Number of records, including deleted ones
+     */
+    public synchronized int recordCount(String groupName) {
+        var groupRecords = this.recordsByGroup.get(groupName);
+        return null != groupRecords ? groupRecords.size() : 0;
+    }
+
+    /***
+     * List the active members of the group
+     * @return Check-in user Ids
+     */
+    public synchronized List<String> groupMembers() {
+        return this.recordsByGroup.get(this.group).stream()
+                .filter(record -> null == record.role && !record.deleted() && record.person < this.activeMembers)
+                .map(record -> userId(record.person))
+                .distinct()
+                .toList();
+    }
+
+    /***
+     * List the role records of a group or VO
+     * @param coId The collaboration
+     * @param groupName The group or VO
+     * @return JSON as returned by Check-in, null if the group is not known
+     */
+    public synchronized byte[] listRecords(String coId, String groupName) {
+        if(!this.coId.equals(coId) || !this.recordsByGroup.containsKey(groupName))
+            return null;
+
+        return this.rendered.computeIfAbsent(groupName, this::render);
+    }
+
+    /***
+     * List the groups of the collaboration
+     * @return JSON as returned by Check-in
+     */
+    public byte[] listGroups() {
+        var out = new ByteArrayOutputStream();
+        try(var gen = json.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("ResponseType", "Cous");
+            gen.writeStringField("Version", "1.0");
+            gen.writeArrayFieldStart("Cous");
+            writeGroup(gen, this.voId, 0, this.vo);
+            writeGroup(gen, this.groupId, this.voId, this.group);
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+    /***
+     * Get the user information of a person, with the entitlements of the records held
+     * @param person Index of the person
+     * @return User information
+     */
+    public synchronized CheckinUser userInfo(int person) {
+        var user = new CheckinUser(userId(person))
+                .setFirstName("Given" + person)
+                .setLastName("Family" + person)
+                .setEmail("user" + person + "@example.org");
+        user.emailIsVerified = true;
+        user.addAssurance("https://aai.egi.eu/LoA#Substantial");
+
+        final var voPrefix = ENTITLEMENT_PREFIX + this.vo.toLowerCase() + ":";
+        for(var record : this.recordsByPerson.getOrDefault(person, List.of())) {
+            if(record.deleted())
+                continue;
+
+            var role = null != record.role ? record.role : "member";
+            if(record.groupName.equals(this.vo))
+                user.addEntitlement(voPrefix + "role=" + role + ENTITLEMENT_SUFFIX);
+            else
+                user.addEntitlement(voPrefix + record.groupName + ":role=" + role + ENTITLEMENT_SUFFIX);
+        }
+
+        return user;
+    }
+
+    /***
+     * Add a role record, from a request sent to Check-in
+     * @param request The body of the request, see {@link egi.checkin.model.CheckinRoleList}
+     * @return Id of the new record
+     * @throws IllegalArgumentException if the request is invalid, the message is "field:error"
+     */
+    public synchronized long addRecord(JsonNode request) {
+        var record = request.path("CoPersonRoles").path(0);
+        var userId = record.path("Person").path("Identifier").path("Id").asText(null);
+        var groupName = record.path("Cou").path("Name").asText(null);
+        var title = record.path("Title").asText(null);
+        var status = record.path("Status").asText("Active");
+
+        var person = null != userId ? this.persons.get(userId) : null;
+        if(null == person)
+            throw new IllegalArgumentException("Person:Unknown person");
+        if(null == groupName || !this.recordsByGroup.containsKey(groupName))
+            throw new IllegalArgumentException("Cou:Unknown COU");
+
+        return addRecord(person, groupName, null != title && !title.isBlank() ? title.toLowerCase() : null,
+                         status, Instant.now().toEpochMilli()).id;
+    }
+
+    /***
+     * Update the status of a role record, from a request sent to Check-in
+     * @param recordId The record to update
+     * @param request The body of the request, see {@link egi.checkin.model.CheckinRoleList}
+     * @return True if updated, false if the record does not exist
+     */
+    public synchronized boolean updateRecord(long recordId, JsonNode request) {
+        var record = this.records.get(recordId);
+        if(null == record)
+            return false;
+
+        record.status = request.path("CoPersonRoles").path(0).path("Status").asText(record.status);
+        record.modified = Instant.now().toEpochMilli();
+        record.revision++;
+        this.rendered.remove(record.groupName);
+        return true;
+    }
+
+    /***
+     * Store a new record
+     */
+    private Record addRecord(int person, String groupName, String role, String status, long created) {
+        var record = new Record(this.nextRecordId++, person, groupName, role, status, created);
+        this.records.put(record.id, record);
+        this.recordsByGroup.get(groupName).add(record);
+        this.recordsByPerson.computeIfAbsent(person, p -> new ArrayList<>()).add(record);
+        this.rendered.remove(groupName);
+        return record;
+    }
+
+    /***
+     * Render the records of a group in the format used by Check-in
+     */
+    private byte[] render(String groupName) {
+        final var groupRecords = this.recordsByGroup.get(groupName);
+        final var couId = groupName.equals(this.vo) ? this.voId : this.groupId;
+        var out = new ByteArrayOutputStream(groupRecords.size() * 512);
+        try(var gen = json.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("ResponseType", "CoPersonRoles");
+            gen.writeStringField("Version", "1.0");
+            gen.writeArrayFieldStart("CoPersonRoles");
+            for(var record : groupRecords)
+                writeRecord(gen, record, couId);
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toByteArray();
+    }
+
+    /***
+     * Render a record
+     */
+    private void writeRecord(JsonGenerator gen, Record record, long couId) throws IOException {
+        final var person = record.person;
+        gen.writeStartObject();
+        gen.writeStringField("Version", "1.0");
+        gen.writeNumberField("Id", record.id);
+
+        gen.writeObjectFieldStart("Person");
+        gen.writeStringField("Type", "CO");
+        gen.writeNumberField("Id", 1000 + person);
+        gen.writeArrayFieldStart("EmailAddress");
+        gen.writeStartObject();
+        gen.writeStringField("type", "official");
+        gen.writeStringField("mail", "user" + person + "@example.org");
+        gen.writeBooleanField("verified", true);
+        gen.writeEndObject();
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("Identifier");
+        gen.writeStartObject();
+        gen.writeStringField("type", "epuid");
+        gen.writeStringField("identifier", this.userIds.get(person));
+        gen.writeEndObject();
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("Name");
+        gen.writeStartObject();
+        gen.writeStringField("type", "official");
+        gen.writeStringField("given", "Given" + person);
+        gen.writeStringField("family", "Family" + person);
+        gen.writeEndObject();
+        gen.writeEndArray();
+        gen.writeEndObject();
+
+        gen.writeNumberField("CouId", couId);
+        gen.writeStringField("Affiliation", "member");
+        if(null != record.role)
+            gen.writeStringField("Title", record.role);
+        gen.writeStringField("Status", record.status);
+        gen.writeStringField("Created", DATE_FORMAT.format(Instant.ofEpochMilli(record.created)));
+        gen.writeStringField("Modified", DATE_FORMAT.format(Instant.ofEpochMilli(record.modified)));
+        gen.writeNumberField("Revision", record.revision);
+        gen.writeBooleanField("Deleted", record.deleted());
+        gen.writeEndObject();
+    }
+
+    /***
+     * Render a group
+     */
+    private void writeGroup(JsonGenerator gen, long id, long parentId, String name) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("Id", id);
+        if(0 != parentId)
+            gen.writeNumberField("ParentId", parentId);
+        gen.writeStringField("CoId", this.coId);
+        gen.writeStringField("Name", name);
+        gen.writeEndObject();
+    }
+}
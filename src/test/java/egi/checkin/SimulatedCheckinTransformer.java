@@ -0,0 +1,242 @@
+package egi.checkin;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+
+import jakarta.ws.rs.core.Response.Status;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+
+/***
+ * Answers the requests sent to the simulated Check-in from its population, see {@link CheckinService}.
+ * Applied to all requests, each one is first delayed per the configured latency, then it may fail
+ * with a 503 or a dropped connection per the configured rates, and otherwise gets answered.
+ */
+public class SimulatedCheckinTransformer extends ResponseDefinitionTransformer {
+
+    public static final String NAME = "simulated-checkin";
+
+    // Endpoints, used to count requests
+    public static final String USER_INFO = "userInfo";
+    public static final String LIST_GROUPS = "listGroups";
+    public static final String LIST_MEMBERS = "listMembers";
+    public static final String ADD_ROLE = "addRole";
+    public static final String UPDATE_ROLE = "updateRole";
+
+    private static final String PATH_USER_INFO = "/auth/realms/egi/protocol/openid-connect/userinfo";
+    private static final String PATH_LIST_GROUPS = "/registry/cous.json";
+    private static final String PATH_ADD_ROLE = "/api/v2/VoMembers.json";
+    private static final Pattern PATH_LIST_MEMBERS = Pattern.compile("^/api/v2/VoMembers/co/([^/]+)/cou/([^/]+)\\.json$");
+    private static final Pattern PATH_UPDATE_ROLE = Pattern.compile("^/api/v2/VoMembers/(\\d+)\\.json$");
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final SimulatedCheckinPopulation population;
+    private final UnaryOperator<ResponseDefinitionBuilder> latency;
+    private final double errorRate;
+    private final double faultRate;
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+
+
+    /***
+     * Construct
+     * @param population The membership to serve
+     * @param latency Latency to add to all responses, see {@link #latencyOf(String)}
+     * @param errorRate Share of the requests to answer with 503 Service Unavailable
+     * @param faultRate Share of the requests to answer by dropping the connection
+     */
+    public SimulatedCheckinTransformer(SimulatedCheckinPopulation population, String latency,
+                                       double errorRate, double faultRate) {
+        this.population = population;
+        this.latency = latencyOf(latency);
+        this.errorRate = errorRate;
+        this.faultRate = faultRate;
+    }
+
+    @Override
+    public String getName() { return NAME; }
+
+    @Override
+    public boolean applyGlobally() { return true; }
+
+    /***
+     * Get the number of requests received by an endpoint
+     * @param endpoint The endpoint, see the constants of this class
+     * @return Number of requests, including the ones that were failed on purpose
+     */
+    public long requestCount(String endpoint) {
+        var count = this.requests.get(endpoint);
+        return null != count ? count.get() : 0;
+    }
+
+    /***
+     * Answer a request
+     */
+    @Override
+    public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition,
+                                        FileSource files, Parameters parameters) {
+        final var url = request.getUrl();
+        final var query = url.indexOf('?');
+        final var path = query >= 0 ? url.substring(0, query) : url;
+        final var method = request.getMethod();
+
+        if(RequestMethod.GET.equals(method) && path.equals(PATH_USER_INFO))
+            return answer(USER_INFO, () -> userInfo(request));
+
+        if(RequestMethod.GET.equals(method) && path.equals(PATH_LIST_GROUPS))
+            return answer(LIST_GROUPS, () -> json(Status.OK, this.population.listGroups()));
+
+        if(RequestMethod.POST.equals(method) && path.equals(PATH_ADD_ROLE))
+            return answer(ADD_ROLE, () -> addRole(request));
+
+        var matcher = PATH_LIST_MEMBERS.matcher(path);
+        if(RequestMethod.GET.equals(method) && matcher.matches()) {
+            final var coId = matcher.group(1);
+            final var groupName = matcher.group(2);
+            return answer(LIST_MEMBERS, () -> {
+                var body = this.population.listRecords(coId, groupName);
+                return null != body ? json(Status.OK, body) : aResponse().withStatus(Status.NOT_FOUND.getStatusCode());
+            });
+        }
+
+        matcher = PATH_UPDATE_ROLE.matcher(path);
+        if(RequestMethod.PUT.equals(method) && matcher.matches()) {
+            final var recordId = Long.parseLong(matcher.group(1));
+            return answer(UPDATE_ROLE, () -> updateRole(recordId, request));
+        }
+
+        return aResponse().withStatus(Status.NOT_FOUND.getStatusCode()).build();
+    }
+
+    /***
+     * Count the request, then fail it or answer it, after the configured latency
+     */
+    private ResponseDefinition answer(String endpoint, Supplier<ResponseDefinitionBuilder> response) {
+        this.requests.computeIfAbsent(endpoint, e -> new AtomicLong()).incrementAndGet();
+
+        final var random = ThreadLocalRandom.current();
+        ResponseDefinitionBuilder builder;
+        if(random.nextDouble() < this.faultRate)
+            builder = aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER);
+        else if(random.nextDouble() < this.errorRate)
+            builder = aResponse().withStatus(Status.SERVICE_UNAVAILABLE.getStatusCode());
+        else
+            builder = response.get();
+
+        return this.latency.apply(builder).build();
+    }
+
+    /***
+     * Get the user information of the member the access token belongs to.
+     * Any token is accepted, each one always maps to the same VO member.
+     */
+    private ResponseDefinitionBuilder userInfo(Request request) {
+        var token = request.getHeader("Authorization");
+        if(null == token || token.isBlank())
+            return aResponse().withStatus(Status.UNAUTHORIZED.getStatusCode());
+
+        var person = Math.floorMod(token.hashCode(), this.population.members());
+        return json(Status.OK, this.population.userInfo(person).toJsonString());
+    }
+
+    /***
+     * Add a role record
+     */
+    private ResponseDefinitionBuilder addRole(Request request) {
+        try {
+            var recordId = this.population.addRecord(mapper.readTree(request.getBody()));
+            return json(Status.CREATED, String.format(
+                    "{\"ResponseType\":\"NewObject\",\"Version\":\"1.0\",\"ObjectType\":\"CoPersonRole\",\"Id\":\"%d\"}",
+                    recordId));
+        }
+        catch(IllegalArgumentException e) {
+            // Same shape as the validation errors returned by Check-in
+            var field = e.getMessage().split(":", 2);
+            return json(Status.BAD_REQUEST, String.format(
+                    "{\"ResponseType\":\"ErrorResponse\",\"Version\":\"1.0\",\"Id\":\"\",\"InvalidFields\":{\"%s\":[\"%s\"]}}",
+                    field[0], field.length > 1 ? field[1] : ""));
+        }
+        catch(IOException e) {
+            return aResponse().withStatus(Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    /***
+     * Update a role record
+     */
+    private ResponseDefinitionBuilder updateRole(long recordId, Request request) {
+        try {
+            return this.population.updateRecord(recordId, mapper.readTree(request.getBody())) ?
+                    aResponse().withStatus(Status.OK.getStatusCode()) :
+                    aResponse().withStatus(Status.NOT_FOUND.getStatusCode());
+        }
+        catch(IOException e) {
+            return aResponse().withStatus(Status.BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    private static ResponseDefinitionBuilder json(Status status, String body) {
+        return aResponse()
+                .withStatus(status.getStatusCode())
+                .withHeader("Content-Type", "application/json")
+                .withBody(body);
+    }
+
+    private static ResponseDefinitionBuilder json(Status status, byte[] body) {
+        return aResponse()
+                .withStatus(status.getStatusCode())
+                .withHeader("Content-Type", "application/json")
+                .withBody(body);
+    }
+
+    /***
+     * Parse latency distribution
+     * @param latency One of:
+     *                - none
+     *                - fixed:MS
+     *                - uniform:MIN-MAX, in milliseconds
+     *                - lognormal:MEDIAN,SIGMA, median in milliseconds
+     * @return Function that adds the latency to a response
+     */
+    public static UnaryOperator<ResponseDefinitionBuilder> latencyOf(String latency) {
+        if(null == latency || latency.isBlank() || latency.equalsIgnoreCase("none"))
+            return UnaryOperator.identity();
+
+        final var parts = latency.split(":", 2);
+        final var args = parts.length > 1 ? parts[1].split("[-,]") : new String[0];
+        switch(parts[0].toLowerCase()) {
+            case "fixed":
+                final var delay = Integer.parseInt(args[0].trim());
+                return builder -> builder.withFixedDelay(delay);
+
+            case "uniform":
+                final var lower = Integer.parseInt(args[0].trim());
+                final var upper = Integer.parseInt(args[1].trim());
+                return builder -> builder.withUniformRandomDelay(lower, upper);
+
+            case "lognormal":
+                final var median = Double.parseDouble(args[0].trim());
+                final var sigma = Double.parseDouble(args[1].trim());
+                return builder -> builder.withLogNormalRandomDelay(median, sigma);
+
+            default:
+                throw new IllegalArgumentException("Unknown latency distribution " + latency);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package egi.checkin;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import egi.eu.ActionException;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.smallrye.mutiny.subscription.UniEmitter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class SlmCheckinResilienceTest {
+
+    private static final int CIRCUIT_FAILURES = 2;
+    private static final int CIRCUIT_OPEN_FOR = 200;    // milliseconds
+
+    private CheckinResilience resilience;
+    private AtomicInteger calls;
+
+
+    /***
+     * Build the configuration of the tests, only the settings used by the resilience
+     */
+    private static CheckinConfig config() {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("timeouts", Map.of());
+        settings.put("readRetries", 0);
+        settings.put("readRetryBackoff", 10);
+        settings.put("readRetryMaxBackoff", 10);
+        settings.put("circuitFailures", CIRCUIT_FAILURES);
+        settings.put("circuitOpenFor", CIRCUIT_OPEN_FOR);
+        settings.put("maxConcurrentWrites", 1);
+        settings.put("maxInFlight", Map.of(CheckinResilience.LIST_MEMBERS, 1));
+        settings.put("maxQueued", 0);
+
+        return (CheckinConfig)Proxy.newProxyInstance(CheckinConfig.class.getClassLoader(),
+                new Class<?>[] { CheckinConfig.class }, (proxy, method, args) -> {
+                    if(!settings.containsKey(method.getName()))
+                        throw new UnsupportedOperationException(method.getName());
+                    return settings.get(method.getName());
+                });
+    }
+
+    @BeforeEach
+    public void setup() {
+        this.resilience = new CheckinResilience(config());
+        this.calls = new AtomicInteger();
+    }
+
+    /***
+     * Make a read that fails as if Check-in was down
+     */
+    private Throwable failingRead() {
+        return this.resilience.read(CheckinResilience.USER_INFO, () -> {
+                    this.calls.incrementAndGet();
+                    return Uni.createFrom().<String>failure(new RuntimeException("Connection refused"));
+                })
+                .subscribe().withSubscriber(UniAssertSubscriber.create())
+                .assertFailed()
+                .getFailure();
+    }
+
+    /***
+     * Make a read that succeeds
+     */
+    private UniAssertSubscriber<String> read(String endpoint) {
+        return this.resilience.read(endpoint, () -> {
+                    this.calls.incrementAndGet();
+                    return Uni.createFrom().item("ok");
+                })
+                .subscribe().withSubscriber(UniAssertSubscriber.create());
+    }
+
+    /***
+     * Start a call that only completes when its emitter is completed
+     */
+    private UniAssertSubscriber<String> pendingRead(String endpoint, AtomicReference<UniEmitter<? super String>> emitter) {
+        return this.resilience.read(endpoint, () -> {
+                    this.calls.incrementAndGet();
+                    return Uni.createFrom().<String>emitter(emitter::set);
+                })
+                .subscribe().withSubscriber(UniAssertSubscriber.create());
+    }
+
+    private void openCircuit() {
+        for(int i = 0; i < CIRCUIT_FAILURES; i++)
+            failingRead();
+        assertEquals(2, this.resilience.state());
+    }
+
+    private static void waitForHalfOpen() throws InterruptedException {
+        Thread.sleep(CIRCUIT_OPEN_FOR + 50);
+    }
+
+    private static String errorId(Throwable failure) {
+        assertInstanceOf(ActionException.class, failure);
+        return ((ActionException)failure).id();
+    }
+
+    @Test
+    @DisplayName("Circuit opens after consecutive failures and fails fast")
+    public void testOpen() {
+        assertEquals(0, this.resilience.state());
+        openCircuit();
+
+        final var before = this.calls.get();
+        var failure = read(CheckinResilience.USER_INFO).assertFailed().getFailure();
+        assertEquals("unavailable", errorId(failure));
+        assertEquals(before, this.calls.get());
+    }
+
+    @Test
+    @DisplayName("Circuit lets one trial call through when half-open")
+    public void testHalfOpen() throws InterruptedException {
+        openCircuit();
+        waitForHalfOpen();
+        assertEquals(1, this.resilience.state());
+
+        // The trial call is let through, others fail fast while it is in progress
+        var emitter = new AtomicReference<UniEmitter<? super String>>();
+        var trial = pendingRead(CheckinResilience.USER_INFO, emitter);
+        assertNotNull(emitter.get());
+
+        var failure = read(CheckinResilience.USER_INFO).assertFailed().getFailure();
+        assertEquals("unavailable", errorId(failure));
+
+        emitter.get().complete("ok");
+        trial.assertItem("ok");
+    }
+
+    @Test
+    @DisplayName("Circuit closes when the trial call succeeds")
+    public void testClose() throws InterruptedException {
+        openCircuit();
+        waitForHalfOpen();
+
+        read(CheckinResilience.USER_INFO).assertItem("ok");
+        assertEquals(0, this.resilience.state());
+        read(CheckinResilience.USER_INFO).assertItem("ok");
+    }
+
+    @Test
+    @DisplayName("Circuit opens again when the trial call fails")
+    public void testReopen() throws InterruptedException {
+        openCircuit();
+        waitForHalfOpen();
+
+        failingRead();
+        assertEquals(2, this.resilience.state());
+        assertEquals("unavailable", errorId(read(CheckinResilience.USER_INFO).assertFailed().getFailure()));
+    }
+
+    @Test
+    @DisplayName("Queue-full rejections do not reset the consecutive failures")
+    public void testQueueFullKeepsFailures() {
+        var emitter = new AtomicReference<UniEmitter<? super String>>();
+        var pending = pendingRead(CheckinResilience.LIST_MEMBERS, emitter);
+
+        failingRead();
+
+        // Rejected locally, Check-in did not answer
+        var failure = read(CheckinResilience.LIST_MEMBERS).assertFailed().getFailure();
+        assertEquals("tooManyRequests", errorId(failure));
+        assertEquals(0, this.resilience.state());
+
+        // Still counts as the second consecutive failure
+        failingRead();
+        assertEquals(2, this.resilience.state());
+
+        emitter.get().complete("ok");
+        pending.assertItem("ok");
+    }
+
+    @Test
+    @DisplayName("Queue-full rejection while the circuit is open leaves it open")
+    public void testQueueFullWhileOpen() throws InterruptedException {
+        // Hold the only slot of the endpoint
+        var emitter = new AtomicReference<UniEmitter<? super String>>();
+        var pending = pendingRead(CheckinResilience.LIST_MEMBERS, emitter);
+
+        openCircuit();
+        waitForHalfOpen();
+
+        // The trial call is rejected by the full queue, this must not close the circuit
+        var failure = read(CheckinResilience.LIST_MEMBERS).assertFailed().getFailure();
+        assertEquals("tooManyRequests", errorId(failure));
+        assertEquals(1, this.resilience.state());
+
+        // Another call can still be the trial
+        failingRead();
+        assertEquals(2, this.resilience.state());
+
+        emitter.get().complete("ok");
+        pending.assertItem("ok");
+    }
+
+    @Test
+    @DisplayName("Write bulkhead rejection while the circuit is open leaves it open")
+    public void testBulkheadFullWhileOpen() throws InterruptedException {
+        // Hold the only write permit
+        var emitter = new AtomicReference<UniEmitter<? super String>>();
+        var pending = this.resilience.write(CheckinResilience.ADD_ROLE, () -> Uni.createFrom().<String>emitter(emitter::set))
+                .subscribe().withSubscriber(UniAssertSubscriber.create());
+
+        openCircuit();
+        waitForHalfOpen();
+
+        var failure = this.resilience.write(CheckinResilience.ADD_ROLE, () -> Uni.createFrom().item("ok"))
+                .subscribe().withSubscriber(UniAssertSubscriber.create())
+                .assertFailed().getFailure();
+        assertEquals("tooManyRequests", errorId(failure));
+        assertEquals(1, this.resilience.state());
+
+        // The rejected write did not take the trial call
+        read(CheckinResilience.USER_INFO).assertItem("ok");
+        assertEquals(0, this.resilience.state());
+
+        emitter.get().complete("ok");
+        pending.assertItem("ok");
+    }
+}
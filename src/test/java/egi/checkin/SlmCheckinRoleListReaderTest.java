@@ -0,0 +1,212 @@
+package egi.checkin;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.TimeZone;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+import egi.checkin.model.CheckinUser;
+
+
+public class SlmCheckinRoleListReaderTest {
+
+    // Configured like the mapper of Quarkus, which ignores unknown properties,
+    // and accepting the single identifier Check-in sends as an object instead of an array
+    private final ObjectMapper mapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+
+
+    private static byte[] fixture(String name) throws IOException {
+        try(var in = SlmCheckinRoleListReaderTest.class.getClassLoader().getResourceAsStream("checkin/__files/" + name)) {
+            assertNotNull(in, "Missing fixture " + name);
+            return in.readAllBytes();
+        }
+    }
+
+    private static CheckinRoleList read(byte[] json) throws IOException {
+        return CheckinRoleListReader.read(new ByteArrayInputStream(json));
+    }
+
+    private static CheckinRoleList read(String json) throws IOException {
+        return read(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /***
+     * Check that the reader got the same fields as Jackson, except the details of the user
+     * that the reader prunes to the ones used by {@link CheckinUser}
+     */
+    private static void assertSameRecord(CheckinRole expected, CheckinRole actual) {
+        final var id = "Record " + expected.roleId;
+        assertEquals(expected.roleId, actual.roleId, id);
+        assertEquals(expected.groupId, actual.groupId, id);
+        assertEquals(expected.affiliation, actual.affiliation, id);
+        assertEquals(expected.title, actual.title, id);
+        assertEquals(expected.status, actual.status, id);
+        assertEquals(expected.from, actual.from, id);
+        assertEquals(expected.until, actual.until, id);
+        assertEquals(expected.modified, actual.modified, id);
+        assertEquals(expected.revision, actual.revision, id);
+        assertEquals(expected.deleted, actual.deleted, id);
+
+        if(null == expected.person) {
+            assertNull(actual.person, id);
+            return;
+        }
+
+        assertNotNull(actual.person, id);
+        assertEquals(expected.person.Id, actual.person.Id, id);
+        assertEquals(expected.person.checkinUserId(), actual.person.checkinUserId(), id);
+
+        var expectedUser = new CheckinUser(expected);
+        var actualUser = new CheckinUser(actual);
+        assertEquals(expectedUser.checkinUserId, actualUser.checkinUserId, id);
+        assertEquals(expectedUser.firstName, actualUser.firstName, id);
+        assertEquals(expectedUser.lastName, actualUser.lastName, id);
+        assertEquals(expectedUser.fullName, actualUser.fullName, id);
+        assertEquals(expectedUser.email, actualUser.email, id);
+        assertEquals(expectedUser.emailIsVerified, actualUser.emailIsVerified, id);
+    }
+
+    private void assertSameAsJackson(byte[] json) throws IOException {
+        var expected = this.mapper.readValue(json, CheckinRoleList.class);
+        var actual = read(json);
+
+        assertEquals(expected.kind, actual.kind);
+        assertEquals(expected.requestType, actual.requestType);
+        assertEquals(expected.version, actual.version);
+        assertEquals(expected.records.size(), actual.records.size());
+        for(int i = 0; i < expected.records.size(); i++)
+            assertSameRecord(expected.records.get(i), actual.records.get(i));
+    }
+
+    @Test
+    @DisplayName("VO members are read like Jackson does")
+    public void testVoMembers() throws IOException {
+        assertSameAsJackson(fixture("listVoMembers.json"));
+    }
+
+    @Test
+    @DisplayName("Group members are read like Jackson does")
+    public void testGroupMembers() throws IOException {
+        assertSameAsJackson(fixture("listGroupMembers.json"));
+    }
+
+    @Test
+    @DisplayName("Simulated records are read like Jackson does")
+    public void testSimulated() throws IOException {
+        var population = new SimulatedCheckinPopulation("2", MembershipReference.VO, MembershipReference.GROUP,
+                                                        new SimulatedCheckinPopulation.Settings());
+        assertSameAsJackson(population.listRecords("2", MembershipReference.GROUP));
+    }
+
+    @Test
+    @DisplayName("Dates are read as UTC, regardless of the default time zone")
+    public void testUtcDates() throws IOException {
+        final var json = """
+                { "CoPersonRoles": [ { "Id": 1, "ValidFrom": "2024-01-02 03:04:05",
+                                       "ValidThrough": "2024-07-01 23:59:59", "Modified": "not a date" } ] }
+                """;
+
+        final var timeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Amsterdam"));
+            var record = read(json).records.get(0);
+            assertEquals(Date.from(Instant.parse("2024-01-02T03:04:05Z")), record.from);
+            assertEquals(Date.from(Instant.parse("2024-07-01T23:59:59Z")), record.until);
+
+            // Invalid dates are ignored
+            assertNull(record.modified);
+
+            var expected = this.mapper.readValue(json.replace("not a date", "2024-01-01 00:00:00"), CheckinRoleList.class);
+            assertEquals(expected.records.get(0).from, record.from);
+            assertEquals(expected.records.get(0).until, record.until);
+        }
+        finally {
+            TimeZone.setDefault(timeZone);
+        }
+    }
+
+    @Test
+    @DisplayName("A single identifier can be an object")
+    public void testSingleIdentifier() throws IOException {
+        final var json = """
+                { "CoPersonRoles": [
+                    { "Id": 1, "Person": { "Id": 7, "Identifier": { "type": "epuid", "identifier": "single@egi.eu" },
+                                           "Name": { "given": "Single", "family": "Name" },
+                                           "EmailAddress": { "mail": "single@example.org", "verified": true } } },
+                    { "Id": 2, "Person": { "Identifier": [ { "type": "other", "identifier": "x" },
+                                                           { "type": "epuid", "identifier": "second@egi.eu" },
+                                                           { "type": "epuid", "identifier": "third@egi.eu" } ],
+                                           "Name": [ { "given": "Only" }, { "given": "Full", "family": "Name" } ],
+                                           "EmailAddress": [ { "mail": "" }, { "mail": "second@example.org" } ] } }
+                ] }
+                """;
+
+        var records = read(json).records;
+        assertEquals("single@egi.eu", records.get(0).person.checkinUserId());
+        assertEquals("second@egi.eu", records.get(1).person.checkinUserId());
+        assertEquals(1, records.get(1).person.ids.size());
+        assertEquals("Full", records.get(1).person.names.get(0).given);
+        assertEquals("second@example.org", records.get(1).person.emails.get(0).mail);
+
+        assertSameAsJackson(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Missing Deleted flag is null")
+    public void testMissingDeleted() throws IOException {
+        final var json = """
+                { "CoPersonRoles": [ { "Id": 1, "Status": "Active" },
+                                     { "Id": 2, "Status": "Deleted", "Deleted": true },
+                                     { "Id": 3, "Status": "Active", "Deleted": null } ] }
+                """;
+
+        var records = read(json).records;
+        assertNull(records.get(0).deleted);
+        assertEquals(Boolean.TRUE, records.get(1).deleted);
+        assertNull(records.get(2).deleted);
+
+        assertSameAsJackson(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Unknown fields are skipped")
+    public void testUnknownFields() throws IOException {
+        final var json = """
+                { "Unknown": { "Nested": [ 1, 2, { "CoPersonRoles": [] } ] },
+                  "ResponseType": "CoPersonRoles",
+                  "CoPersonRoles": [
+                    { "Extra": [ { "Id": 99 } ], "Id": 1, "Cou": { "CoId": "2", "Name": "vo" },
+                      "Person": { "Type": "CO", "Unknown": { "Id": 98 }, "Id": 7,
+                                  "Identifier": [ { "type": "epuid", "identifier": "u@egi.eu", "login": true } ] },
+                      "Title": "process-owner", "Affiliation": "member", "Status": "Active", "Revision": 2 }
+                  ],
+                  "Trailer": "ignored" }
+                """;
+
+        var list = read(json);
+        assertEquals("CoPersonRoles", list.kind);
+        assertEquals(1, list.records.size());
+
+        var record = list.records.get(0);
+        assertEquals(1, record.roleId);
+        assertEquals(7, record.person.Id);
+        assertEquals("u@egi.eu", record.person.checkinUserId());
+        assertEquals("process-owner", record.title);
+        assertEquals(2, record.revision);
+
+        assertSameAsJackson(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
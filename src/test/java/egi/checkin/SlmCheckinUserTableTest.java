@@ -0,0 +1,152 @@
+package egi.checkin;
+
+import static egi.checkin.MembershipReference.GROUP;
+import static egi.checkin.MembershipReference.record;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+import egi.checkin.model.CheckinUser;
+
+
+public class SlmCheckinUserTableTest {
+
+    @Test
+    @DisplayName("Users get consecutive handles")
+    public void testHandles() {
+        var table = new CheckinUserTable();
+        assertEquals(0, table.add("u0@egi.eu", record(1, "u0@egi.eu", "member", "Active", null, null)));
+        assertEquals(1, table.add("u1@egi.eu", record(2, "u1@egi.eu", "member", "Active", null, null)));
+        assertEquals(0, table.add("u0@egi.eu", record(3, "u0@egi.eu", "member", "Active", null, null)));
+        assertEquals(2, table.size());
+
+        assertEquals(1, table.handle("u1@egi.eu"));
+        assertEquals(-1, table.handle("unknown@egi.eu"));
+        assertEquals(-1, table.handle(null));
+        assertEquals("u1@egi.eu", table.checkinUserId(1));
+    }
+
+    @Test
+    @DisplayName("The Id of a user is stored once")
+    public void testInterning() {
+        var table = new CheckinUserTable();
+        final var first = new String("user@egi.eu");
+        final var second = new String("user@egi.eu");
+        assertNotSame(first, second);
+
+        final var handle = table.add(first, record(1, first, "member", "Active", null, null));
+        assertEquals(handle, table.add(second, record(2, second, "member", "Active", null, null)));
+        assertSame(first, table.checkinUserId(handle));
+
+        // Updating the details keeps the stored Id
+        var renamed = record(3, second, "member", "Active", null, null);
+        renamed.person.emails.get(0).mail = "renamed@example.org";
+        table.add(second, renamed);
+        assertSame(first, table.checkinUserId(handle));
+        assertEquals("renamed@example.org", table.user(handle).email);
+    }
+
+    @Test
+    @DisplayName("Copies share the handles but not the details")
+    public void testCopy() {
+        var table = new CheckinUserTable();
+        final var handle = table.add("user@egi.eu", record(1, "user@egi.eu", "member", "Active", null, null));
+
+        // Updating the details in a copy does not change the original
+        var copy = table.copy();
+        var renamed = record(2, new String("user@egi.eu"), "member", "Active", null, null);
+        renamed.person.emails.get(0).mail = "renamed@example.org";
+        assertEquals(handle, copy.add("user@egi.eu", renamed));
+        assertEquals("renamed@example.org", copy.user(handle).email);
+        assertEquals("user@example.org", table.user(handle).email);
+        assertSame(table.checkinUserId(handle), copy.checkinUserId(handle));
+
+        // Users added to a copy are not in the original, nor in other copies of it
+        var other = table.copy();
+        final var added = copy.add("added@egi.eu", record(3, "added@egi.eu", "member", "Active", null, null));
+        assertEquals(-1, table.handle("added@egi.eu"));
+        assertEquals(-1, other.handle("added@egi.eu"));
+
+        // Other copies get the same handle for that user, and their own details
+        final var again = record(4, "added@egi.eu", "member", "Active", null, null);
+        again.person.emails.get(0).mail = "again@example.org";
+        assertEquals(added, other.add("added@egi.eu", again));
+        assertEquals("added@example.org", copy.user(added).email);
+        assertEquals("again@example.org", other.user(added).email);
+        assertSame(copy.checkinUserId(added), other.checkinUserId(added));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    @DisplayName("Users are built from the first complete name and first email")
+    public void testUser() {
+        var record = record(1, "user@egi.eu", "member", "Active", null, null);
+        var incomplete = new CheckinRole.Person.Name();
+        incomplete.given = "Only";
+        record.person.names.add(0, incomplete);
+        var empty = new CheckinRole.Person.Email();
+        empty.mail = "";
+        record.person.emails.add(0, empty);
+        record.person.emails.get(1).verified = false;
+
+        var table = new CheckinUserTable();
+        var user = table.user(table.add("user@egi.eu", record));
+        var expected = new CheckinUser(record);
+        assertEquals("user@egi.eu", user.checkinUserId);
+        assertEquals("Given", user.firstName);
+        assertEquals("user@egi.eu", user.lastName);
+        assertEquals("Given user@egi.eu", user.fullName);
+        assertEquals("user@example.org", user.email);
+        assertFalse(user.emailIsVerified);
+        assertEquals(expected.firstName, user.firstName);
+        assertEquals(expected.lastName, user.lastName);
+        assertEquals(expected.email, user.email);
+        assertNull(user.roles);
+
+        // Each call builds a new user
+        assertNotSame(user, table.user(0));
+    }
+
+    @Test
+    @DisplayName("The table grows beyond its initial capacity")
+    public void testGrowth() {
+        var table = new CheckinUserTable();
+        final var empty = table.estimatedSize();
+        for(int i = 0; i < 1000; i++) {
+            final var checkinUserId = "u" + i + "@egi.eu";
+            assertEquals(i, table.add(checkinUserId, record(i, checkinUserId, "member", "Active", null, null)));
+        }
+
+        assertEquals(1000, table.size());
+        for(int i = 0; i < 1000; i++)
+            assertEquals("u" + i + "@egi.eu", table.checkinUserId(table.handle("u" + i + "@egi.eu")));
+        assertTrue(table.estimatedSize() > empty);
+    }
+
+    @Test
+    @DisplayName("Snapshots built from each other share the users")
+    public void testSharedBySnapshots() {
+        var population = MembershipReference.population(100);
+        var snapshot = new MembershipSnapshot(population[0], GROUP, population[1]);
+
+        var voRecords = new CheckinRoleList(population[0]);
+        voRecords.records.add(record(900001, "newcomer@egi.eu", "member", "Active", null, null));
+        var updated = snapshot.update(voRecords, GROUP, population[1]);
+
+        List<String> ids = new ArrayList<>();
+        for(var user : snapshot.voMembers())
+            ids.add(user.checkinUserId);
+
+        var updatedUsers = updated.voMembers();
+        assertEquals(ids.size() + 1, updatedUsers.size());
+        for(int i = 0; i < ids.size(); i++)
+            assertSame(ids.get(i), updatedUsers.get(i).checkinUserId);
+        assertEquals("newcomer@egi.eu", updatedUsers.get(ids.size()).checkinUserId);
+    }
+}
@@ -0,0 +1,124 @@
+package egi.checkin;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+
+
+public class SlmMembershipChangesTest {
+
+    private static final String GROUP = "vo.tools.egi.eu";
+    private static final Date MODIFIED = new Date(1_700_000_000_000L);
+
+
+    /***
+     * Build a membership record of a user
+     */
+    private static CheckinRole record(long roleId, String checkinUserId, String email) {
+        var record = new CheckinRole();
+        record.roleId = roleId;
+        record.affiliation = "member";
+        record.status = "Active";
+        record.deleted = false;
+        record.role = "member";
+        record.revision = 1;
+        record.modified = MODIFIED;
+
+        var id = new CheckinRole.Person.Identifier();
+        id.type = "epuid";
+        id.identifier = checkinUserId;
+        record.person = new CheckinRole.Person();
+        record.person.ids = new ArrayList<>(List.of(id));
+
+        var name = new CheckinRole.Person.Name();
+        name.given = "Test";
+        name.family = "User " + roleId;
+        record.person.names = new ArrayList<>(List.of(name));
+
+        var mail = new CheckinRole.Person.Email();
+        mail.type = "official";
+        mail.mail = email;
+        mail.verified = true;
+        record.person.emails = new ArrayList<>(List.of(mail));
+
+        return record;
+    }
+
+    private static CheckinRoleList list(CheckinRole... records) {
+        var list = new CheckinRoleList();
+        list.records = new ArrayList<>(List.of(records));
+        return list;
+    }
+
+    @Test
+    @DisplayName("Same records in separate lists are not changes")
+    public void testUnchanged() {
+        var previous = list(record(1, "u1@egi.eu", "u1@example.org"), record(2, "u2@egi.eu", "u2@example.org"));
+        var current = list(record(1, "u1@egi.eu", "u1@example.org"), record(2, "u2@egi.eu", "u2@example.org"));
+
+        assertTrue(MembershipChanges.between(GROUP, previous, current).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Changing only the email of a user is a change")
+    public void testEmailChanged() {
+        var previous = list(record(1, "u1@egi.eu", "u1@example.org"), record(2, "u2@egi.eu", "u2@example.org"));
+        var current = list(record(1, "u1@egi.eu", "u1@example.org"), record(2, "u2@egi.eu", "new@example.org"));
+
+        var changes = MembershipChanges.between(GROUP, previous, current);
+        assertEquals(1, changes.changes.size());
+
+        var change = changes.changes.get(0);
+        assertEquals(MembershipChanges.Kind.UPDATED, change.kind);
+        assertEquals(2, change.roleId);
+        assertEquals("u2@egi.eu", change.checkinUserId);
+        assertEquals("new@example.org", change.record.person.emails.get(0).mail);
+        assertEquals(List.of("u2@egi.eu"), List.copyOf(changes.users()));
+    }
+
+    @Test
+    @DisplayName("Changing only the name of a user is a change")
+    public void testNameChanged() {
+        var previous = list(record(1, "u1@egi.eu", "u1@example.org"));
+        var current = list(record(1, "u1@egi.eu", "u1@example.org"));
+        current.records.get(0).person.names.get(0).family = "Renamed";
+
+        var changes = MembershipChanges.between(GROUP, previous, current);
+        assertEquals(1, changes.changes.size());
+        assertEquals(MembershipChanges.Kind.UPDATED, changes.changes.get(0).kind);
+    }
+
+    @Test
+    @DisplayName("Changing only the validity of a record is a change")
+    public void testValidityChanged() {
+        var previous = list(record(1, "u1@egi.eu", "u1@example.org"));
+        var current = list(record(1, "u1@egi.eu", "u1@example.org"));
+        current.records.get(0).until = new Date(MODIFIED.getTime() + 86_400_000L);
+
+        var changes = MembershipChanges.between(GROUP, previous, current);
+        assertEquals(1, changes.changes.size());
+        assertEquals(MembershipChanges.Kind.UPDATED, changes.changes.get(0).kind);
+    }
+
+    @Test
+    @DisplayName("Added and removed records are reported")
+    public void testAddedRemoved() {
+        var previous = list(record(1, "u1@egi.eu", "u1@example.org"), record(2, "u2@egi.eu", "u2@example.org"));
+        var current = list(record(2, "u2@egi.eu", "u2@example.org"), record(3, "u3@egi.eu", "u3@example.org"));
+
+        var changes = MembershipChanges.between(GROUP, previous, current);
+        assertEquals(2, changes.changes.size());
+        assertEquals(MembershipChanges.Kind.ADDED, changes.changes.get(0).kind);
+        assertEquals(3, changes.changes.get(0).roleId);
+        assertEquals(MembershipChanges.Kind.REMOVED, changes.changes.get(1).kind);
+        assertEquals(1, changes.changes.get(1).roleId);
+    }
+}
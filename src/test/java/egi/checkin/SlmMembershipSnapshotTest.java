@@ -0,0 +1,211 @@
+package egi.checkin;
+
+import static egi.checkin.MembershipReference.GROUP;
+import static egi.checkin.MembershipReference.record;
+import static egi.checkin.MembershipReference.with;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+import egi.eu.model.Role;
+
+
+public class SlmMembershipSnapshotTest {
+
+    // Role name fragments (prefixes) and expressions to check the roles with
+    private static final String[] ROLE_NAMES = {
+            "process", Role.SLA_OWNER, "process-(owner|manager)", ".*-owner", "no-such-role" };
+
+    private CheckinRoleList voRecords;
+    private CheckinRoleList groupRecords;
+
+
+    @BeforeEach
+    public void setup() {
+        var population = MembershipReference.population(300);
+        this.voRecords = population[0];
+        this.groupRecords = population[1];
+    }
+
+    /***
+     * Find the first active record of a group member holding a role
+     */
+    private CheckinRole roleRecord() {
+        var reference = new MembershipReference(this.voRecords, this.groupRecords, System.currentTimeMillis());
+        for(var record : this.groupRecords.records)
+            if(record.checkIfRole() && reference.hasRole(record.person.checkinUserId(), record.role))
+                return record;
+
+        fail("No role holder in the population");
+        return null;
+    }
+
+    @Test
+    @DisplayName("Snapshot has the same members and roles as the records")
+    public void testBuild() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+        new MembershipReference(this.voRecords, this.groupRecords, snapshot.asOf()).assertSame(snapshot, ROLE_NAMES);
+
+        assertFalse(snapshot.roles(null).isEmpty());
+        assertTrue(snapshot.builtFrom(this.voRecords, GROUP, this.groupRecords));
+    }
+
+    @Test
+    @DisplayName("Role names are matched as prefixes or as expressions")
+    public void testMatchingRoles() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+
+        for(var role : snapshot.roles("process"))
+            assertTrue(role.role.startsWith("process"));
+        for(var role : snapshot.roles("process-(owner|manager)"))
+            assertTrue(role.role.equals(Role.PROCESS_OWNER) || role.role.equals(Role.PROCESS_MANAGER));
+
+        var all = snapshot.roles(null);
+        assertEquals(all.size(), snapshot.roles("").size());
+        assertEquals(all.size(), snapshot.roles(".*").size());
+        assertTrue(snapshot.roles("no-such-role").isEmpty());
+
+        // Invalid expressions match nothing
+        assertTrue(snapshot.roles("process[").isEmpty());
+        assertTrue(snapshot.usersWithRoles("process[").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Update rebuilds the users whose records changed")
+    public void testUpdate() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+        assertSame(snapshot, snapshot.update(this.voRecords, GROUP, this.groupRecords));
+
+        // Revoke a role
+        final var revoked = roleRecord();
+        var groupRecords = new CheckinRoleList(this.groupRecords);
+        groupRecords.records.remove(revoked);
+
+        // Assign a role to a group member
+        final var holder = revoked.person.checkinUserId();
+        final var assigned = record(900001, holder, Role.CATALOG_OWNER, "Active", null, null);
+        assigned.person = revoked.person;
+        groupRecords.records.add(assigned);
+
+        // Remove a group member from the VO, and change the email of another VO member
+        var voRecords = new CheckinRoleList(this.voRecords);
+        String leaving = null;
+        for(int i = 0; i < voRecords.records.size(); i++) {
+            var record = voRecords.records.get(i);
+            if(!"Active".equals(record.status))
+                continue;
+
+            final var checkinUserId = record.person.checkinUserId();
+            if(null == leaving && !checkinUserId.equals(holder) &&
+               groupRecords.records.stream().anyMatch(r -> r.person.checkinUserId().equals(checkinUserId))) {
+                leaving = checkinUserId;
+                var deleted = new CheckinRole(record);
+                deleted.status = "Deleted";
+                deleted.deleted = true;
+                deleted.revision++;
+                voRecords.records.set(i, deleted);
+            }
+            else if(checkinUserId.equals(holder)) {
+                var renamed = new CheckinRole(record);
+                renamed.person = record(0, checkinUserId, "member", "Active", null, null).person;
+                renamed.person.emails.get(0).mail = "renamed@example.org";
+                voRecords.records.set(i, renamed);
+            }
+        }
+        assertNotNull(leaving);
+
+        final var email = snapshot.voMember(holder).email;
+        assertNotEquals("renamed@example.org", email);
+        var updated = snapshot.update(voRecords, GROUP, groupRecords);
+        assertNotSame(snapshot, updated);
+
+        var reference = new MembershipReference(voRecords, groupRecords, updated.asOf());
+        reference.assertSame(updated, ROLE_NAMES);
+        reference.assertSame(new MembershipSnapshot(voRecords, GROUP, groupRecords), ROLE_NAMES);
+        assertTrue(reference.hasRole(holder, Role.CATALOG_OWNER));
+        assertFalse(reference.hasRole(holder, revoked.role));
+        assertEquals("renamed@example.org", updated.voMember(holder).email);
+        assertFalse(updated.isVoMember(leaving));
+        assertFalse(updated.isGroupMember(leaving));
+
+        // The previous snapshot is unchanged, including the details of the users
+        assertTrue(snapshot.isVoMember(leaving));
+        assertTrue(snapshot.usersWithRoles(revoked.role).stream().anyMatch(u -> u.checkinUserId.equals(holder)));
+        assertEquals(email, snapshot.voMember(holder).email);
+        new MembershipReference(this.voRecords, this.groupRecords, snapshot.asOf()).assertSame(snapshot, ROLE_NAMES);
+    }
+
+    @Test
+    @DisplayName("Update with new members and roles")
+    public void testUpdateAdded() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+
+        final var newcomer = "newcomer@egi.eu";
+        var voRecords = with(this.voRecords, record(900001, newcomer, "member", "Active", null, null));
+        var groupRecords = with(this.groupRecords,
+                record(900002, newcomer, "member", "Active", null, null),
+                record(900003, newcomer, Role.PROCESS_OWNER, "Active", null, null),
+                record(900004, newcomer, Role.PROCESS_MANAGER, "Deleted", null, null));
+
+        var updated = snapshot.update(voRecords, GROUP, groupRecords);
+        new MembershipReference(voRecords, groupRecords, updated.asOf()).assertSame(updated, ROLE_NAMES);
+        assertTrue(updated.isGroupMember(newcomer));
+        assertFalse(snapshot.isVoMember(newcomer));
+
+        // A group member that is not a VO member is neither a group member nor holds roles
+        final var outsider = "outsider@egi.eu";
+        groupRecords = with(groupRecords,
+                record(900005, outsider, "member", "Active", null, null),
+                record(900006, outsider, Role.PROCESS_OWNER, "Active", null, null));
+
+        updated = updated.update(voRecords, GROUP, groupRecords);
+        new MembershipReference(voRecords, groupRecords, updated.asOf()).assertSame(updated, ROLE_NAMES);
+        assertFalse(updated.isGroupMember(outsider));
+    }
+
+    @Test
+    @DisplayName("Update to another group reuses only the VO")
+    public void testUpdateOtherGroup() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+
+        var otherGroup = new CheckinRoleList(this.groupRecords);
+        otherGroup.records = new ArrayList<>(this.groupRecords.records.subList(0, this.groupRecords.records.size() / 2));
+
+        var updated = snapshot.update(this.voRecords, "other", otherGroup);
+        assertEquals("other", updated.groupName());
+        new MembershipReference(this.voRecords, otherGroup, updated.asOf()).assertSame(updated, ROLE_NAMES);
+    }
+
+    @Test
+    @DisplayName("Active and deleted records are found without a validity period")
+    public void testFindRecord() {
+        final var user = "finder@egi.eu";
+        final var active = record(900001, user, Role.PROCESS_OWNER, "Active", null, null);
+        final var deleted = record(900002, user, Role.PROCESS_MANAGER, "Deleted", null, null);
+        final var limited = record(900003, user, Role.SLA_OWNER, "Active", null, new java.util.Date(Long.MAX_VALUE));
+        final var member = record(900004, user, "member", "Active", null, null);
+        var voRecords = with(this.voRecords, record(900000, user, "member", "Active", null, null));
+        var groupRecords = with(this.groupRecords, member, active, deleted, limited);
+
+        var snapshot = new MembershipSnapshot(voRecords, GROUP, groupRecords);
+        assertSame(member, snapshot.activeRecord(user, "member"));
+        assertSame(active, snapshot.activeRecord(user, "Process-Owner"));
+        assertNull(snapshot.deletedRecord(user, Role.PROCESS_OWNER));
+        assertSame(deleted, snapshot.deletedRecord(user, Role.PROCESS_MANAGER));
+        assertNull(snapshot.activeRecord(user, Role.PROCESS_MANAGER));
+
+        // Records with a validity period are not considered
+        assertNull(snapshot.activeRecord(user, Role.SLA_OWNER));
+        assertTrue(snapshot.usersWithRoles(Role.SLA_OWNER).stream().anyMatch(u -> u.checkinUserId.equals(user)));
+
+        assertNull(snapshot.activeRecord("nobody@egi.eu", "member"));
+        assertEquals(List.of(), snapshot.usersWithRoles("no-such-role"));
+    }
+}
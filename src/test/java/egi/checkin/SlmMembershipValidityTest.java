@@ -0,0 +1,143 @@
+package egi.checkin;
+
+import static egi.checkin.MembershipReference.GROUP;
+import static egi.checkin.MembershipReference.record;
+import static egi.checkin.MembershipReference.with;
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import egi.checkin.model.CheckinRole;
+import egi.checkin.model.CheckinRoleList;
+import egi.eu.model.Role;
+
+
+public class SlmMembershipValidityTest {
+
+    private static final String[] ROLE_NAMES = { "process", Role.SLA_OWNER };
+
+    private static final String EXPIRING = "expiring@egi.eu";       // VO member until base + 1s
+    private static final String STARTING = "starting@egi.eu";       // VO member from base + 2s
+    private static final String HOLDER = "holder@egi.eu";           // Holds a role until base + 3s
+
+    private long base;                  // After the snapshots are built
+    private CheckinRole expiring, starting, role;
+    private CheckinRoleList voRecords;
+    private CheckinRoleList groupRecords;
+
+
+    @BeforeEach
+    public void setup() {
+        this.base = System.currentTimeMillis() + 60_000;
+        this.expiring = record(900001, EXPIRING, "member", "Active", null, at(1000));
+        this.starting = record(900002, STARTING, "member", "Active", at(2000), null);
+        this.role = record(900005, HOLDER, Role.SLA_OWNER, "Active", at(-120_000), at(3000));
+
+        var population = MembershipReference.population(200);
+        this.voRecords = with(population[0], this.expiring, this.starting,
+                record(900003, HOLDER, "member", "Active", null, null),
+                // Deleted records do not cause boundaries
+                record(900006, "deleted@egi.eu", "member", "Deleted", null, at(500)));
+        this.groupRecords = with(population[1],
+                record(900004, HOLDER, "member", "Active", null, null),
+                this.role);
+    }
+
+    private Date at(long offset) { return new Date(this.base + offset); }
+
+    private void assertAt(MembershipSnapshot snapshot, long offset) {
+        assertEquals(this.base + offset, snapshot.asOf());
+        new MembershipReference(this.voRecords, this.groupRecords, this.base + offset).assertSame(snapshot, ROLE_NAMES);
+    }
+
+    @Test
+    @DisplayName("Boundaries are queued in time order")
+    public void testBoundaries() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+        new MembershipReference(this.voRecords, this.groupRecords, snapshot.asOf()).assertSame(snapshot, ROLE_NAMES);
+        assertEquals(this.base + 1000, snapshot.nextBoundary());
+
+        assertTrue(snapshot.recordsDueBy(this.base + 999, false).isEmpty());
+        assertEquals(List.of(this.expiring), snapshot.recordsDueBy(this.base + 1000, false));
+        assertEquals(List.of(this.expiring, this.starting), snapshot.recordsDueBy(this.base + 5000, false));
+        assertTrue(snapshot.recordsDueBy(this.base + 2999, true).isEmpty());
+        assertEquals(List.of(this.role), snapshot.recordsDueBy(this.base + 3000, true));
+    }
+
+    @Test
+    @DisplayName("Advancing applies the boundaries that are due")
+    public void testAdvance() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+        assertTrue(snapshot.isVoMember(EXPIRING));
+        assertFalse(snapshot.isVoMember(STARTING));
+        assertTrue(snapshot.usersWithRoles(Role.SLA_OWNER).stream().anyMatch(u -> u.checkinUserId.equals(HOLDER)));
+
+        // Nothing due yet
+        assertSame(snapshot, snapshot.advance(this.base + 999));
+
+        // Validity ends at until (exclusive)
+        var advanced = snapshot.advance(this.base + 1000);
+        assertAt(advanced, 1000);
+        assertFalse(advanced.isVoMember(EXPIRING));
+        assertEquals(this.base + 2000, advanced.nextBoundary());
+        assertSame(advanced, advanced.advance(this.base + 1999));
+
+        // Validity starts at from (inclusive)
+        advanced = advanced.advance(this.base + 2000);
+        assertAt(advanced, 2000);
+        assertTrue(advanced.isVoMember(STARTING));
+        assertEquals(this.base + 3000, advanced.nextBoundary());
+
+        advanced = advanced.advance(this.base + 3000);
+        assertAt(advanced, 3000);
+        assertTrue(advanced.isGroupMember(HOLDER));
+        assertTrue(advanced.usersWithRoles(Role.SLA_OWNER).stream().noneMatch(u -> u.checkinUserId.equals(HOLDER)));
+        assertEquals(Long.MAX_VALUE, advanced.nextBoundary());
+        assertSame(advanced, advanced.advance(Long.MAX_VALUE - 1));
+
+        // The earlier snapshot is unchanged
+        assertTrue(snapshot.isVoMember(EXPIRING));
+        assertFalse(snapshot.isVoMember(STARTING));
+    }
+
+    @Test
+    @DisplayName("Advancing past several boundaries at once")
+    public void testAdvanceAtOnce() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+        var advanced = snapshot.advance(this.base + 5000);
+        assertAt(advanced, 5000);
+        assertEquals(Long.MAX_VALUE, advanced.nextBoundary());
+    }
+
+    @Test
+    @DisplayName("Updated records replace their boundaries")
+    public void testUpdateBoundaries() {
+        var snapshot = new MembershipSnapshot(this.voRecords, GROUP, this.groupRecords);
+
+        // Extend the membership that was expiring
+        var extended = new CheckinRole(this.expiring);
+        extended.until = at(4000);
+        extended.revision++;
+        var voRecords = new CheckinRoleList(this.voRecords);
+        voRecords.records.set(voRecords.records.indexOf(this.expiring), extended);
+
+        var updated = snapshot.update(voRecords, GROUP, this.groupRecords);
+        assertEquals(this.base + 2000, updated.nextBoundary());
+        assertFalse(updated.recordsDueBy(this.base + 3000, false).contains(this.expiring));
+
+        var advanced = updated.advance(this.base + 3000);
+        assertTrue(advanced.isVoMember(EXPIRING));
+        assertTrue(advanced.isVoMember(STARTING));
+        this.voRecords = voRecords;
+        assertAt(advanced, 3000);
+
+        advanced = advanced.advance(this.base + 4000);
+        assertFalse(advanced.isVoMember(EXPIRING));
+        assertAt(advanced, 4000);
+    }
+}
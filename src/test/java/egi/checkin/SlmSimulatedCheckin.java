@@ -0,0 +1,146 @@
+package egi.checkin;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import org.jboss.logging.Logger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/***
+ * Self-contained stand-in for Check-in, serving a generated population, see {@link SimulatedCheckinPopulation}.
+ * Unlike {@link SlmMockCheckinProxy}, nothing is forwarded to the real Check-in, so it works offline
+ * and can be used to exercise the caching and filtering of large VOs.
+ *
+ * Use with @QuarkusTestResource(value = SlmSimulatedCheckin.class, initArgs = {...}), supported arguments:
+ * - members, group-share, role-density, deleted-ratio, seed: shape of the population
+ * - latency: added to all responses, e.g. "fixed:50", "uniform:20-200", "lognormal:80,0.4"
+ * - error-rate: share of the requests answered with 503
+ * - fault-rate: share of the requests answered by dropping the connection
+ * - port: defaults to a free port
+ * - threads: number of threads serving requests
+ *
+ * Can also run standalone with the same arguments in the form --name=value, plus co-id, vo, and group.
+ */
+public class SlmSimulatedCheckin implements QuarkusTestResourceLifecycleManager {
+
+    private static final Logger log = Logger.getLogger(SlmSimulatedCheckin.class);
+
+    private Map<String, String> args = Collections.emptyMap();
+    private SlmMockCheckin mockCheckin;
+    private SimulatedCheckinPopulation population;
+    private SimulatedCheckinTransformer transformer;
+
+
+    /***
+     * Store arguments
+     * @param initArgs The arguments of the test resource
+     */
+    @Override
+    public void init(Map<String, String> initArgs) {
+        this.args = initArgs;
+    }
+
+    /***
+     * Generate the population and start the simulated Check-in
+     * @return Configuration keys to override
+     */
+    @Override
+    public Map<String, String> start() {
+        final var config = ConfigProvider.getConfig();
+        final var coId = config.getValue("egi.checkin.co-id", String.class);
+        final var vo = config.getValue("egi.ims.vo", String.class);
+        final var group = config.getValue("egi.ims.group", String.class);
+
+        start(coId, vo, group);
+
+        return Collections.singletonMap("egi.checkin.server", this.mockCheckin.baseUrl());
+    }
+
+    /***
+     * Generate the population and start the simulated Check-in
+     * @param coId The collaboration the VO belongs to
+     * @param vo The VO
+     * @param group The group
+     */
+    private void start(String coId, String vo, String group) {
+        var settings = SimulatedCheckinPopulation.Settings.from(this.args);
+        this.population = new SimulatedCheckinPopulation(coId, vo, group, settings);
+        this.transformer = new SimulatedCheckinTransformer(this.population,
+                this.args.getOrDefault("latency", "none"),
+                Double.parseDouble(this.args.getOrDefault("error-rate", "0")),
+                Double.parseDouble(this.args.getOrDefault("fault-rate", "0")));
+
+        var options = options()
+                .containerThreads(Integer.parseInt(this.args.getOrDefault("threads", "50")))
+                .extensions(this.transformer);
+        if(this.args.containsKey("port"))
+            options.port(Integer.parseInt(this.args.get("port")));
+        else
+            options.dynamicPort();
+
+        this.mockCheckin = new SlmMockCheckin(options);
+        this.mockCheckin.start();
+
+        // All requests are answered by the transformer
+        this.mockCheckin.stubFor(any(anyUrl()).willReturn(aResponse()));
+
+        log.infof("Simulated Check-in at %s, VO %s has %d records, group %s has %d records",
+                this.mockCheckin.baseUrl(),
+                vo, this.population.recordCount(vo),
+                group, this.population.recordCount(group));
+    }
+
+    /***
+     * Shutdown the simulated Check-in
+     */
+    @Override
+    public void stop() {
+        if(null != this.mockCheckin)
+            this.mockCheckin.stop();
+    }
+
+    /***
+     * Inject the simulated Check-in to test class using custom annotation @InjectSlmMockCheckin
+     */
+    @Override
+    public void inject(TestInjector testInjector) {
+        testInjector.injectIntoFields(this,
+                new TestInjector.AnnotatedAndMatchesType(InjectSlmMockCheckin.class, SlmSimulatedCheckin.class));
+    }
+
+    public SimulatedCheckinPopulation population() { return this.population; }
+
+    /***
+     * Get the number of requests received by an endpoint
+     * @param endpoint The endpoint, see the constants of {@link SimulatedCheckinTransformer}
+     * @return Number of requests
+     */
+    public long requestCount(String endpoint) { return this.transformer.requestCount(endpoint); }
+
+    public String baseUrl() { return this.mockCheckin.baseUrl(); }
+
+    /***
+     * Run the simulated Check-in standalone, e.g. to point a running instance of the API to it
+     * @param args Arguments in the form --name=value
+     */
+    public static void main(String[] args) {
+        var initArgs = new HashMap<String, String>();
+        for(var arg : args) {
+            var pair = arg.replaceFirst("^--", "").split("=", 2);
+            initArgs.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+
+        var checkin = new SlmSimulatedCheckin();
+        checkin.init(initArgs);
+        checkin.start(initArgs.getOrDefault("co-id", "2"),
+                      initArgs.getOrDefault("vo", "vo.tools.egi.eu"),
+                      initArgs.getOrDefault("group", "SLM"));
+        Runtime.getRuntime().addShutdownHook(new Thread(checkin::stop));
+    }
+}
@@ -0,0 +1,83 @@
+package egi.eu;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+
+public class SlmErrorBudgetTest {
+
+    private static final long SLOT = 10_000;            // 10s
+    private static final long WINDOW = 60_000;          // 1m, ring of 7 slots
+    private static final long START = 1_700_000_000_000L;
+
+
+    @Test
+    @DisplayName("Requests are summed over the slots of the window")
+    public void testSumWindow() {
+        var budget = new ErrorBudgets.Budget(0.9, SLOT, WINDOW);
+        budget.add(START, 10, 1);
+        budget.add(START + SLOT, 20, 2);
+        budget.add(START + 2 * SLOT, 30, 3);
+
+        final var now = START + 2 * SLOT;
+        assertArrayEquals(new long[] { 30, 3 }, budget.sum(now, SLOT));
+        assertArrayEquals(new long[] { 50, 5 }, budget.sum(now, 2 * SLOT));
+        assertArrayEquals(new long[] { 60, 6 }, budget.sum(now, WINDOW));
+        assertEquals(0.9, budget.compliance(now, WINDOW), 1e-9);
+        assertEquals(1.0, budget.burnRate(now, WINDOW), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Samples in the same slot are added up")
+    public void testSameSlot() {
+        var budget = new ErrorBudgets.Budget(0.9, SLOT, WINDOW);
+        budget.add(START, 10, 1);
+        budget.add(START + SLOT / 2, 10, 0);
+
+        assertArrayEquals(new long[] { 20, 1 }, budget.sum(START + SLOT / 2, SLOT));
+    }
+
+    @Test
+    @DisplayName("Slots are reused once older than the longest window")
+    public void testSlotReuse() {
+        var budget = new ErrorBudgets.Budget(0.9, SLOT, WINDOW);
+        final var ring = budget.slots.length;
+        budget.add(START, 100, 100);
+
+        // Lands on the same index as the first sample, must not add to it
+        final var later = START + ring * SLOT;
+        budget.add(later, 10, 0);
+
+        assertArrayEquals(new long[] { 10, 0 }, budget.sum(later, WINDOW));
+        assertEquals(1.0, budget.compliance(later, WINDOW), 1e-9);
+        assertEquals(0.0, budget.burnRate(later, WINDOW), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Old slots are left out even if not reused yet")
+    public void testStaleSlots() {
+        var budget = new ErrorBudgets.Budget(0.9, SLOT, WINDOW);
+        budget.add(START, 100, 50);
+
+        final var later = START + WINDOW + SLOT;
+        assertArrayEquals(new long[] { 0, 0 }, budget.sum(later, WINDOW));
+        assertTrue(Double.isNaN(budget.compliance(later, WINDOW)));
+        assertEquals(0.0, budget.burnRate(later, WINDOW), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Window longer than the ring is capped to the slots kept")
+    public void testWindowLongerThanRing() {
+        var budget = new ErrorBudgets.Budget(0.9, SLOT, WINDOW);
+        final var ring = budget.slots.length;
+        for(int i = 0; i < 2 * ring; i++)
+            budget.add(START + i * SLOT, 1, 0);
+
+        // Only the slots still in the ring can be counted
+        final var now = START + (2 * ring - 1) * SLOT;
+        assertArrayEquals(new long[] { ring - 1, 0 }, budget.sum(now, 10 * WINDOW));
+        assertArrayEquals(budget.sum(now, WINDOW + SLOT), budget.sum(now, 10 * WINDOW));
+    }
+}
@@ -0,0 +1,380 @@
+package egi.eu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.security.SecurityAttribute;
+import io.quarkus.test.security.TestSecurity;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import egi.checkin.InjectSlmMockCheckin;
+import egi.checkin.SimulatedCheckinPopulation;
+import egi.checkin.SlmSimulatedCheckin;
+import egi.checkin.model.CheckinUser;
+import egi.eu.model.Role;
+
+
+/***
+ * Load test, drives a mix of requests to the API at the configured concurrency, then checks
+ * the latency of each endpoint against its configured SLOs (egi.qos.endpoints, or egi.qos.slos),
+ * using the histograms the API itself publishes at /metrics. An endpoint fails if fewer than the
+ * objective share of its requests completed within the (largest) SLO, or if too many of its
+ * requests failed.
+ *
+ * Excluded from the default test run, run with: mvn test -Pload-test
+ * Settings, as system properties:
+ * - loadtest.concurrency: number of clients sending requests, default 20
+ * - loadtest.warmup: seconds to send requests for before measuring, default 10
+ * - loadtest.duration: seconds to measure for, default 60
+ * - loadtest.mix: weights of the endpoints, e.g. "/users:40,/users/roles:20,/process:15"
+ * - loadtest.objective: share of the requests that must complete within the SLO, default is
+ *   the objective of each endpoint (egi.qos.endpoints, or egi.qos.objective), otherwise 0.95
+ * - loadtest.max-error-rate: share of the requests that may fail, default 0.01
+ * - loadtest.seed-assignments: role assignments to make before starting, default 20
+ * See {@link SlmLoadTestProfile} for the settings of the database and of the simulated Check-in.
+ *
+ * The results are saved as JSON to target/loadtest-result.json, to compare releases.
+ */
+@QuarkusTest
+@TestProfile(SlmLoadTestProfile.class)
+@Tag("load")
+public class SlmLoadTest {
+
+    private static final Logger log = Logger.getLogger(SlmLoadTest.class);
+
+    // The mock Check-in server will accept any token
+    private static final String BEARER_TOKEN = UUID.randomUUID().toString();
+
+    private static final String DEFAULT_MIX = "/users:40,/users/roles:20,/process:15,/role/definitions:15,/role/logs:10";
+    private static final List<Double> QUANTILES = List.of(0.5, 0.95, 0.99);
+    private static final Pattern SAMPLE_REX =
+            Pattern.compile("^http_server_requests_seconds(_bucket|_count|)\\{(.*)}\\s+(\\S+)$");
+    private static final Pattern LABEL_REX = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+
+    // Requests sent for each endpoint, by route template
+    private static final Map<String, List<String>> REQUESTS = Map.of(
+            "/users", List.of("/users?onlyGroup=false&limit=100",
+                              "/users?onlyGroup=false&from=1000&limit=100",
+                              "/users?onlyGroup=true&limit=100"),
+            "/users/roles", List.of("/users/roles",
+                                    "/users/roles?role=" + Role.PROCESS_MANAGER),
+            "/process", List.of("/process"),
+            "/role/definitions", List.of("/role/definitions",
+                                         "/role/definitions?role=" + Role.PROCESS_OWNER),
+            "/role/logs", List.of("/role/logs?role=" + Role.PROCESS_MANAGER,
+                                  "/role/logs?role=" + Role.PROCESS_DEVELOPER));
+
+    @InjectSlmMockCheckin
+    SlmSimulatedCheckin checkin;
+
+    @Inject
+    MetricsConfig qos;
+
+    @TestHTTPResource("/")
+    URI baseUri;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+
+    /***
+     * Latency of an endpoint, from the metrics of the API
+     */
+    private static class Endpoint {
+
+        double count;                                       // All requests
+        final Map<Double, Double> buckets = new HashMap<>(); // Requests by SLO [seconds], all statuses
+        final Map<Double, Double> quantiles = new HashMap<>(); // Latency by quantile [seconds], successful requests
+
+        /***
+         * Get the requests served since an earlier scrape
+         */
+        Endpoint since(Endpoint before) {
+            var delta = new Endpoint();
+            delta.count = this.count - (null != before ? before.count : 0);
+            for(var bucket : this.buckets.entrySet())
+                delta.buckets.put(bucket.getKey(), bucket.getValue() -
+                        (null != before ? before.buckets.getOrDefault(bucket.getKey(), 0.0) : 0));
+            delta.quantiles.putAll(this.quantiles);
+            return delta;
+        }
+    }
+
+    /***
+     * Requests sent to an endpoint
+     */
+    private static class Sent {
+        final LongAdder requests = new LongAdder();
+        final LongAdder failures = new LongAdder();        // Non-2xx responses and errors
+    }
+
+    @Test
+    @TestSecurity(user = "loadtest",
+                  roles = { Role.IMS_USER, Role.PROCESS_MEMBER, Role.PROCESS_OWNER, Role.PROCESS_MANAGER },
+                  attributes = {
+                      @SecurityAttribute(key = CheckinUser.ATTR_USERID, value = "loadtest@egi.eu"),
+                      @SecurityAttribute(key = CheckinUser.ATTR_FULLNAME, value = "Load Test"),
+                      @SecurityAttribute(key = CheckinUser.ATTR_EMAIL, value = "loadtest@example.org") })
+    @DisplayName("Endpoints meet their SLOs under load")
+    public void testEndpointsMeetSlos() throws Exception {
+        final var concurrency = Integer.getInteger("loadtest.concurrency", 20);
+        final var warmup = Duration.ofSeconds(Integer.getInteger("loadtest.warmup", 10));
+        final var duration = Duration.ofSeconds(Integer.getInteger("loadtest.duration", 60));
+        final var objectiveOverride = System.getProperty("loadtest.objective");
+        final var maxErrorRate = Double.parseDouble(System.getProperty("loadtest.max-error-rate", "0.01"));
+        final var mix = mixOf(System.getProperty("loadtest.mix", DEFAULT_MIX));
+
+        final var objectives = new ServiceLevelObjectives(this.qos);
+
+        // Log some role assignments, so that there are logs to list
+        seedAssignments(Integer.getInteger("loadtest.seed-assignments", 20));
+
+        log.infof("Warming up for %ds with %d clients", warmup.toSeconds(), concurrency);
+        drive(mix, concurrency, warmup);
+
+        // Measure
+        log.infof("Measuring for %ds with %d clients", duration.toSeconds(), concurrency);
+        final var before = scrape();
+        final var sent = drive(mix, concurrency, duration);
+        final var after = scrape();
+
+        // Check the endpoints against their SLOs
+        var violations = new ArrayList<String>();
+        var results = new LinkedHashMap<String, Object>();
+        long total = 0;
+        for(var route : mix.keySet()) {
+            final var endpoint = objectives.of("GET", route);
+            assertTrue(endpoint.latency() > 0, "No SLOs configured for GET " + route);
+            final var slo = endpoint.latency() / 1000.0;
+            final var objective = null != objectiveOverride ? Double.parseDouble(objectiveOverride) :
+                                  null != endpoint.objective() ? endpoint.objective() : 0.95;
+            final var requests = sent.get(route).requests.sum();
+            final var failures = sent.get(route).failures.sum();
+            final var served = null != after.get(route) ? after.get(route).since(before.get(route)) : new Endpoint();
+            final var withinSlo = served.count > 0 ? served.buckets.getOrDefault(slo, 0.0) / served.count : 0;
+            final var errorRate = requests > 0 ? (double)failures / requests : 0;
+            total += requests;
+
+            var result = new LinkedHashMap<String, Object>();
+            result.put("requests", requests);
+            result.put("failures", failures);
+            result.put("throughput", requests / (double)duration.toSeconds());
+            for(var quantile : QUANTILES)
+                result.put(String.format("p%d", Math.round(quantile * 100)),
+                           served.quantiles.getOrDefault(quantile, Double.NaN) * 1000);
+            result.put("slo", slo * 1000);
+            result.put("objective", objective);
+            result.put("withinSlo", withinSlo);
+            results.put(route, result);
+
+            log.infof("GET %s: %d requests, %d failed, p50 %.1fms, p95 %.1fms, p99 %.1fms, %.2f%% within %dms",
+                      route, requests, failures, result.get("p50"), result.get("p95"), result.get("p99"),
+                      withinSlo * 100, Math.round(slo * 1000));
+
+            if(0 == requests || 0 == served.count)
+                violations.add(String.format("GET %s: no requests served", route));
+            else if(withinSlo < objective)
+                violations.add(String.format("GET %s: %.2f%% of requests within %dms, objective is %.2f%%",
+                        route, withinSlo * 100, Math.round(slo * 1000), objective * 100));
+
+            if(errorRate > maxErrorRate)
+                violations.add(String.format("GET %s: %.2f%% of requests failed, at most %.2f%% allowed",
+                        route, errorRate * 100, maxErrorRate * 100));
+        }
+
+        log.infof("Served %.1f requests/s with %d clients", total / (double)duration.toSeconds(), concurrency);
+        saveResults(concurrency, duration, total, results);
+
+        assertTrue(violations.isEmpty(), String.join("\n", violations));
+    }
+
+    /***
+     * Parse the mix of requests
+     * @param mix Weights by route template, e.g. "/users:40,/process:10"
+     * @return Weights by route template
+     */
+    private static Map<String, Integer> mixOf(String mix) {
+        var weights = new LinkedHashMap<String, Integer>();
+        for(var entry : mix.split(",")) {
+            var pair = entry.trim().split(":", 2);
+            if(!REQUESTS.containsKey(pair[0]))
+                throw new IllegalArgumentException("Unknown endpoint " + pair[0]);
+
+            weights.put(pair[0], pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1);
+        }
+
+        return weights;
+    }
+
+    /***
+     * Send requests from concurrent clients, each one picking the next request from the mix
+     * @param mix Weights by route template
+     * @param concurrency Number of clients
+     * @param duration How long to send requests for
+     * @return Requests sent by route template
+     */
+    private Map<String, Sent> drive(Map<String, Integer> mix, int concurrency, Duration duration)
+            throws InterruptedException {
+        final var sent = new ConcurrentHashMap<String, Sent>();
+        for(var route : mix.keySet())
+            sent.put(route, new Sent());
+
+        final var totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        final var deadline = System.nanoTime() + duration.toNanos();
+        final var clients = Executors.newFixedThreadPool(concurrency);
+        for(int c = 0; c < concurrency; c++)
+            clients.submit(() -> {
+                final var random = ThreadLocalRandom.current();
+                while(System.nanoTime() < deadline) {
+                    // Pick an endpoint by weight, then one of its requests
+                    var pick = random.nextInt(totalWeight);
+                    String route = null;
+                    for(var entry : mix.entrySet()) {
+                        route = entry.getKey();
+                        pick -= entry.getValue();
+                        if(pick < 0)
+                            break;
+                    }
+
+                    final var requests = REQUESTS.get(route);
+                    final var path = requests.get(random.nextInt(requests.size()));
+                    final var counters = sent.get(route);
+                    counters.requests.increment();
+                    try {
+                        var response = this.client.send(request(path).GET().build(),
+                                                         HttpResponse.BodyHandlers.discarding());
+                        if(response.statusCode() / 100 != 2)
+                            counters.failures.increment();
+                    }
+                    catch(IOException e) {
+                        counters.failures.increment();
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+
+        clients.shutdown();
+        if(!clients.awaitTermination(duration.toSeconds() + 60, TimeUnit.SECONDS))
+            clients.shutdownNow();
+
+        return sent;
+    }
+
+    /***
+     * Assign roles to group members, which also logs the assignments
+     * @param count Number of assignments to make
+     */
+    private void seedAssignments(int count) throws IOException, InterruptedException {
+        final var members = this.checkin.population().groupMembers();
+        final var roles = SimulatedCheckinPopulation.ROLES;
+        for(int i = 0; i < Math.min(count, members.size()); i++) {
+            var body = String.format("{\"role\":\"%s\",\"roleHolder\":{\"checkinUserId\":\"%s\"}}",
+                                     roles.get(i % roles.size()), members.get(i));
+            var response = this.client.send(
+                    request("/role/" + members.get(i))
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode(), "Cannot assign role: " + response.body());
+        }
+    }
+
+    /***
+     * Get the latency of the endpoints served by the API so far
+     * @return Latency by route template
+     */
+    private Map<String, Endpoint> scrape() throws IOException, InterruptedException {
+        var response = this.client.send(request("/metrics").GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), "Cannot get metrics");
+
+        var endpoints = new HashMap<String, Endpoint>();
+        for(var line : response.body().split("\n")) {
+            var sample = SAMPLE_REX.matcher(line);
+            if(!sample.matches())
+                continue;
+
+            var labels = new HashMap<String, String>();
+            var label = LABEL_REX.matcher(sample.group(2));
+            while(label.find())
+                labels.put(label.group(1), label.group(2));
+
+            if(!"GET".equals(labels.get("method")) || !REQUESTS.containsKey(labels.get("uri")))
+                continue;
+
+            var endpoint = endpoints.computeIfAbsent(labels.get("uri"), uri -> new Endpoint());
+            var value = Double.parseDouble(sample.group(3));
+            switch(sample.group(1)) {
+                case "_count" -> endpoint.count += value;
+                case "_bucket" -> {
+                    if(!"+Inf".equals(labels.get("le")))
+                        endpoint.buckets.merge(Double.parseDouble(labels.get("le")), value, Double::sum);
+                }
+                default -> {
+                    if(labels.containsKey("quantile") && "SUCCESS".equals(labels.get("outcome")))
+                        endpoint.quantiles.merge(Double.parseDouble(labels.get("quantile")), value, Math::max);
+                }
+            }
+        }
+
+        return endpoints;
+    }
+
+    /***
+     * Save the results of the load test as JSON
+     */
+    private static void saveResults(int concurrency, Duration duration, long total,
+                                    Map<String, Object> endpoints) throws IOException {
+        var results = new LinkedHashMap<String, Object>();
+        results.put("concurrency", concurrency);
+        results.put("duration", duration.toSeconds());
+        results.put("throughput", total / (double)duration.toSeconds());
+        results.put("endpoints", endpoints);
+
+        new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(Path.of("target", "loadtest-result.json").toFile(), results);
+    }
+
+    /***
+     * Start building a request to the API
+     * @param path Path and query of the request
+     */
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(this.baseUri.resolve(path.substring(1)))
+                .timeout(Duration.ofSeconds(30))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer: " + BEARER_TOKEN);
+    }
+}
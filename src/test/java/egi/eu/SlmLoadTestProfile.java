@@ -0,0 +1,71 @@
+package egi.eu;
+
+import io.quarkus.test.junit.QuarkusTestProfile;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import egi.checkin.SlmSimulatedCheckin;
+
+
+/***
+ * Runs the API against a simulated Check-in and a Postgres database, see {@link SlmLoadTest}.
+ * The database is started by Quarkus Dev Services (needs Docker), unless an existing one is
+ * passed with -Dloadtest.db-url=postgresql://host:port/db (plus loadtest.db-username and
+ * loadtest.db-password). Either way, the schema is recreated and loaded from import.sql.
+ *
+ * The simulated Check-in is configured from the system properties loadtest.checkin.*,
+ * e.g. -Dloadtest.checkin.members=100000 -Dloadtest.checkin.latency=fixed:200,
+ * see {@link SlmSimulatedCheckin} for the supported arguments.
+ */
+public class SlmLoadTestProfile implements QuarkusTestProfile {
+
+    private static final String CHECKIN_PREFIX = "loadtest.checkin.";
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        var config = new HashMap<String, String>();
+
+        // Histograms have the quantiles reported by the load test, and the configured SLOs
+        config.put("egi.qos.quantiles", "0.5,0.95,0.99");
+
+        var dbUrl = System.getProperty("loadtest.db-url");
+        if(null != dbUrl && !dbUrl.isBlank()) {
+            config.put("quarkus.datasource.reactive.url", dbUrl);
+            config.put("quarkus.datasource.username", System.getProperty("loadtest.db-username", "ims"));
+            config.put("quarkus.datasource.password", System.getProperty("loadtest.db-password", "password"));
+            config.put("quarkus.datasource.devservices.enabled", "false");
+        }
+        else {
+            // Dev Services only start a database when no URL is set
+            config.put("quarkus.datasource.reactive.url", "");
+            config.put("quarkus.datasource.devservices.enabled", "true");
+        }
+
+        config.put("quarkus.hibernate-orm.database.default-schema", "slm");
+        config.put("quarkus.hibernate-orm.database.generation", "drop-and-create");
+        config.put("quarkus.hibernate-orm.database.generation.create-schemas", "true");
+        config.put("quarkus.hibernate-orm.sql-load-script", "import.sql");
+        config.put("quarkus.hibernate-orm.log.sql", "false");
+        return config;
+    }
+
+    /***
+     * Use only the simulated Check-in, not the mocks used by the other tests
+     */
+    @Override
+    public boolean disableGlobalTestResources() { return true; }
+
+    @Override
+    public List<TestResourceEntry> testResources() {
+        var args = new HashMap<String, String>();
+        args.put("members", "10000");
+        args.put("latency", "lognormal:100,0.5");
+        for(var name : System.getProperties().stringPropertyNames())
+            if(name.startsWith(CHECKIN_PREFIX))
+                args.put(name.substring(CHECKIN_PREFIX.length()), System.getProperty(name));
+
+        return List.of(new TestResourceEntry(SlmSimulatedCheckin.class, args));
+    }
+}
@@ -13,6 +13,7 @@ import org.junit.jupiter.api.Test;
 import io.quarkus.security.runtime.QuarkusPrincipal;
 import io.quarkus.security.runtime.QuarkusSecurityIdentity;
 import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.oidc.UserInfo;
 
 import jakarta.inject.Inject;
 import java.util.HashMap;
@@ -116,6 +117,39 @@ public class SlmRoleParsingTest {
             .assertItem(false);
     }
 
+    @Test
+    @DisplayName("Roles and attributes from user info parsed by OIDC")
+    public void testParsedUserInfo() {
+        // Setup entitlements
+        userInfo.addEntitlement(prefix + "role=member" + postfix);
+        userInfo.addEntitlement(prefix + String.format("%s:role=member", imsConfig.group()) + postfix);
+        userInfo.addEntitlement(prefix + String.format("%s:role=%s", imsConfig.group(), pm) + postfix);
+        userInfo.addAssurance("https://aai.egi.eu/LoA#Substantial");
+        userInfo.setFirstName("John").setLastName("Doe");
+        userInfo.emailIsVerified = true;
+
+        builder.addAttribute("userinfo", new UserInfo(userInfo.toJsonString()));
+
+        // Parse roles from entitlements
+        UniAssertSubscriber<Boolean> subscriber = this.roleCustomization.augment(this.builder.build(), null)
+            .onItem().transform(id -> {
+                // Check that it has the correct roles and attributes
+                return id.getRoles().contains(Role.PROCESS_MANAGER) &&
+                       id.getRoles().contains(Role.PROCESS_MEMBER) &&
+                       id.getRoles().contains(Role.IMS_USER) &&
+                       userInfo.checkinUserId.equals(id.getAttribute(CheckinUser.ATTR_USERID)) &&
+                       "John Doe".equals(id.getAttribute(CheckinUser.ATTR_FULLNAME)) &&
+                       "substantial".equals(id.getAttribute(CheckinUser.ATTR_ASSURANCE)) &&
+                       Boolean.TRUE.equals(id.getAttribute(CheckinUser.ATTR_EMAILCHECKED));
+            })
+            .subscribe()
+            .withSubscriber(UniAssertSubscriber.create());
+
+        subscriber
+            .awaitItem()
+            .assertItem(true);
+    }
+
     @Test
     @DisplayName("IMS_USER when VO member")
     public void testVoMembership() {
@@ -522,4 +556,36 @@ public class SlmRoleParsingTest {
             .awaitItem()
             .assertItem(true);
     }
+
+    @Test
+    @DisplayName("SLA_OWNER of a specific SLA requires both VO and SLM group membership")
+    public void testSpecificServiceLevelAgreementOwner() {
+        // Setup entitlements
+        userInfo.addEntitlement(prefix + "role=member" + postfix);
+        userInfo.addEntitlement(prefix + String.format("%s:role=member", imsConfig.group()) + postfix);
+        userInfo.addEntitlement(prefix + String.format("%s:role=%s-42", imsConfig.group(), slao) + postfix);
+
+        try {
+            builder.addAttribute("userinfo", mapper.writeValueAsString(userInfo));
+        } catch (JsonProcessingException e) {
+            fail(e.getMessage());
+        }
+
+        // Parse roles from entitlements
+        UniAssertSubscriber<Boolean> subscriber = this.roleCustomization.augment(this.builder.build(), null)
+            .onItem().transform(id -> id.getRoles())
+            .onItem().transform(roles -> {
+                // Check that it has the role for the specific SLA only
+                return roles.contains(Role.SLA_OWNER + "-42") &&
+                       !roles.contains(Role.SLA_OWNER) &&
+                       roles.contains(Role.PROCESS_MEMBER) &&
+                       roles.contains(Role.IMS_USER);
+            })
+            .subscribe()
+            .withSubscriber(UniAssertSubscriber.create());
+
+        subscriber
+            .awaitItem()
+            .assertItem(true);
+    }
 }
@@ -2,14 +2,18 @@ package egi.eu;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.github.tomakehurst.wiremock.client.WireMock;
 import egi.checkin.InjectSlmMockCheckin;
 import egi.eu.model.Role;
 import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.security.TestSecurity;
 import io.quarkus.test.common.QuarkusTestResource;
+import io.restassured.path.json.JsonPath;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -37,6 +41,17 @@ public class SlmUsersTest {
     // The mock Check-in server will accept any token
     private static final String BEARER_TOKEN = UUID.randomUUID().toString();
 
+    // Users in the mock Check-in, the first three are members of the VO and of the group
+    // (the first one is also process owner and process manager), the next one is only member
+    // of the VO, and the VO memberships of the last two expired.
+    // The tests change different users, as changes are kept in the cached records for a while.
+    private static final String MEMBER1 = "123123@egi.eu";
+    private static final String MEMBER2 = "112233@egi.eu";
+    private static final String MEMBER3 = "334455@egi.eu";
+    private static final String OUTSIDER = "445566@egi.eu";
+    private static final String EXPIRED1 = "778899@egi.eu";
+    private static final String EXPIRED2 = "556677@egi.eu";
+
     @Test
     @TestSecurity(user = "test")
     @DisplayName("Get user info requires VO membership")
@@ -116,6 +131,215 @@ public class SlmUsersTest {
             .extract().body().as(Users.PageOfUsers.class);
     }
 
+    @Test
+    @TestSecurity(user = "test", roles = { Role.IMS_USER})
+    @DisplayName("Changing roles requires process management role")
+    public void testNoChangeRoles() {
+        given()
+            .header(HttpHeaders.AUTHORIZATION, "Bearer: " + BEARER_TOKEN)
+            .contentType("application/json")
+            .body("{\"assign\":[{\"role\":\"process-developer\",\"roleHolder\":{\"checkinUserId\":\"1@egi.eu\"}}]}")
+        .when()
+            .post("/roles/batch")
+        .then()
+            .statusCode(Status.FORBIDDEN.getStatusCode());
+    }
+
+    @Test
+    @TestSecurity(user = "test", roles = { Role.IMS_ADMIN})
+    @DisplayName("Change roles requires grants")
+    public void testChangeRolesEmpty() {
+        given()
+            .header(HttpHeaders.AUTHORIZATION, "Bearer: " + BEARER_TOKEN)
+            .contentType("application/json")
+            .body("{}")
+        .when()
+            .post("/roles/batch")
+        .then()
+            .statusCode(Status.BAD_REQUEST.getStatusCode())
+            .body("id", equalTo("badRequest"));
+    }
+
+    @Test
+    @TestSecurity(user = "test", roles = { Role.IMS_USER})
+    @DisplayName("Changing process members requires process management role")
+    public void testNoChangeGroupMembers() {
+        given()
+            .header(HttpHeaders.AUTHORIZATION, "Bearer: " + BEARER_TOKEN)
+            .contentType("application/json")
+            .body("{\"include\":[{\"checkinUserId\":\"1@egi.eu\"}]}")
+        .when()
+            .post("/process/batch")
+        .then()
+            .statusCode(Status.FORBIDDEN.getStatusCode());
+    }
+
+    @Test
+    @TestSecurity(user = "test", roles = { Role.IMS_ADMIN})
+    @DisplayName("Change roles reports the outcome of each grant")
+    public void testChangeRoles() {
+        stubAddRole(MEMBER2, Role.PROCESS_DEVELOPER, 20001);
+        stubUpdateRole();
+
+        // Valid and invalid grants are mixed, the results follow the assignments then the revocations
+        var results = changeRoles("""
+                { "assign": [
+                    { "role": "process-developer", "roleHolder": { "checkinUserId": "%s" } },
+                    { "role": "no-such-role", "roleHolder": { "checkinUserId": "%s" } },
+                    { "role": "process-developer", "roleHolder": { "checkinUserId": "%s" } },
+                    { "role": "process-developer" },
+                    { "role": "process-owner", "roleHolder": { "checkinUserId": "%s" } } ],
+                  "revoke": [
+                    { "role": "sla-owner", "roleHolder": { "checkinUserId": "%s" } },
+                    { "role": "process-developer", "roleHolder": { "checkinUserId": "%s" } },
+                    { "role": "process-manager", "roleHolder": { "checkinUserId": "%s" } } ] }
+                """.formatted(MEMBER2, MEMBER2, EXPIRED2, MEMBER1, MEMBER1, MEMBER2, MEMBER1));
+
+        assertEquals(8, results.getList("$").size());
+        assertSucceeded(results, 0, true, Role.PROCESS_DEVELOPER, MEMBER2, "Assigned");
+        assertFailed(results, 1, true, "badRequest", "Unknown role");
+        assertFailed(results, 2, true, "badRequest", "Cannot assign role to non-member");
+        assertFailed(results, 3, true, "badRequest", "Role holder is required");
+        assertSucceeded(results, 4, true, Role.PROCESS_OWNER, MEMBER1, "Already assigned");
+        assertSucceeded(results, 5, false, Role.SLA_OWNER, MEMBER1, "Not assigned");
+        assertFailed(results, 6, false, "badRequest", "Multiple changes for the same role and user");
+        assertSucceeded(results, 7, false, Role.PROCESS_MANAGER, MEMBER1, "Revoked");
+
+        // The changes are logged together, so they are either all logged or none is
+        assertEquals(results.getString("[0].message").replace("Assigned", "Revoked"), results.getString("[7].message"));
+    }
+
+    @Test
+    @TestSecurity(user = "test", roles = { Role.IMS_ADMIN})
+    @DisplayName("Change process members requires users")
+    public void testChangeGroupMembersEmpty() {
+        given()
+            .header(HttpHeaders.AUTHORIZATION, "Bearer: " + BEARER_TOKEN)
+            .contentType("application/json")
+            .body("{\"include\":[]}")
+        .when()
+            .post("/process/batch")
+        .then()
+            .statusCode(Status.BAD_REQUEST.getStatusCode())
+            .body("id", equalTo("badRequest"));
+    }
+
+    @Test
+    @TestSecurity(user = "test", roles = { Role.IMS_ADMIN})
+    @DisplayName("Change process members reports the outcome of each user")
+    public void testChangeGroupMembers() {
+        stubAddRole(OUTSIDER, "member", 20002);
+        stubUpdateRole();
+
+        // Valid and invalid users are mixed, the results follow the inclusions then the exclusions
+        var results = changeGroupMembers("""
+                { "include": [
+                    { "checkinUserId": "%s" },
+                    { "checkinUserId": "%s" },
+                    { "fullName": "Nobody" },
+                    { "checkinUserId": "%s" } ],
+                  "exclude": [
+                    { "checkinUserId": "%s" },
+                    { "checkinUserId": "%s" },
+                    { "checkinUserId": "%s" } ] }
+                """.formatted(MEMBER1, EXPIRED1, OUTSIDER, EXPIRED2, MEMBER3, OUTSIDER));
+
+        assertEquals(7, results.getList("$").size());
+        assertSucceeded(results, 0, true, Role.PROCESS_MEMBER, MEMBER1, "Already included");
+        assertFailed(results, 1, true, "notFound", "Unknown user");
+        assertFailed(results, 2, true, "badRequest", "User is required");
+        assertSucceeded(results, 3, true, Role.PROCESS_MEMBER, OUTSIDER, "Included");
+        assertSucceeded(results, 4, false, Role.PROCESS_MEMBER, EXPIRED2, "Not included");
+        assertSucceeded(results, 5, false, Role.PROCESS_MEMBER, MEMBER3, "Excluded");
+        assertFailed(results, 6, false, "badRequest", "Multiple changes for the same role and user");
+
+        // The changes are logged together, so they are either all logged or none is
+        assertEquals(results.getString("[3].message").replace("Included", "Excluded"), results.getString("[5].message"));
+    }
+
+    /***
+     * Call the batch endpoint to change roles
+     * @param batch The grants to assign and revoke, as JSON
+     * @return The results of the grants
+     */
+    private JsonPath changeRoles(String batch) {
+        return changeBatch("/roles/batch", batch);
+    }
+
+    /***
+     * Call the batch endpoint to change the members of the group
+     * @param batch The users to include and exclude, as JSON
+     * @return The results of the changes
+     */
+    private JsonPath changeGroupMembers(String batch) {
+        return changeBatch("/process/batch", batch);
+    }
+
+    /***
+     * Call a batch endpoint, which must answer with the results of the changes
+     */
+    private JsonPath changeBatch(String path, String batch) {
+        return
+        given()
+            .header(HttpHeaders.AUTHORIZATION, "Bearer: " + BEARER_TOKEN)
+            .contentType("application/json")
+            .body(batch)
+        .when()
+            .post(path)
+        .then()
+            .statusCode(Status.OK.getStatusCode())
+            .body("kind", everyItem(equalTo("RoleGrantResult")))
+            .extract().jsonPath();
+    }
+
+    /***
+     * Check the result of a change that succeeded.
+     * Changes that modified Check-in report whether they were also logged, which they are not
+     * when the database is not available.
+     */
+    private static void assertSucceeded(JsonPath results, int index, boolean assign, String role,
+                                        String checkinUserId, String message) {
+        final var result = String.format("[%d].", index);
+        assertTrue(results.getBoolean(result + "success"), "Result " + index);
+        assertEquals(assign, results.getBoolean(result + "assign"), "Result " + index);
+        assertEquals(role, results.getString(result + "role"), "Result " + index);
+        assertEquals(checkinUserId, results.getString(result + "roleHolder.checkinUserId"), "Result " + index);
+        assertThat(results.getString(result + "message"), anyOf(equalTo(message), equalTo(message + ", but not logged")));
+    }
+
+    /***
+     * Check the result of a change that failed.
+     */
+    private static void assertFailed(JsonPath results, int index, boolean assign, String errorId, String description) {
+        final var result = String.format("[%d].", index);
+        assertEquals(false, results.getBoolean(result + "success"), "Result " + index);
+        assertEquals(assign, results.getBoolean(result + "assign"), "Result " + index);
+        assertEquals(errorId, results.getString(result + "error.id"), "Result " + index);
+        assertEquals(description, results.getString(result + "error.description"), "Result " + index);
+    }
+
+    /***
+     * Make the mock Check-in accept adding a role record
+     * @param checkinUserId The user the role is assigned to
+     * @param role The role that is assigned
+     * @param roleId The Id of the new role record
+     */
+    private void stubAddRole(String checkinUserId, String role, long roleId) {
+        mockCheckin.stubFor(WireMock.post(WireMock.urlPathEqualTo("/api/v2/VoMembers.json"))
+            .withRequestBody(WireMock.containing(checkinUserId))
+            .withRequestBody(WireMock.containing(role))
+            .willReturn(WireMock.okJson(String.format(
+                "{\"ResponseType\":\"NewObject\",\"Version\":\"1.0\",\"ObjectType\":\"CoPersonRole\",\"Id\":\"%d\"}", roleId))));
+    }
+
+    /***
+     * Make the mock Check-in accept updating any role record
+     */
+    private void stubUpdateRole() {
+        mockCheckin.stubFor(WireMock.put(WireMock.urlPathMatching("/api/v2/VoMembers/[0-9]+\\.json"))
+            .willReturn(WireMock.ok()));
+    }
+
     /***
      * Helper to convert list of entities to a map
      * @param list The list to convert